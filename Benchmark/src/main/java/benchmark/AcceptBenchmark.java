@@ -0,0 +1,85 @@
+package benchmark;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import protocol.ServerTransport;
+import protocol.TransportType;
+
+/**
+ * New connections per second a listener accepts with every {@link TransportType}, with and without SO_REUSEPORT
+ * (one acceptor per event loop, epoll only). Every client thread connects, waits for the first byte the server writes
+ * once the connection is registered on its event loop, and resets the connection (no TIME_WAIT left behind).
+ * Clients run on the same host, they need spare cores to give meaningful numbers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class AcceptBenchmark {
+  @Param({"NIO", "EPOLL"})
+  public TransportType transport;
+
+  @Param({"false", "true"})
+  public boolean reusePort;
+
+  @Param({"4"})
+  public int eventLoops;
+
+  private ServerTransport serverTransport;
+  private int port;
+
+  @Setup
+  public void setup() throws InterruptedException {
+    serverTransport = new ServerTransport(transport, eventLoops, 1024, true, reusePort, true, true);
+    final List<Channel> channels = serverTransport.bind(0, new ChannelInitializer<SocketChannel>() {
+      @Override
+      protected void initChannel(final SocketChannel ch) {
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelActive(final ChannelHandlerContext ctx) {
+            ctx.writeAndFlush(ctx.alloc().buffer(1).writeByte(1));
+          }
+        });
+      }
+    });
+    port = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+  }
+
+  @TearDown
+  public void tearDown() {
+    serverTransport.shutdownGracefully();
+  }
+
+  @Benchmark
+  public int connect() throws IOException {
+    try (final Socket socket = new Socket()) {
+      socket.setSoLinger(true, 0);
+      socket.connect(new InetSocketAddress("127.0.0.1", port));
+      return socket.getInputStream().read();
+    }
+  }
+}
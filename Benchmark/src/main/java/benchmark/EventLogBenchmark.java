@@ -0,0 +1,96 @@
+package benchmark;
+
+import common.Order;
+import common.Temp;
+import events.LifecycleEvent;
+import events.MappedEventLog;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost on the calling thread of reporting one order event, the INFO line the server used to write for every stage
+ * (String.format of the JSON order to a synchronous log4j file appender) vs a {@link MappedEventLog} record.
+ * Events the recorder could not keep up with are dropped, their count is printed at the end of every trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLogBenchmark {
+  @Param({"TEXT_LOG", "EVENT_LOG"})
+  public String output;
+
+  private File directory;
+  private Order order;
+  private Logger logger;
+  private FileAppender appender;
+  private MappedEventLog eventLog;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("event-log").toFile();
+    order = new Order(UUID.randomUUID().toString(), "Mixed Greens", Temp.COLD, 252, 0.26f);
+
+    if (output.equals("TEXT_LOG")) {
+      // Same layout and appender as the server log4j.properties
+      appender = new FileAppender(new PatternLayout("%-7p %d [%t] %c %x - %m%n"), new File(directory, "log.txt").getPath());
+      logger = Logger.getLogger("benchmark.EventLogBenchmark");
+      logger.setLevel(Level.INFO);
+      logger.setAdditivity(false);
+      logger.addAppender(appender);
+    } else {
+      eventLog = new MappedEventLog(directory, 64 * 1024 * 1024, 65536, 2);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (eventLog != null) {
+      eventLog.close();
+      System.out.println(String.format("%n%d events dropped", eventLog.getDroppedCount()));
+    } else {
+      logger.removeAppender(appender);
+      appender.close();
+    }
+
+    final File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (final File file : files) {
+        file.delete();
+      }
+    }
+
+    directory.delete();
+  }
+
+  @Benchmark
+  public void reportDispatched() {
+    if (eventLog != null) {
+      eventLog.record(LifecycleEvent.DISPATCHED, order);
+    } else {
+      logger.info(String.format("Dispatching order %s", order));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package benchmark;
+
+import common.ExecutionMode;
+import common.Order;
+import common.OrderTaskFeeder;
+import common.OrdersQueue;
+import common.Processor;
+import common.Queue;
+import common.Temp;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link ExecutionMode#FIXED_POOL} and {@link ExecutionMode#VIRTUAL_THREADS} for blocking per-order work
+ * (the courier wait is simulated by sleeping {@link #courierWaitInMS}).
+ *
+ * One operation publishes a burst of {@link #burstSize} orders to an {@link OrdersQueue} and waits until all of them
+ * have been handled. Throughput mode reports bursts/ms, SampleTime mode reports burst latency percentiles (p99 included).
+ * The consumers are wired the same way {@link processor.OrderProcessorManager} and {@link courier.DispatcherManager} wire them.
+ *
+ * Run with JDK 21+ to get real virtual threads, older JVMs fall back to a pool of platform threads bounded by the
+ * thread count (check {@link ExecutionMode#newExecutorService(int)}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+  @Param({"FIXED_POOL", "VIRTUAL_THREADS"})
+  public ExecutionMode executionMode;
+
+  @Param({"1000"})
+  public int burstSize;
+
+  @Param({"5"})
+  public int courierWaitInMS;
+
+  @Param({"16"})
+  public int poolSize;
+
+  private Queue queue;
+  private ExecutorService executorService;
+  private Thread feeder;
+  private Order[] orders;
+  private final Semaphore completed = new Semaphore(0);
+
+  @Setup
+  public void setup() {
+    queue = new OrdersQueue();
+    executorService = executionMode.newExecutorService(poolSize);
+
+    final Processor processor = order -> {
+      try {
+        Thread.sleep(courierWaitInMS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      completed.release();
+      return true;
+    };
+
+    if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+      feeder = new Thread(new OrderTaskFeeder(queue, processor, executorService));
+      feeder.start();
+    } else {
+      for (int i = 0; i < poolSize; i++) {
+        executorService.submit(() -> {
+          while (!Thread.currentThread().isInterrupted()) {
+            try {
+              processor.process(queue.fetch());
+            } catch (final InterruptedException e) {
+              return;
+            }
+          }
+        });
+      }
+    }
+
+    orders = new Order[burstSize];
+    for (int i = 0; i < burstSize; i++) {
+      orders[i] = new Order(UUID.randomUUID().toString(), "order-" + i, Temp.values()[i % Temp.values().length], 300, 0.5f);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    if (feeder != null) {
+      feeder.interrupt();
+      feeder.join();
+    }
+    executorService.shutdownNow();
+    executorService.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Benchmark
+  public void processBurst() throws InterruptedException {
+    for (final Order order : orders) {
+      queue.add(order);
+    }
+
+    completed.acquire(burstSize);
+  }
+}
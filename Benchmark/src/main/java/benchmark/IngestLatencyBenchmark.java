@@ -0,0 +1,177 @@
+package benchmark;
+
+import common.Order;
+import common.Queue;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import journal.Journal;
+import journal.JournalMode;
+import journal.MappedJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import protocol.Backpressure;
+import protocol.HandlerExecution;
+import protocol.OrderHandler;
+import protocol.ServerTransport;
+import protocol.TransportType;
+
+/**
+ * Round trip of an order over a persistent loopback connection, from the request bytes to the 200, with OrderHandler
+ * on the channel event loop vs on a separate handler group, and with every {@link JournalMode}. Queues accept and drop
+ * the orders, so with the journal disabled the difference is the task handoff and context switch per request.
+ * Journal segments are small ({@link #SEGMENT_SIZE_IN_BYTES}) so they roll during the measurement.
+ * Run with -bm sample for the latency percentiles
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestLatencyBenchmark {
+  private static final byte[] END_OF_HEADERS = "\r\n\r\n".getBytes(CharsetUtil.US_ASCII);
+  private static final int SEGMENT_SIZE_IN_BYTES = 1024 * 1024;
+
+  @Param({"EVENT_LOOP", "HANDLER_GROUP"})
+  public HandlerExecution handlerExecution;
+
+  @Param({"DISABLED", "ASYNC", "GROUP_COMMIT"})
+  public JournalMode journalMode;
+
+  private ServerTransport transport;
+  private EventExecutorGroup handlerGroup;
+  private File directory;
+  private Journal journal;
+  private Socket socket;
+  private OutputStream out;
+  private InputStream in;
+  private byte[] request;
+
+  @Setup
+  public void setup() throws Exception {
+    final Queue queue = new DroppingQueue();
+    final Backpressure backpressure = new Backpressure(queue, queue, Integer.MAX_VALUE, 1, Long.MAX_VALUE);
+    transport = new ServerTransport(TransportType.NIO, 1, 128, true, false, true, true);
+    handlerGroup = handlerExecution.newExecutorGroup(1);
+    directory = Files.createTempDirectory("ingest-journal").toFile();
+    journal = journalMode == JournalMode.DISABLED
+        ? Journal.NOOP
+        : new MappedJournal(directory, 1, SEGMENT_SIZE_IN_BYTES, journalMode, 10);
+
+    final int port = ((InetSocketAddress) transport.bind(0, new ChannelInitializer<SocketChannel>() {
+      @Override
+      protected void initChannel(final SocketChannel ch) {
+        ch.pipeline().addLast(new HttpServerCodec());
+        ch.pipeline().addLast(new HttpServerKeepAliveHandler());
+        ch.pipeline().addLast(new HttpObjectAggregator(1024 * 1024));
+        ch.pipeline().addLast(handlerGroup, "OrderHandler", new OrderHandler(queue, queue, backpressure, journal));
+      }
+    }).get(0).localAddress()).getPort();
+
+    final byte[] body = String.format("{\"id\": \"%s\", \"name\": \"Chocolate Gelato\", \"temp\": \"frozen\", \"shelfLife\": 300, " +
+        "\"decayRate\": 0.61}", UUID.randomUUID()).getBytes(CharsetUtil.UTF_8);
+    request = (String.format("POST /orders HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\nContent-Length: %d\r\n\r\n",
+        body.length) + new String(body, CharsetUtil.UTF_8)).getBytes(CharsetUtil.UTF_8);
+
+    socket = new Socket("127.0.0.1", port);
+    socket.setTcpNoDelay(true);
+    out = socket.getOutputStream();
+    in = new BufferedInputStream(socket.getInputStream());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    socket.close();
+    transport.shutdownGracefully();
+
+    if (handlerGroup != null) {
+      handlerGroup.shutdownGracefully();
+    }
+
+    journal.close();
+
+    for (final File segment : MappedJournal.listSegments(directory)) {
+      segment.delete();
+    }
+
+    directory.delete();
+  }
+
+  /**
+   * Responses to accepted orders have no body, the response ends with its headers
+   */
+  @Benchmark
+  public int submitOrder() throws IOException {
+    out.write(request);
+    out.flush();
+
+    int matched = 0;
+    int read = 0;
+
+    while (matched < END_OF_HEADERS.length) {
+      final int b = in.read();
+
+      if (b < 0) {
+        throw new IOException("Connection closed by the server");
+      }
+
+      matched = b == END_OF_HEADERS[matched] ? matched + 1 : (b == END_OF_HEADERS[0] ? 1 : 0);
+      read++;
+    }
+
+    return read;
+  }
+
+  /**
+   * Accepts every order and forgets it
+   */
+  private static final class DroppingQueue implements Queue {
+    @Override
+    public Order fetch() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Order> fetchBatch(final int max, final long timeoutInMS) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean add(@Nonnull final Order order) {
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package benchmark;
+
+import common.Order;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import journal.Journal;
+import journal.JournalEvent;
+import journal.JournalMode;
+import journal.MappedJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import protocol.JsonOrderDecoder;
+
+/**
+ * Accepting an order (decode it and journal it) with every {@link JournalMode}, DISABLED being the baseline.
+ * {@link #acceptAndWaitForDisk()} also waits for the order to be durable as OrderHandler does before answering,
+ * threads waiting together share a flush in GROUP_COMMIT mode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class JournalBenchmark {
+  private static final byte[] ORDER_JSON = ("{\"id\": \"972aa5b8-5d83-4d5e-8cf3-8a1a1437b18a\", \"name\": \"Chocolate Gelato\", " +
+      "\"temp\": \"frozen\", \"shelfLife\": 300, \"decayRate\": 0.61}").getBytes(CharsetUtil.UTF_8);
+
+  @Param({"DISABLED", "ASYNC", "GROUP_COMMIT"})
+  public JournalMode journalMode;
+
+  private File directory;
+  private Journal journal;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("journal-benchmark").toFile();
+    journal = journalMode == JournalMode.DISABLED
+        ? Journal.NOOP
+        : new MappedJournal(directory, 1, 64 * 1024 * 1024, journalMode, 10);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    journal.close();
+
+    for (final File segment : MappedJournal.listSegments(directory)) {
+      segment.delete();
+    }
+
+    directory.delete();
+  }
+
+  @Benchmark
+  public long accept(final Content content) {
+    final Order order = JsonOrderDecoder.decode(content.get());
+    return journal.append(JournalEvent.ACCEPTED, order);
+  }
+
+  @Benchmark
+  public void acceptAndWaitForDisk(final Content content) {
+    final Order order = JsonOrderDecoder.decode(content.get());
+    journal.whenDurable(journal.append(JournalEvent.ACCEPTED, order)).join();
+  }
+
+  /**
+   * Request body of every thread
+   */
+  @State(Scope.Thread)
+  public static class Content {
+    private ByteBuf content;
+
+    @Setup
+    public void setup() {
+      content = Unpooled.directBuffer().writeBytes(ORDER_JSON);
+    }
+
+    ByteBuf get() {
+      return content.resetReaderIndex();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import common.Order;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import protocol.JsonOrderDecoder;
+
+/**
+ * Decoding an order from the request body, before and after {@link JsonOrderDecoder}
+ *
+ * Run with the GC profiler to get allocations per order (gc.alloc.rate.norm):
+ * java -jar target/benchmarks.jar OrderDecodeBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderDecodeBenchmark {
+  private static final String ORDER_JSON = "{\n" +
+      "    \"id\": \"972aa5b8-5d83-4d5e-8cf3-8a1a1437b18a\",\n" +
+      "    \"name\": \"Chocolate Gelato\",\n" +
+      "    \"temp\": \"frozen\",\n" +
+      "    \"shelfLife\": 300,\n" +
+      "    \"decayRate\": 0.61\n" +
+      "  }";
+
+  private ByteBuf content;
+
+  @Setup
+  public void setup() {
+    content = Unpooled.directBuffer().writeBytes(ORDER_JSON.getBytes(CharsetUtil.UTF_8));
+  }
+
+  /**
+   * What OrderHandler used to do: copy the body to a String and decode it with a new Gson
+   */
+  @Benchmark
+  public Order newGsonPerOrder() {
+    return new Gson().fromJson(content.toString(CharsetUtil.UTF_8), Order.class);
+  }
+
+  /**
+   * Copy the body to a String and decode it with the shared Gson
+   */
+  @Benchmark
+  public Order sharedGson() {
+    return Order.createFromJson(content.toString(CharsetUtil.UTF_8));
+  }
+
+  @Benchmark
+  public Order streamingDecoder() {
+    return JsonOrderDecoder.decode(content);
+  }
+}
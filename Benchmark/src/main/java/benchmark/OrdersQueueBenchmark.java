@@ -0,0 +1,137 @@
+package benchmark;
+
+import common.Order;
+import common.OrdersQueue;
+import common.Queue;
+import common.RingBufferQueue;
+import common.SegmentedLogQueue;
+import common.Temp;
+import common.WaitStrategy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * {@link OrdersQueue} vs {@link RingBufferQueue} (with every {@link WaitStrategy}) vs {@link SegmentedLogQueue} with
+ * several threads producing and consuming at the same time
+ *
+ * addThenFetch: every thread adds an order then fetches one. Since fetch blocks, this keeps the consumers from
+ * waiting forever once the producers stop at the end of an iteration. Change the thread count with -t
+ *
+ * handoff: 2 producer threads and 2 consumer threads fetching batches (with a timeout so they never hang at the end
+ * of an iteration). Producers wait while {@link #MAX_BACKLOG} orders are waiting so the queue doesn't fill up (and reject
+ * orders) during the iteration, the produce score is the number of orders handed off
+ *
+ * batchHandoff: same as handoff with producers adding {@link #BATCH_SIZE} orders at once with {@link Queue#addAll(List)},
+ * the produceBatch score is the number of batches handed off
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrdersQueueBenchmark {
+  private static final int MAX_BACKLOG = 1024;
+  private static final int BATCH_SIZE = 16;
+
+  @Param({"LINKED_BLOCKING_DEQUE", "RING_BUFFER_BUSY_SPIN", "RING_BUFFER_YIELD", "RING_BUFFER_PARK", "RING_BUFFER_BLOCK",
+      "SEGMENTED_LOG"})
+  public String queueType;
+
+  private Queue queue;
+  private Order order;
+  private List<Order> batch;
+  private File logDirectory;
+
+  @Setup
+  public void setup() throws IOException {
+    if (queueType.equals("SEGMENTED_LOG")) {
+      logDirectory = Files.createTempDirectory("log-queue").toFile();
+      queue = new SegmentedLogQueue(logDirectory, 64 * 1024 * 1024, MAX_BACKLOG * 4, false);
+    } else {
+      queue = queueType.equals("LINKED_BLOCKING_DEQUE") ? new OrdersQueue()
+          : new RingBufferQueue(MAX_BACKLOG * 4, WaitStrategy.valueOf(queueType.substring("RING_BUFFER_".length())));
+    }
+
+    order = new Order("order", "order", Temp.HOT, 100, 0.1f);
+    batch = Collections.nCopies(BATCH_SIZE, order);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (logDirectory == null) {
+      return;
+    }
+
+    ((SegmentedLogQueue) queue).close();
+
+    for (final File file : logDirectory.listFiles()) {
+      file.delete();
+    }
+
+    logDirectory.delete();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Order addThenFetch() throws InterruptedException {
+    queue.add(order);
+    return queue.fetch();
+  }
+
+  @Benchmark
+  @Group("handoff")
+  @GroupThreads(2)
+  public boolean produce(final Control control) {
+    while (queue.size() >= MAX_BACKLOG && !control.stopMeasurement) {
+      Thread.yield();
+    }
+
+    return queue.add(order);
+  }
+
+  @Benchmark
+  @Group("handoff")
+  @GroupThreads(2)
+  public List<Order> consume() throws InterruptedException {
+    return queue.fetchBatch(BATCH_SIZE, 1);
+  }
+
+  @Benchmark
+  @Group("batchHandoff")
+  @GroupThreads(2)
+  public boolean[] produceBatch(final Control control) {
+    while (queue.size() >= MAX_BACKLOG && !control.stopMeasurement) {
+      Thread.yield();
+    }
+
+    return queue.addAll(batch);
+  }
+
+  @Benchmark
+  @Group("batchHandoff")
+  @GroupThreads(2)
+  public List<Order> consumeBatch() throws InterruptedException {
+    return queue.fetchBatch(BATCH_SIZE, 1);
+  }
+}
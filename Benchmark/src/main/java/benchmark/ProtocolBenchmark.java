@@ -0,0 +1,116 @@
+package benchmark;
+
+import common.Order;
+import common.OrdersQueue;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.util.CharsetUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import journal.Journal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import protocol.Backpressure;
+import protocol.BinaryOrderCodec;
+import protocol.BinaryOrderHandler;
+import protocol.OrderHandler;
+
+/**
+ * Server side cost of one request carrying ordersPerRequest orders, from the socket bytes to the queues and back to the
+ * response bytes: HTTP/1.1 with JSON orders (a single order or a batch) vs a frame of the binary protocol.
+ * Both run the whole pipeline of the server on an embedded channel, the journal is disabled.
+ * Divide by ordersPerRequest for the cost per order
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+  @Param({"1", "64"})
+  public int ordersPerRequest;
+
+  private OrdersQueue orderQueue;
+  private OrdersQueue dispatcherQueue;
+  private EmbeddedChannel httpChannel;
+  private EmbeddedChannel binaryChannel;
+  private ByteBuf httpRequest;
+  private ByteBuf binaryRequest;
+
+  @Setup
+  public void setup() {
+    orderQueue = new OrdersQueue(65536);
+    dispatcherQueue = new OrdersQueue(65536);
+    final Backpressure backpressure = new Backpressure(orderQueue, dispatcherQueue, 65536, 1, Long.MAX_VALUE);
+
+    httpChannel = new EmbeddedChannel(new HttpServerCodec(), new HttpServerKeepAliveHandler(), new HttpObjectAggregator(1024 * 1024),
+        new OrderHandler(orderQueue, dispatcherQueue, backpressure, Journal.NOOP));
+    binaryChannel = new EmbeddedChannel(new LengthFieldBasedFrameDecoder(1024 * 1024, 0, 4, 0, 4), new LengthFieldPrepender(4),
+        new BinaryOrderHandler(orderQueue, dispatcherQueue, backpressure, Journal.NOOP));
+
+    final List<Order> orders = new ArrayList<>();
+    final StringBuilder json = new StringBuilder(ordersPerRequest > 1 ? "[" : "");
+
+    for (int i = 0; i < ordersPerRequest; i++) {
+      final Order order = new Order(UUID.randomUUID().toString(), "Chocolate Gelato", Temp.FROZEN, 300, 0.61f);
+      orders.add(order);
+      json.append(i > 0 ? "," : "").append(String.format("{\"id\": \"%s\", \"name\": \"%s\", \"temp\": \"frozen\", " +
+          "\"shelfLife\": %d, \"decayRate\": %s}", order.getId(), order.getName(), order.getShelfLife(), order.getDecayRate()));
+    }
+
+    final byte[] body = json.append(ordersPerRequest > 1 ? "]" : "").toString().getBytes(CharsetUtil.UTF_8);
+    final String uri = ordersPerRequest > 1 ? OrderHandler.BATCH_PATH : "/orders";
+    httpRequest = Unpooled.unreleasableBuffer(Unpooled.directBuffer()
+        .writeBytes(String.format("POST %s HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\nContent-Length: %d\r\n\r\n",
+            uri, body.length).getBytes(CharsetUtil.US_ASCII))
+        .writeBytes(body));
+
+    final ByteBuf frame = Unpooled.buffer();
+    BinaryOrderCodec.encodeOrders(frame, 1, orders);
+    binaryRequest = Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeInt(frame.readableBytes()).writeBytes(frame));
+  }
+
+  @TearDown
+  public void tearDown() {
+    httpChannel.finishAndReleaseAll();
+    binaryChannel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public int httpJson() throws InterruptedException {
+    httpChannel.writeInbound(httpRequest.duplicate());
+    httpChannel.releaseOutbound();
+    return drain();
+  }
+
+  @Benchmark
+  public int binary() throws InterruptedException {
+    binaryChannel.writeInbound(binaryRequest.duplicate());
+    binaryChannel.releaseOutbound();
+    return drain();
+  }
+
+  private int drain() throws InterruptedException {
+    return orderQueue.fetchBatch(ordersPerRequest, 0).size() + dispatcherQueue.fetchBatch(ordersPerRequest, 0).size();
+  }
+}
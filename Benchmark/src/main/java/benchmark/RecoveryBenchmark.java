@@ -0,0 +1,90 @@
+package benchmark;
+
+import common.Order;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import journal.JournalEvent;
+import journal.JournalMode;
+import journal.JournalRecovery;
+import journal.MappedJournal;
+import journal.Snapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rebuilding the orders of the server at startup after {@link #servedOrders} orders went through it, {@link #LIVE_ORDERS}
+ * of them still in. Replaying the whole journal grows with the uptime, loading the snapshot only with the live orders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecoveryBenchmark {
+  private static final int LIVE_ORDERS = 1_000;
+
+  @Param({"10000", "100000"})
+  public int servedOrders;
+
+  private File journalDirectory;
+  private File snapshotDirectory;
+
+  @Setup
+  public void setup() throws IOException {
+    journalDirectory = Files.createTempDirectory("recovery-journal").toFile();
+    snapshotDirectory = Files.createTempDirectory("recovery-snapshot").toFile();
+
+    // Every order is accepted, lands on overflow then on its shelf, all but the last ones are picked-up
+    final MappedJournal journal = new MappedJournal(journalDirectory, 1, 64 * 1024 * 1024, JournalMode.ASYNC, 10);
+
+    for (int i = 0; i < servedOrders; i++) {
+      final Order order = new Order("order-" + i, "Chocolate Gelato", Temp.FROZEN, 300, 0.61f);
+      journal.append(JournalEvent.ACCEPTED, order);
+      journal.append(JournalEvent.SHELVED, order, Temp.ANY);
+      journal.append(JournalEvent.SHELVED, order, Temp.FROZEN);
+
+      if (i < servedOrders - LIVE_ORDERS) {
+        journal.append(JournalEvent.PICKED_UP, order);
+      }
+    }
+
+    journal.close();
+    Snapshot.write(snapshotDirectory, JournalRecovery.recover(journalDirectory), Collections.emptyList());
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (final File directory : new File[]{journalDirectory, snapshotDirectory}) {
+      for (final File file : directory.listFiles()) {
+        file.delete();
+      }
+
+      directory.delete();
+    }
+  }
+
+  @Benchmark
+  public JournalRecovery replayJournal() throws IOException {
+    return JournalRecovery.recover(journalDirectory);
+  }
+
+  @Benchmark
+  public JournalRecovery loadSnapshot() throws IOException {
+    return JournalRecovery.recover(snapshotDirectory);
+  }
+}
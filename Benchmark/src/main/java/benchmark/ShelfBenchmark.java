@@ -0,0 +1,76 @@
+package benchmark;
+
+import common.EvictionPolicy;
+import common.Order;
+import common.Shelf;
+import common.Temp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Shelf#removeExpiredOrders()} and {@link Shelf#evictOrder()} on a full shelf of {@link #capacity} orders,
+ * with every {@link EvictionPolicy}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShelfBenchmark {
+  @Param({"10", "1000", "10000"})
+  public int capacity;
+
+  @Param({"OLDEST", "LOWEST_LIFE", "SOONEST_EXPIRY", "LEAST_LIKELY_TO_SURVIVE"})
+  public EvictionPolicy evictionPolicy;
+
+  private Shelf shelf;
+  private long sequence;
+
+  @Setup
+  public void setup() {
+    // One extra slot for the order expiring every operation
+    shelf = new Shelf("benchmark", capacity + 1, Temp.HOT, evictionPolicy);
+
+    // Mixed shelf lives so every policy has a different order to evict
+    for (int i = 0; i < capacity; i++) {
+      shelf.addOrder(new Order("order-" + i, "order", Temp.HOT, 1_000 + (i * 7919) % 100_000, 0.1f));
+    }
+  }
+
+  /**
+   * Nothing expired, the common case on the placement path
+   */
+  @Benchmark
+  public List<Order> removeExpiredOrdersNoneExpired() {
+    return shelf.removeExpiredOrders();
+  }
+
+  /**
+   * One expired order among {@link #capacity} live ones
+   */
+  @Benchmark
+  public List<Order> removeExpiredOrdersOneExpired() {
+    shelf.addOrder(new Order("expired-" + sequence++, "expired", Temp.HOT, 0, 0.1f));
+    return shelf.removeExpiredOrders();
+  }
+
+  /**
+   * Evict an order and put it back, the shelf stays full
+   */
+  @Benchmark
+  public boolean evictOrder() {
+    return shelf.addOrder(shelf.evictOrder().get());
+  }
+}
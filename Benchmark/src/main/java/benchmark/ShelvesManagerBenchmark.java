@@ -0,0 +1,88 @@
+package benchmark;
+
+import common.Order;
+import common.Shelf;
+import common.ShelvesManager;
+import common.Temp;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ShelvesManager#addOrder(Order)} with the shelves in a given {@link #state}
+ *
+ * EMPTY: the order lands on its shelf, it is removed again so the shelf stays empty
+ * FULL: its shelf is full so the order lands on the overflow shelf, it is removed again so overflow stays empty
+ * OVERFLOWING: every shelf is full, placing tries at most one move out of overflow per temp (none succeeds, their
+ * shelves are full too) then discards the overflow order picked by overflowEvictionPolicy (OLDEST by default) for the new one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShelvesManagerBenchmark {
+  public enum ShelvesState {
+    EMPTY,
+    FULL,
+    OVERFLOWING
+  }
+
+  @Param({"EMPTY", "FULL", "OVERFLOWING"})
+  public ShelvesState state;
+
+  private ShelvesManager manager;
+  private long sequence;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    ShelvesManager.reset();
+    manager = ShelvesManager.getInstance();
+
+    if (state == ShelvesState.EMPTY) {
+      return;
+    }
+
+    fill(Temp.HOT, Temp.HOT.getCapacity());
+
+    if (state == ShelvesState.OVERFLOWING) {
+      fill(Temp.COLD, Temp.COLD.getCapacity());
+      fill(Temp.FROZEN, Temp.FROZEN.getCapacity());
+      fill(Temp.COLD, Temp.ANY.getCapacity());
+    }
+  }
+
+  @Benchmark
+  public Optional<Shelf> addOrder() {
+    final Order order = newOrder(Temp.HOT);
+    final Optional<Shelf> shelf = manager.addOrder(order);
+
+    if (state != ShelvesState.OVERFLOWING) {
+      shelf.ifPresent(s -> s.removeOrder(order));
+    }
+
+    return shelf;
+  }
+
+  private void fill(final Temp temp, final int count) {
+    for (int i = 0; i < count; i++) {
+      manager.addOrder(newOrder(temp));
+    }
+  }
+
+  private Order newOrder(final Temp temp) {
+    return new Order("order-" + sequence++, "order", temp, 100_000, 0.1f);
+  }
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import common.Order;
+import common.Shelf;
+import common.ShelvesManager;
+import common.Temp;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ShelvesManager} placing and picking up orders from several threads at once, every thread works on one
+ * {@link Temp} (thread index modulo the 3 home shelves). Change the thread count with -t
+ *
+ * SHELF_LOCKS: the manager as is, threads on different shelves don't contend
+ * GLOBAL_LOCK: every call wrapped in one lock, the baseline of a single lock around all the shelves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ShelvesManagerContentionBenchmark {
+  public enum Coordination {
+    SHELF_LOCKS,
+    GLOBAL_LOCK
+  }
+
+  @Param({"SHELF_LOCKS", "GLOBAL_LOCK"})
+  public Coordination coordination;
+
+  private final Object globalLock = new Object();
+  private final AtomicInteger threads = new AtomicInteger();
+  private ShelvesManager manager;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    ShelvesManager.reset();
+    manager = ShelvesManager.getInstance();
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    Temp temp;
+    String prefix;
+    long sequence;
+
+    @Setup(Level.Trial)
+    public void setup(final ShelvesManagerContentionBenchmark benchmark) {
+      final int thread = benchmark.threads.getAndIncrement();
+      temp = Temp.values()[thread % 3];
+      prefix = "order-" + thread + "-";
+    }
+  }
+
+  @Benchmark
+  public boolean placeThenPickUp(final ThreadState state) {
+    final Order order = new Order(state.prefix + state.sequence++, "order", state.temp, 100_000, 0.1f);
+
+    if (coordination == Coordination.GLOBAL_LOCK) {
+      synchronized (globalLock) {
+        return placeThenPickUp(order);
+      }
+    }
+
+    return placeThenPickUp(order);
+  }
+
+  private boolean placeThenPickUp(final Order order) {
+    final Optional<Shelf> shelf = manager.addOrder(order);
+    return shelf.isPresent() && manager.removeOrder(order);
+  }
+}
@@ -0,0 +1,90 @@
+package benchmark;
+
+import common.Order;
+import common.RingBufferQueue;
+import common.Temp;
+import common.WaitStrategy;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency vs CPU trade-off of every {@link WaitStrategy} of the {@link RingBufferQueue}
+ *
+ * roundTrip: the benchmark thread adds an order and waits for an echo thread to hand it back on a second ring,
+ * both sides wait with the same strategy. Run with -bm sample for the percentiles
+ *
+ * At the end of every trial the CPU time the echo thread burned waiting on an empty ring for {@link #IDLE_MILLIS}
+ * is printed, that is what an idle consumer pool costs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaitStrategyBenchmark {
+  private static final long IDLE_MILLIS = 500;
+
+  @Param({"BUSY_SPIN", "YIELD", "PARK", "BLOCK"})
+  public String waitStrategy;
+
+  private RingBufferQueue requests;
+  private RingBufferQueue replies;
+  private Order order;
+  private Order stop;
+  private Thread echo;
+
+  @Setup
+  public void setup() {
+    requests = new RingBufferQueue(1024, WaitStrategy.valueOf(waitStrategy));
+    replies = new RingBufferQueue(1024, WaitStrategy.valueOf(waitStrategy));
+    order = new Order("order", "order", Temp.HOT, 100, 0.1f);
+    stop = new Order("stop", "stop", Temp.HOT, 100, 0.1f);
+
+    echo = new Thread(() -> {
+      try {
+        Order request;
+
+        while ((request = requests.fetch()) != stop) {
+          replies.add(request);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "echo");
+    echo.start();
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final long cpuNanos = threads.getThreadCpuTime(echo.getId());
+    Thread.sleep(IDLE_MILLIS);
+    final long idleCpuNanos = threads.getThreadCpuTime(echo.getId()) - cpuNanos;
+
+    requests.add(stop);
+    echo.join();
+
+    System.out.println(String.format("%nIdle consumer CPU: %.1f%% of a core",
+        100.0 * idleCpuNanos / TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS)));
+  }
+
+  @Benchmark
+  public Order roundTrip() throws InterruptedException {
+    requests.add(order);
+    return replies.fetch();
+  }
+}
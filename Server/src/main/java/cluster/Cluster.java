@@ -0,0 +1,151 @@
+package cluster;
+
+import common.ServerProperties;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Static membership of the kitchen cluster. Orders are partitioned by id over the nodes with a {@link ConsistentHashRing},
+ * every node accepts any order and forwards the ones it doesn't own to their owner, which queues, shelves and dispatches
+ * them like any order it received itself
+ *
+ * Forwarded requests carry a {@link #FORWARDED_BY} header and are always handled by the node receiving them, so nodes
+ * that disagree on the membership can't bounce an order around
+ */
+public class Cluster {
+  public static final String FORWARDED_BY = "X-Forwarded-By";
+  /**
+   * Cluster of this node only, owns every order
+   */
+  public static final Cluster SINGLE_NODE = new Cluster();
+  private static final Logger logger = Logger.getLogger(Cluster.class);
+
+  private final ClusterNode self;
+  private final ConsistentHashRing ring;
+  private final Map<ClusterNode, NodeClient> clients;
+
+  private Cluster() {
+    this.self = null;
+    this.ring = null;
+    this.clients = Collections.emptyMap();
+  }
+
+  /**
+   * @param self this node, must be one of the nodes
+   * @param nodes every node of the cluster
+   * @param virtualNodes points of every node on the hash ring
+   * @param group event loops of the connections to the other nodes
+   * @param channelClass socket channel of the transport of the event loops
+   * @param maxResponseInBytes biggest response accepted from another node
+   * @param requestTimeoutInMS forwarded requests not answered by then fail with a {@link TimeoutException}
+   */
+  public Cluster(@Nonnull final ClusterNode self, @Nonnull final List<ClusterNode> nodes, final int virtualNodes,
+                 @Nonnull final EventLoopGroup group, @Nonnull final Class<? extends SocketChannel> channelClass,
+                 final int maxResponseInBytes, final long requestTimeoutInMS) {
+    if (!nodes.contains(self)) {
+      throw new IllegalArgumentException(String.format("Node %s is not part of the cluster %s", self, nodes));
+    }
+
+    this.self = self;
+    this.ring = new ConsistentHashRing(nodes, virtualNodes);
+    this.clients = new HashMap<>();
+
+    for (final ClusterNode node : nodes) {
+      if (!node.equals(self)) {
+        clients.put(node, new NodeClient(node, group, channelClass, maxResponseInBytes, requestTimeoutInMS));
+      }
+    }
+  }
+
+  /**
+   * @return the cluster set by the clusterNodes property, {@link #SINGLE_NODE} if none
+   */
+  public static Cluster fromProperties(@Nonnull final EventLoopGroup group, @Nonnull final Class<? extends SocketChannel> channelClass) {
+    final String nodesProperty = ServerProperties.clusterNodes.get();
+
+    if (nodesProperty.isEmpty()) {
+      return SINGLE_NODE;
+    }
+
+    final List<ClusterNode> nodes = new ArrayList<>();
+
+    for (final String node : nodesProperty.split(",")) {
+      if (!node.trim().isEmpty()) {
+        nodes.add(ClusterNode.parse(node));
+      }
+    }
+
+    final String selfProperty = ServerProperties.clusterSelf.get();
+    final ClusterNode self = selfProperty.isEmpty()
+        ? new ClusterNode("localhost", ServerProperties.PORT.get())
+        : ClusterNode.parse(selfProperty);
+
+    logger.info(String.format("Node %s joining the cluster %s", self, nodes));
+
+    return new Cluster(self, nodes, ServerProperties.clusterVirtualNodes.get(), group, channelClass,
+        ServerProperties.maxRequestBodyInBytes.get(), ServerProperties.clusterRequestTimeoutInMS.get());
+  }
+
+  public boolean isEnabled() {
+    return ring != null;
+  }
+
+  public boolean isLocal(@Nonnull final String orderId) {
+    return ring == null || getOwner(orderId).equals(self);
+  }
+
+  /**
+   * @return node owning the order, null for {@link #SINGLE_NODE}
+   */
+  public ClusterNode getOwner(@Nonnull final String orderId) {
+    return ring == null ? null : ring.getOwner(orderId);
+  }
+
+  /**
+   * Post the given body to the given node
+   *
+   * @param owner node to send the request to, not this node
+   * @param uri of the request
+   * @param content JSON body, released once sent
+   * @return completes with the response of the node, the caller has to release it. Fails with a {@link TimeoutException}
+   * if the node didn't answer in time
+   */
+  public CompletableFuture<FullHttpResponse> forward(@Nonnull final ClusterNode owner, @Nonnull final String uri,
+                                                     @Nonnull final ByteBuf content) {
+    final NodeClient client = clients.get(owner);
+
+    if (client == null) {
+      content.release();
+      final CompletableFuture<FullHttpResponse> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalArgumentException(String.format("%s is not another node of the cluster", owner)));
+      return failed;
+    }
+
+    final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri, content);
+    request.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+    request.headers().set(FORWARDED_BY, self.getId());
+
+    return client.send(request);
+  }
+
+  public void close() {
+    clients.values().forEach(NodeClient::close);
+  }
+}
@@ -0,0 +1,67 @@
+package cluster;
+
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * A server of the cluster, identified by the host and port it accepts orders on
+ */
+public final class ClusterNode {
+  private final String host;
+  private final int port;
+
+  public ClusterNode(@Nonnull final String host, final int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * @param hostAndPort host:port
+   */
+  public static ClusterNode parse(@Nonnull final String hostAndPort) {
+    final String value = hostAndPort.trim();
+    final int separator = value.lastIndexOf(':');
+
+    if (separator <= 0 || separator == value.length() - 1) {
+      throw new IllegalArgumentException(String.format("Cluster node %s is not host:port", hostAndPort));
+    }
+
+    return new ClusterNode(value.substring(0, separator), Integer.parseInt(value.substring(separator + 1)));
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public String getId() {
+    return host + ":" + port;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+
+    if (!(o instanceof ClusterNode)) {
+      return false;
+    }
+
+    final ClusterNode that = (ClusterNode) o;
+    return port == that.port && host.equals(that.host);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(host, port);
+  }
+
+  @Override
+  public String toString() {
+    return getId();
+  }
+}
@@ -0,0 +1,47 @@
+package cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+
+/**
+ * Consistent hashing of order ids over the cluster nodes. Every node is put at a number of points (virtual nodes) of a
+ * 64 bits ring, the murmur3 hash of "host:port#i", and an order belongs to the first point at or after the hash of its id.
+ * Virtual nodes spread every node over the whole ring so the orders are evenly split, and adding or removing a node
+ * only moves the orders of the arcs it takes or gives back, about 1/N of them
+ *
+ * Immutable, safe to share between threads
+ */
+public final class ConsistentHashRing {
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final NavigableMap<Long, ClusterNode> ring;
+
+  public ConsistentHashRing(@Nonnull final Collection<ClusterNode> nodes, final int virtualNodes) {
+    if (nodes.isEmpty() || virtualNodes <= 0) {
+      throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+    }
+
+    ring = new TreeMap<>();
+
+    for (final ClusterNode node : nodes) {
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.put(hash(node.getId() + "#" + i), node);
+      }
+    }
+  }
+
+  public ClusterNode getOwner(@Nonnull final String key) {
+    final Map.Entry<Long, ClusterNode> entry = ring.ceilingEntry(hash(key));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  private static long hash(@Nonnull final String value) {
+    return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+  }
+}
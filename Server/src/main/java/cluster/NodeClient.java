@@ -0,0 +1,184 @@
+package cluster;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * HTTP client of another node of the cluster. Requests share one persistent connection and are pipelined: they are
+ * written as they come and the node answers them in order, so every response completes the oldest pending request.
+ * The connection is opened on the first request and opened again on the next request once it is closed, requests
+ * pending when it closes fail.
+ *
+ * Every request has a deadline: once the oldest pending request is not answered in time the responses of the
+ * connection can't be trusted anymore, every pending request fails with a {@link TimeoutException} and the connection
+ * is closed
+ */
+final class NodeClient {
+  private static final Logger logger = Logger.getLogger(NodeClient.class);
+
+  private final ClusterNode node;
+  private final Bootstrap bootstrap;
+  private final long requestTimeoutInMS;
+  // Guarded by this
+  private ChannelFuture connection;
+
+  NodeClient(@Nonnull final ClusterNode node, @Nonnull final EventLoopGroup group, @Nonnull final Class<? extends SocketChannel> channelClass,
+             final int maxResponseInBytes, final long requestTimeoutInMS) {
+    this.node = node;
+    this.requestTimeoutInMS = requestTimeoutInMS;
+    this.bootstrap = new Bootstrap()
+        .group(group)
+        .channel(channelClass)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel ch) {
+            ch.pipeline().addLast(new HttpClientCodec());
+            ch.pipeline().addLast(new HttpObjectAggregator(maxResponseInBytes));
+            ch.pipeline().addLast(new ResponseHandler());
+          }
+        });
+  }
+
+  /**
+   * @param request sent to the node, released once written
+   * @return completes with the response of the node, the caller has to release it
+   */
+  CompletableFuture<FullHttpResponse> send(@Nonnull final FullHttpRequest request) {
+    final CompletableFuture<FullHttpResponse> response = new CompletableFuture<>();
+    request.headers().set(HttpHeaderNames.HOST, node.getId());
+    HttpUtil.setContentLength(request, request.content().readableBytes());
+
+    // Listeners run on the event loop of the channel, registering the pending response and writing the request
+    // there keeps the pending responses in the same order as the requests on the wire
+    connect().addListener((ChannelFutureListener) connected -> {
+      if (!connected.isSuccess()) {
+        request.release();
+        response.completeExceptionally(connected.cause());
+        return;
+      }
+
+      final Channel channel = connected.channel();
+      final ResponseHandler handler = channel.pipeline().get(ResponseHandler.class);
+
+      if (handler == null || !channel.isActive()) {
+        request.release();
+        response.completeExceptionally(new ClosedChannelException());
+        return;
+      }
+
+      handler.pending.add(response);
+      final ScheduledFuture<?> deadline = channel.eventLoop().schedule(() -> handler.expire(channel, response),
+          requestTimeoutInMS, TimeUnit.MILLISECONDS);
+      response.whenComplete((ignored, failure) -> deadline.cancel(false));
+
+      channel.writeAndFlush(request).addListener((ChannelFutureListener) written -> {
+        if (!written.isSuccess()) {
+          // The pending responses can't be matched anymore, closing fails all of them
+          logger.warn(String.format("Could not forward a request to %s", node), written.cause());
+          written.channel().close();
+        }
+      });
+    });
+
+    return response;
+  }
+
+  void close() {
+    final ChannelFuture current;
+
+    synchronized (this) {
+      current = connection;
+      connection = null;
+    }
+
+    if (current != null) {
+      current.channel().close();
+    }
+  }
+
+  private synchronized ChannelFuture connect() {
+    if (connection == null || (connection.isDone() && !connection.channel().isActive())) {
+      logger.info(String.format("Connecting to cluster node %s", node));
+      connection = bootstrap.connect(node.getHost(), node.getPort());
+    }
+
+    return connection;
+  }
+
+  /**
+   * Matches the responses of a connection with its pending requests, only touched on the event loop
+   */
+  private final class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+    private final ArrayDeque<CompletableFuture<FullHttpResponse>> pending = new ArrayDeque<>();
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpResponse response) {
+      final CompletableFuture<FullHttpResponse> oldest = pending.poll();
+
+      if (oldest == null) {
+        logger.warn(String.format("Dropping a response of %s that matches no request", node));
+        return;
+      }
+
+      oldest.complete(response.retain());
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+      failPending(new ClosedChannelException());
+      super.channelInactive(ctx);
+    }
+
+    /**
+     * Deadline of the given request, fail every pending request and close the connection if it is still waiting
+     */
+    void expire(@Nonnull final Channel channel, @Nonnull final CompletableFuture<FullHttpResponse> response) {
+      if (response.isDone()) {
+        return;
+      }
+
+      logger.warn(String.format("%s did not answer within %d ms, failing %d pending requests and closing the connection",
+          node, requestTimeoutInMS, pending.size()));
+      failPending(new TimeoutException(String.format("%s did not answer within %d ms", node, requestTimeoutInMS)));
+      channel.close();
+    }
+
+    private void failPending(@Nonnull final Throwable failure) {
+      CompletableFuture<FullHttpResponse> response;
+
+      while ((response = pending.poll()) != null) {
+        response.completeExceptionally(failure);
+      }
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      logger.error(String.format("Error on the connection to %s", node), cause);
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package common;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+/**
+ * Which order a full {@link Shelf} gives up to make room, selected for the overflow shelf by
+ * {@link ServerProperties#overflowEvictionPolicy}
+ *
+ * Every policy maps an order to a priority when the order is put on the shelf, the shelf keeps its orders sorted by
+ * that priority and evicts the lowest one. Priorities are not recomputed while the order sits on the shelf, except for
+ * the policies that {@link #usesCourierArrival()}: their orders are re-keyed once the dispatcher sets the courier
+ * arrival, check {@link ShelvesManager#setCourierArrivalTimeStamp(Order, long)}
+ *
+ * OLDEST: the order created first
+ * LOWEST_LIFE: the order with the lowest life left when it was put on the shelf
+ * SOONEST_EXPIRY: the order whose life drops to 0 first
+ * LEAST_LIKELY_TO_SURVIVE: the order with the least life margin at its courier arrival (expiry minus arrival), so an
+ * order that would expire before its courier shows up goes first. Until a dispatcher picks the courier arrival time
+ * it is assumed to be half way between {@link ServerProperties#dispatcherLowWaitTimeInSeconds} and
+ * {@link ServerProperties#dispatcherHighWaitTimeInSeconds} after the order creation
+ */
+public enum EvictionPolicy {
+  OLDEST {
+    @Override
+    public long getPriority(@Nonnull final Order order, final long now) {
+      return order.getCreateTimeStamp();
+    }
+  },
+  LOWEST_LIFE {
+    @Override
+    public long getPriority(@Nonnull final Order order, final long now) {
+      return (long) (order.getLifeAt(now) * LIFE_SCALE);
+    }
+  },
+  SOONEST_EXPIRY {
+    @Override
+    public long getPriority(@Nonnull final Order order, final long now) {
+      return order.getExpiryTimeStamp();
+    }
+  },
+  LEAST_LIKELY_TO_SURVIVE {
+    @Override
+    public long getPriority(@Nonnull final Order order, final long now) {
+      final long expiryTimeStamp = order.getExpiryTimeStamp();
+
+      if (expiryTimeStamp == Long.MAX_VALUE) {
+        return Long.MAX_VALUE;
+      }
+
+      return expiryTimeStamp - getCourierArrivalTimeStamp(order);
+    }
+
+    @Override
+    public boolean usesCourierArrival() {
+      return true;
+    }
+  };
+
+  // Life is a float ratio, keep 6 digits of it in the long priority
+  private static final long LIFE_SCALE = 1_000_000;
+
+  /**
+   * @param now time reference in millis, the time the order is put on the shelf
+   * @return eviction priority of the order, the lowest one is evicted first
+   */
+  public abstract long getPriority(@Nonnull final Order order, final long now);
+
+  /**
+   * @return true if the priority depends on {@link Order#getCourierArrivalTimeStamp()}
+   */
+  public boolean usesCourierArrival() {
+    return false;
+  }
+
+  private static long getCourierArrivalTimeStamp(@Nonnull final Order order) {
+    if (order.getCourierArrivalTimeStamp() > 0) {
+      return order.getCourierArrivalTimeStamp();
+    }
+
+    final long meanWaitInMS = TimeUnit.SECONDS.toMillis(ServerProperties.dispatcherLowWaitTimeInSeconds.get()
+        + ServerProperties.dispatcherHighWaitTimeInSeconds.get()) / 2;
+
+    return order.getCreateTimeStamp() + meanWaitInMS;
+  }
+}
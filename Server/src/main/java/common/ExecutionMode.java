@@ -0,0 +1,76 @@
+package common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * How order processing and dispatching work is scheduled on threads
+ *
+ * {@link #FIXED_POOL} a fixed pool of long running workers, each worker loops on {@link Queue#fetch()}.
+ * Concurrency is capped by the pool size
+ *
+ * {@link #VIRTUAL_THREADS} a single feeder per queue ({@link OrderTaskFeeder}) fetches orders and runs every order
+ * as its own task on a virtual thread, so blocking waits (like the courier wait) do not pin platform threads.
+ * Virtual threads need JDK 21+, on older JVMs this mode falls back to a pool of platform threads bounded by the
+ * thread count, the feeder waits for a free thread so the backlog stays in the queue
+ */
+public enum ExecutionMode {
+  FIXED_POOL,
+  VIRTUAL_THREADS;
+
+  private static final Logger logger = Logger.getLogger(ExecutionMode.class);
+
+  /**
+   * @param threadCount pool size, used by {@link #VIRTUAL_THREADS} only when it falls back to platform threads
+   * @return {@link ExecutorService} matching this mode
+   */
+  public ExecutorService newExecutorService(final int threadCount) {
+    if (this == FIXED_POOL) {
+      return Executors.newFixedThreadPool(threadCount);
+    }
+
+    // Looked up reflectively so the server still builds and runs on JDK 8
+    try {
+      final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (final ReflectiveOperationException e) {
+      logger.warn(String.format("Virtual threads are not available on this JVM (JDK 21+ is needed). Falling back to a pool of %d threads",
+          threadCount));
+      return newBoundedPool(threadCount);
+    }
+  }
+
+  /**
+   * @return number of threads of the given executor, 0 if it is not bounded (a task per virtual thread)
+   */
+  public static int getPoolSize(@Nonnull final ExecutorService executorService) {
+    return executorService instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executorService).getMaximumPoolSize() : 0;
+  }
+
+  /**
+   * Pool of at most threadCount threads with as many tasks waiting, submitting more blocks the caller until a task
+   * is taken, rather than growing the pool or rejecting the task
+   */
+  static ExecutorService newBoundedPool(final int threadCount) {
+    return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threadCount),
+        (task, executor) -> {
+          if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+          }
+
+          try {
+            executor.getQueue().put(task);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free thread", e);
+          }
+        });
+  }
+}
@@ -1,6 +1,11 @@
 package common;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import org.HdrHistogram.Histogram;
 import org.apache.log4j.Logger;
 
 /**
@@ -20,6 +25,12 @@ import org.apache.log4j.Logger;
  * {@link GlobalStats#dispatchedOrdersCount} gets incremented every time the server dispatches an order successfully
  * {@link GlobalStats#failedToDispatchCount} gets incremented every time the server fails to dispatch an order
  * {@link GlobalStats#discardedOrdersCount} gets incremented every time the server discards an order before it's being picked up
+ *
+ * The reporter also logs per {@link Shelf} occupancy and slot contention counters
+ *
+ * Latency of every stage of an order's life is recorded in a {@link LatencyStats} histogram:
+ * receive->enqueue (time spent in the handler), enqueue->shelved (time waiting in the queue + placement),
+ * shelved->picked-up and shelved->expired. The reporter logs p50/p99/p999/max of the last interval for each of them
  */
 public class GlobalStats {
   private static GlobalStats INSTANCE;
@@ -29,6 +40,11 @@ public class GlobalStats {
   private AtomicInteger dispatchedOrdersCount = new AtomicInteger();
   private AtomicInteger failedToDispatchCount = new AtomicInteger();
   private AtomicInteger expiredOrdersCount = new AtomicInteger();
+  private AtomicInteger rejectedRequestsCount = new AtomicInteger();
+  private final LatencyStats receiveToEnqueueLatency = new LatencyStats("receive->enqueue");
+  private final LatencyStats enqueueToShelvedLatency = new LatencyStats("enqueue->shelved");
+  private final LatencyStats shelvedToPickedUpLatency = new LatencyStats("shelved->picked-up");
+  private final LatencyStats shelvedToExpiredLatency = new LatencyStats("shelved->expired");
 
   private GlobalStats() {
     final Thread statsReporterThread = new Thread(new StatsReporter());
@@ -54,6 +70,11 @@ public class GlobalStats {
     dispatchedOrdersCount.set(0);
     failedToDispatchCount.set(0);
     discardedOrdersCount.set(0);
+    rejectedRequestsCount.set(0);
+
+    for (final LatencyStats latencyStats : getLatencyStats()) {
+      latencyStats.reset();
+    }
   }
 
   public void reportDiscardedOrder() {
@@ -64,20 +85,69 @@ public class GlobalStats {
     receivedOrdersCount.addAndGet(1);
   }
 
+  public void reportReceivedOrders(final int count) {
+    receivedOrdersCount.addAndGet(count);
+  }
+
   public void reportProcessedOrder() {
     processedOrdersCount.addAndGet(1);
   }
 
-  public void reportDispatchedOrder() {
+  /**
+   * Order made it to the order and dispatcher queues. Consumers might pick an order up as soon as it is added, so
+   * callers stamp {@link Order#setEnqueuedNanoTime(long)} before adding it and report it once both queues took it,
+   * the order is stamped now otherwise
+   */
+  public void reportEnqueuedOrder(@Nonnull final Order order) {
+    long enqueuedNanoTime = order.getEnqueuedNanoTime();
+
+    if (enqueuedNanoTime == 0) {
+      enqueuedNanoTime = System.nanoTime();
+      order.setEnqueuedNanoTime(enqueuedNanoTime);
+    }
+
+    if (order.getReceivedNanoTime() != 0) {
+      receiveToEnqueueLatency.record(enqueuedNanoTime - order.getReceivedNanoTime());
+    }
+  }
+
+  /**
+   * Order has been placed on a shelf
+   */
+  public void reportShelvedOrder(@Nonnull final Order order) {
+    final long now = System.nanoTime();
+    order.setShelvedNanoTime(now);
+
+    if (order.getEnqueuedNanoTime() != 0) {
+      enqueueToShelvedLatency.record(now - order.getEnqueuedNanoTime());
+    }
+  }
+
+  public void reportDispatchedOrder(@Nonnull final Order order) {
     dispatchedOrdersCount.addAndGet(1);
+
+    if (order.getShelvedNanoTime() != 0) {
+      shelvedToPickedUpLatency.record(System.nanoTime() - order.getShelvedNanoTime());
+    }
+  }
+
+  /**
+   * A request (or binary frame) was answered as overloaded, check protocol.Backpressure
+   */
+  public void reportRejectedRequest() {
+    rejectedRequestsCount.addAndGet(1);
   }
 
   public void reportFailedDispatch() {
     failedToDispatchCount.addAndGet(1);
   }
 
-  public void reportExpiredOrder() {
+  public void reportExpiredOrder(@Nonnull final Order order) {
     expiredOrdersCount.addAndGet(1);
+
+    if (order.getShelvedNanoTime() != 0) {
+      shelvedToExpiredLatency.record(System.nanoTime() - order.getShelvedNanoTime());
+    }
   }
 
   public AtomicInteger getReceivedOrdersCount() {
@@ -104,6 +174,30 @@ public class GlobalStats {
     return expiredOrdersCount;
   }
 
+  public AtomicInteger getRejectedRequestsCount() {
+    return rejectedRequestsCount;
+  }
+
+  public LatencyStats getReceiveToEnqueueLatency() {
+    return receiveToEnqueueLatency;
+  }
+
+  public LatencyStats getEnqueueToShelvedLatency() {
+    return enqueueToShelvedLatency;
+  }
+
+  public LatencyStats getShelvedToPickedUpLatency() {
+    return shelvedToPickedUpLatency;
+  }
+
+  public LatencyStats getShelvedToExpiredLatency() {
+    return shelvedToExpiredLatency;
+  }
+
+  public List<LatencyStats> getLatencyStats() {
+    return Arrays.asList(receiveToEnqueueLatency, enqueueToShelvedLatency, shelvedToPickedUpLatency, shelvedToExpiredLatency);
+  }
+
   public static class StatsReporter implements Runnable {
     private static final Logger logger = Logger.getLogger(StatsReporter.class);
 
@@ -113,21 +207,39 @@ public class GlobalStats {
         logger.info("Starting GlobalStats reporter");
 
         while (true) {
-          final String report = String.format("GlobalStats - # Received Orders: %d, # Processed Orders: %d, # Dispatched Orders: %d, # Discarded Orders: %d, # Failed Pickup: %d, # Expired: %d",
+          final String report = String.format("GlobalStats - # Received Orders: %d, # Processed Orders: %d, # Dispatched Orders: %d, # Discarded Orders: %d, # Failed Pickup: %d, # Expired: %d, # Rejected Requests: %d",
               GlobalStats.getInstance().getReceivedOrdersCount().get(),
               GlobalStats.getInstance().getProcessedOrdersCount().get(),
               GlobalStats.getInstance().getDispatchedOrdersCount().get(),
               GlobalStats.getInstance().getDiscardedOrdersCount().get(),
               GlobalStats.getInstance().getFailedToDispatchCount().get(),
-              GlobalStats.getInstance().getExpiredOrdersCount().get());
+              GlobalStats.getInstance().getExpiredOrdersCount().get(),
+              GlobalStats.getInstance().getRejectedRequestsCount().get());
 
           logger.info(report);
 
+          for (final LatencyStats latencyStats : GlobalStats.getInstance().getLatencyStats()) {
+            final Histogram histogram = latencyStats.snapshotInterval();
+            logger.info(String.format("LatencyStats - %s (ms) # Count: %d, p50: %.3f, p99: %.3f, p999: %.3f, max: %.3f",
+                latencyStats.getName(), histogram.getTotalCount(),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(99)),
+                toMillis(histogram.getValueAtPercentile(99.9)), toMillis(histogram.getMaxValue())));
+          }
+
+          for (final Shelf shelf : ShelvesManager.getInstance().getShelves()) {
+            logger.info(String.format("ShelfStats - %s # Orders: %d/%d, # Rejected (full): %d, # Slot CAS retries: %d",
+                shelf.getName(), shelf.getOrdersCount(), shelf.getCapacity(), shelf.getRejectedCount(), shelf.getSlotContentionCount()));
+          }
+
           Thread.sleep(ServerProperties.statsReporterIntervalInMS.get());
         }
       } catch (InterruptedException e) {
         logger.warn("StatsReporter sleep interrupted");
       }
     }
+
+    private static double toMillis(final long nanos) {
+      return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
   }
 }
@@ -0,0 +1,97 @@
+package common;
+
+import javax.annotation.Nonnull;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * High dynamic range latency histogram for one stage of an order's life
+ *
+ * Recording is wait-free ({@link Recorder}), any number of threads can record concurrently without locking.
+ * Readers take interval snapshots with {@link #snapshotInterval()}, every snapshot covers the values recorded
+ * since the previous one. All the values are also accumulated in a since-start histogram, read through
+ * {@link #getTotal()} or, without copying it, through the getTotal* accessors after a {@link #flush()}
+ */
+public class LatencyStats {
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final String name;
+  private final Recorder recorder;
+  private final Histogram total;
+  private Histogram interval;
+  private Histogram report;
+  private Histogram recorded;
+
+  public LatencyStats(@Nonnull final String name) {
+    this.name = name;
+    this.recorder = new Recorder(SIGNIFICANT_DIGITS);
+    this.total = new Histogram(SIGNIFICANT_DIGITS);
+    this.interval = new Histogram(SIGNIFICANT_DIGITS);
+    this.report = new Histogram(SIGNIFICANT_DIGITS);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param latencyInNanos negative values (clock going backward) are recorded as 0
+   */
+  public void record(final long latencyInNanos) {
+    recorder.recordValue(Math.max(0, latencyInNanos));
+  }
+
+  /**
+   * Move the values recorded so far into the total and the current interval. Flushing doesn't end the interval,
+   * so readers of the total don't steal values from {@link #snapshotInterval()}
+   */
+  public synchronized void flush() {
+    recorded = recorder.getIntervalHistogram(recorded);
+    interval.add(recorded);
+    total.add(recorded);
+  }
+
+  /**
+   * @return histogram of the values recorded since the previous snapshot. The returned instance is recycled
+   * by the next snapshot so it must not be kept around
+   */
+  public synchronized Histogram snapshotInterval() {
+    flush();
+
+    final Histogram snapshot = interval;
+    interval = report;
+    interval.reset();
+    report = snapshot;
+
+    return snapshot;
+  }
+
+  /**
+   * @return copy of all the values recorded since start (or the last {@link #reset()}) up to the last flush
+   */
+  public synchronized Histogram getTotal() {
+    return total.copy();
+  }
+
+  public synchronized long getTotalCount() {
+    return total.getTotalCount();
+  }
+
+  public synchronized long getTotalValueAtPercentile(final double percentile) {
+    return total.getValueAtPercentile(percentile);
+  }
+
+  public synchronized long getTotalMax() {
+    return total.getMaxValue();
+  }
+
+  public synchronized double getTotalMean() {
+    return total.getMean();
+  }
+
+  public synchronized void reset() {
+    recorder.reset();
+    total.reset();
+    interval.reset();
+  }
+}
@@ -1,6 +1,8 @@
 package common;
 
 import com.google.gson.Gson;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
@@ -18,6 +20,9 @@ import javax.annotation.Nonnull;
  * },
  */
 public final class Order {
+  // Gson is thread-safe and caches its type adapters, share one instance instead of building one per call
+  private static final Gson GSON = new Gson();
+
   @Nonnull
   private String id;
   @Nonnull
@@ -29,6 +34,18 @@ public final class Order {
   private float decayRate;
   private final long createTimeStamp;
   private long ageInSeconds;
+  // System.nanoTime() of every pipeline stage, only used for latency stats (transient so they stay out of the JSON)
+  private transient long receivedNanoTime;
+  private transient long enqueuedNanoTime;
+  private transient long shelvedNanoTime;
+  // Epoch millis the courier is expected at, set by the dispatcher once it picks the courier (0 until then)
+  private transient volatile long courierArrivalTimeStamp;
+  // Decay state, the order decays at decayRate * decay modifier of the shelf it is on, check placedOn(Temp, long).
+  // Written by the thread placing the order before the shelf indexes it, so readers going through the shelf see it
+  private transient float decayedLife;
+  private transient long segmentStartTimeStamp;
+  private transient int decayModifier;
+  private transient volatile long expiryTimeStamp;
 
   public Order() {
     this.createTimeStamp = System.currentTimeMillis();
@@ -36,13 +53,21 @@ public final class Order {
   }
 
   public Order(@Nonnull final String id, @Nonnull final String name, @Nonnull final Temp temp, final int shelfLife, final float decayRate) {
+    this(id, name, temp, shelfLife, decayRate, System.currentTimeMillis());
+  }
+
+  /**
+   * Restore an order created earlier, e.g. replayed from the journal
+   */
+  public Order(@Nonnull final String id, @Nonnull final String name, @Nonnull final Temp temp, final int shelfLife,
+               final float decayRate, final long createTimeStamp) {
     this.id = id;
     this.name = name;
     this.temp = temp;
     this.shelfLife = shelfLife;
     this.decayRate = decayRate;
     this.orderLife = 0;
-    this.createTimeStamp = System.currentTimeMillis();
+    this.createTimeStamp = createTimeStamp;
   }
 
   /**
@@ -52,7 +77,17 @@ public final class Order {
    * @return {@link Order} represents the given input orderJson
    */
   public static Order createFromJson(@Nonnull final String jsonOrder) {
-    return new Gson().fromJson(jsonOrder, Order.class);
+    return GSON.fromJson(jsonOrder, Order.class);
+  }
+
+  /**
+   * Same as {@link #createFromJson(String)} for a JSON array of orders
+   *
+   * @param jsonOrders to be deserialized
+   * @return list of {@link Order} in the same order as the input array
+   */
+  public static List<Order> createListFromJson(@Nonnull final String jsonOrders) {
+    return Arrays.asList(GSON.fromJson(jsonOrders, Order[].class));
   }
 
   public float getDecayRate() {
@@ -79,6 +114,95 @@ public final class Order {
     return createTimeStamp;
   }
 
+  /**
+   * Precomputed when the order lands on a shelf, see {@link #placedOn(Temp, long)}. Until then the order is assumed to
+   * decay at its own temp modifier since its creation
+   *
+   * @return epoch millis at which this order's life drops to 0, {@link Long#MAX_VALUE} if it never decays
+   */
+  public long getExpiryTimeStamp() {
+    long expiry = expiryTimeStamp;
+
+    if (expiry == 0) {
+      // Not placed yet, fields might have been set after construction (Gson) so compute it now
+      expiry = computeExpiryTimeStamp();
+      expiryTimeStamp = expiry;
+    }
+
+    return expiry;
+  }
+
+  /**
+   * The order landed on a shelf, life decayed so far is accounted at the previous shelf's decay modifier and the
+   * expiry deadline is recomputed with the new one. The first shelf counts since the order creation
+   *
+   * Must only be called while the order is on no shelf index, the expiry is part of the shelves sort keys
+   *
+   * @param shelfTemperature temperature of the shelf, decides the decay modifier
+   * @param timeStamp time the order landed on the shelf in millis
+   */
+  void placedOn(@Nonnull final Temp shelfTemperature, final long timeStamp) {
+    if (segmentStartTimeStamp == 0) {
+      segmentStartTimeStamp = createTimeStamp;
+    } else {
+      decayedLife += decayRate * getDecayModifier() * Math.max(0, timeStamp - segmentStartTimeStamp) / 1000f;
+      segmentStartTimeStamp = timeStamp;
+    }
+
+    decayModifier = shelfTemperature.getDecayModifier();
+    expiryTimeStamp = computeExpiryTimeStamp();
+  }
+
+  /**
+   * Resume the decay of an order restored after a restart: the order keeps the given expiry deadline, as if it had stayed
+   * on a shelf of the given temperature while the server was down. Must be called before the order is placed
+   *
+   * @param expiryTimeStamp deadline the order had when it was saved
+   * @param shelfTemperature temperature of the shelf the deadline was computed on
+   * @param now time the order is restored in millis
+   */
+  public void restoreDecay(final long expiryTimeStamp, @Nonnull final Temp shelfTemperature, final long now) {
+    final double decayPerSecond = (double) decayRate * shelfTemperature.getDecayModifier();
+
+    if (shelfLife <= 0 || decayPerSecond <= 0 || expiryTimeStamp == Long.MAX_VALUE) {
+      return;
+    }
+
+    final double remainingLife = decayPerSecond * Math.max(0, expiryTimeStamp - now) / 1000d;
+    decayedLife = (float) Math.max(0, shelfLife - remainingLife);
+    decayModifier = shelfTemperature.getDecayModifier();
+    segmentStartTimeStamp = now;
+    this.expiryTimeStamp = computeExpiryTimeStamp();
+  }
+
+  /**
+   * Closed form of {@link #getLifeAt(long)}: life hits 0 once the (whole seconds) time on the current shelf reaches
+   * (shelfLife - decayed life) / (decayRate * decayModifier)
+   */
+  private long computeExpiryTimeStamp() {
+    if (shelfLife <= 0) {
+      return createTimeStamp; // getLifeAt() reports 0 for these, they are expired right away
+    }
+
+    final double decayPerSecond = (double) decayRate * getDecayModifier();
+
+    if (decayPerSecond <= 0) {
+      return Long.MAX_VALUE;
+    }
+
+    final double remainingLife = Math.max(0, shelfLife - decayedLife);
+
+    return getSegmentStartTimeStamp() + TimeUnit.SECONDS.toMillis((long) Math.ceil(remainingLife / decayPerSecond));
+  }
+
+  private int getDecayModifier() {
+    return decayModifier == 0 ? temp.getDecayModifier() : decayModifier;
+  }
+
+  private long getSegmentStartTimeStamp() {
+    return segmentStartTimeStamp == 0 ? createTimeStamp : segmentStartTimeStamp;
+  }
+
   public long getAgeInSeconds() {
     return ageInSeconds;
   }
@@ -87,27 +211,86 @@ public final class Order {
     return orderLife;
   }
 
+  public long getReceivedNanoTime() {
+    return receivedNanoTime;
+  }
+
+  public void setReceivedNanoTime(final long receivedNanoTime) {
+    this.receivedNanoTime = receivedNanoTime;
+  }
+
+  public long getEnqueuedNanoTime() {
+    return enqueuedNanoTime;
+  }
+
+  public void setEnqueuedNanoTime(final long enqueuedNanoTime) {
+    this.enqueuedNanoTime = enqueuedNanoTime;
+  }
+
+  public long getShelvedNanoTime() {
+    return shelvedNanoTime;
+  }
+
+  public void setShelvedNanoTime(final long shelvedNanoTime) {
+    this.shelvedNanoTime = shelvedNanoTime;
+  }
+
+  public long getCourierArrivalTimeStamp() {
+    return courierArrivalTimeStamp;
+  }
+
+  public void setCourierArrivalTimeStamp(final long courierArrivalTimeStamp) {
+    this.courierArrivalTimeStamp = courierArrivalTimeStamp;
+  }
+
   @Override
   public String toString() {
-    return new Gson().toJson(this);
+    return GSON.toJson(this);
   }
 
   public float updateAndGetLife() {
-    return updateAndGetLife(() -> System.currentTimeMillis());
+    return updateAndGetLife(System.currentTimeMillis());
   }
 
   public float updateAndGetLife(@Nonnull final Supplier<Long> timeReferenceSupplier) {
+    return updateAndGetLife(timeReferenceSupplier.get().longValue());
+  }
+
+  /**
+   * Refresh the serialized life and age of the order, only needed before reporting it
+   *
+   * @param timeStamp time reference in millis
+   * @return life of the order at the given time
+   */
+  public float updateAndGetLife(final long timeStamp) {
     if(shelfLife <= 0) {
       return 0f; // avoid dividing by 0
     }
 
-    this.ageInSeconds = TimeUnit.MILLISECONDS.toSeconds(timeReferenceSupplier.get() - createTimeStamp);
+    this.ageInSeconds = TimeUnit.MILLISECONDS.toSeconds(timeStamp - createTimeStamp);
 
-    orderLife = ((shelfLife - decayRate * ageInSeconds * temp.getDecayModifier()) / shelfLife);
+    orderLife = getLifeAt(timeStamp);
 
     return orderLife;
   }
 
+  /**
+   * Same as {@link #updateAndGetLife(long)} without updating the order. Derived from the decay state, life decayed on
+   * the previous shelves plus the whole seconds spent on the current one
+   *
+   * @param timeStamp time reference in millis
+   * @return life of the order at the given time
+   */
+  public float getLifeAt(final long timeStamp) {
+    if (shelfLife <= 0) {
+      return 0f;
+    }
+
+    final long secondsOnShelf = TimeUnit.MILLISECONDS.toSeconds(timeStamp - getSegmentStartTimeStamp());
+
+    return (shelfLife - decayedLife - decayRate * secondsOnShelf * getDecayModifier()) / shelfLife;
+  }
+
   @Override
   public int hashCode() {
     return (this.id + this.name + this.decayRate + this.temp + this.shelfLife).hashCode();
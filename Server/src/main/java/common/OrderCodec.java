@@ -0,0 +1,68 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nonnull;
+
+/**
+ * Binary form of an {@link Order} shared by the on-disk formats (journal, log queue):
+ * [id][name][byte temp][int shelfLife][float decayRate][long createTimeStamp], strings are
+ * [unsigned short length][UTF-8 bytes]
+ */
+public final class OrderCodec {
+  private static final int FIXED_LENGTH = 2 + 2 + 1 + 4 + 4 + 8;
+  // A UTF-16 char never takes more than 3 UTF-8 bytes (a surrogate pair takes 4)
+  private static final int MAX_BYTES_PER_CHAR = 3;
+  private static final Temp[] TEMPS = Temp.values();
+
+  private OrderCodec() {
+  }
+
+  /**
+   * @return upper bound of the encoded length of the order
+   */
+  public static int getMaxLength(@Nonnull final Order order) {
+    return FIXED_LENGTH + MAX_BYTES_PER_CHAR * (order.getId().length() + order.getName().length());
+  }
+
+  /**
+   * @return upper bound of the encoded length of the string
+   */
+  public static int getMaxLength(@Nonnull final String value) {
+    return 2 + MAX_BYTES_PER_CHAR * value.length();
+  }
+
+  /**
+   * The buffer must have {@link #getMaxLength(Order)} bytes left
+   */
+  public static void put(@Nonnull final ByteBuffer buffer, @Nonnull final Order order) {
+    putString(buffer, order.getId());
+    putString(buffer, order.getName());
+    buffer.put((byte) order.getTemp().ordinal())
+        .putInt(order.getShelfLife())
+        .putFloat(order.getDecayRate())
+        .putLong(order.getCreateTimeStamp());
+  }
+
+  public static Order get(@Nonnull final ByteBuffer buffer) {
+    final String id = getString(buffer);
+    final String name = getString(buffer);
+    return new Order(id, name, TEMPS[buffer.get()], buffer.getInt(), buffer.getFloat(), buffer.getLong());
+  }
+
+  public static void putString(@Nonnull final ByteBuffer buffer, @Nonnull final String value) {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+    if (bytes.length > 0xFFFF) {
+      throw new IllegalArgumentException(String.format("String of %d bytes is too long to encode", bytes.length));
+    }
+
+    buffer.putShort((short) bytes.length).put(bytes);
+  }
+
+  public static String getString(@Nonnull final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
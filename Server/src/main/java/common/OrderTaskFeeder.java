@@ -0,0 +1,56 @@
+package common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Fetches orders from a {@link Queue} and submits every order as its own task to an {@link ExecutorService}
+ * which runs the given {@link Processor}. Used by {@link ExecutionMode#VIRTUAL_THREADS}
+ */
+public class OrderTaskFeeder implements Runnable {
+  private static final Logger logger = Logger.getLogger(OrderTaskFeeder.class);
+  private final Queue queue;
+  private final Processor processor;
+  private final ExecutorService executorService;
+
+  public OrderTaskFeeder(@Nonnull final Queue queue, @Nonnull final Processor processor, @Nonnull final ExecutorService executorService) {
+    this.queue = queue;
+    this.processor = processor;
+    this.executorService = executorService;
+  }
+
+  @Override
+  public void run() {
+    logger.info("Starting OrderTaskFeeder thread.");
+    run(() -> true);
+  }
+
+  /**
+   * Keep running in a loop while the given condition is true!
+   *
+   * @param condition the condition when met Run will end (the thread will stop)
+   */
+  public void run(@Nonnull final Supplier<Boolean> condition) {
+    while (condition.get()) {
+      try {
+        final Order order = queue.fetch();
+        executorService.execute(() -> {
+          try {
+            processor.process(order);
+          } catch (final Exception e) {
+            logger.error(String.format("Error while processing order %s", order), e);
+          }
+        });
+      } catch (final InterruptedException e) {
+        logger.warn("OrderTaskFeeder interrupted, stopping");
+        Thread.currentThread().interrupt();
+        return;
+      } catch (final Exception e) {
+        // We want this thread to keep running so we don't wanna any exception to escape
+        logger.error("Error while pooling from the queue", e);
+      }
+    }
+  }
+}
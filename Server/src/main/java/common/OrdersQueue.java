@@ -1,29 +1,148 @@
 package common;
 
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nonnull;
 
 /**
  * {@link Queue} implementation.
  *
- * This implementation Blocks on fetch.
+ * This implementation Blocks on fetch. It is bounded, add fails once {@link ServerProperties#ordersQueueCapacity} orders are waiting.
+ * Orders are kept in an {@link ArrayDeque} behind a single lock: {@link #addAll(List)} adds the whole batch and
+ * {@link #fetchBatch(int, long)} drains a whole batch with one lock acquisition, and consumers are signaled once per batch
  *
  */
 public class OrdersQueue implements Queue {
-  private final BlockingDeque<Order> deque;
+  private final int capacity;
+  private final ArrayDeque<Order> deque;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
 
   public OrdersQueue() {
-    this.deque = new LinkedBlockingDeque<>();
+    this(ServerProperties.ordersQueueCapacity.get());
+  }
+
+  public OrdersQueue(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException(String.format("Invalid queue capacity %d", capacity));
+    }
+
+    this.capacity = capacity;
+    this.deque = new ArrayDeque<>(Math.min(capacity, 1024));
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
   }
 
   @Override
   public Order fetch() throws InterruptedException {
-    return deque.take();
+    lock.lockInterruptibly();
+
+    try {
+      while (deque.isEmpty()) {
+        notEmpty.await();
+      }
+
+      final Order order = deque.pollFirst();
+
+      // Wake up the next consumer for what is left
+      if (!deque.isEmpty()) {
+        notEmpty.signal();
+      }
+
+      return order;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public List<Order> fetchBatch(final int max, final long timeoutInMS) throws InterruptedException {
+    long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutInMS);
+    lock.lockInterruptibly();
+
+    try {
+      while (deque.isEmpty()) {
+        if (nanos <= 0) {
+          return Collections.emptyList();
+        }
+
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+
+      final List<Order> orders = new ArrayList<>(Math.min(max, deque.size()));
+
+      while (orders.size() < max && !deque.isEmpty()) {
+        orders.add(deque.pollFirst());
+      }
+
+      // Wake up the next consumer for what is left
+      if (!deque.isEmpty()) {
+        notEmpty.signal();
+      }
+
+      return orders;
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
   public boolean add(@Nonnull Order order) {
-    return deque.offer(order);
+    lock.lock();
+
+    try {
+      if (deque.size() >= capacity) {
+        return false;
+      }
+
+      deque.addLast(order);
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Orders are added in the given order until the queue is full, the rest are rejected
+   */
+  @Override
+  public boolean[] addAll(@Nonnull final List<Order> orders) {
+    final boolean[] result = new boolean[orders.size()];
+    lock.lock();
+
+    try {
+      final int added = Math.min(result.length, capacity - deque.size());
+
+      for (int i = 0; i < added; i++) {
+        deque.addLast(orders.get(i));
+        result[i] = true;
+      }
+
+      // One consumer at a time, every consumer passes the signal on while orders are left
+      if (added > 0) {
+        notEmpty.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return result;
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+
+    try {
+      return deque.size();
+    } finally {
+      lock.unlock();
+    }
   }
 }
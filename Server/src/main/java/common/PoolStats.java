@@ -0,0 +1,43 @@
+package common;
+
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+
+/**
+ * Utilization of a pool of consumers (order processors, dispatchers)
+ *
+ * {@link #getActiveCount()} is the number of tasks (an order or a batch of orders) being worked on right now, for dispatchers that is the
+ * number of couriers in flight. {@link #getSize()} is the number of threads of the pool, 0 when the pool is unbounded
+ * (a virtual thread per task with {@link ExecutionMode#VIRTUAL_THREADS}, its fallback pool on older JVMs is bounded)
+ */
+public class PoolStats {
+  private final String name;
+  private final int size;
+  private final LongAdder active;
+
+  public PoolStats(@Nonnull final String name, final int size) {
+    this.name = name;
+    this.size = size;
+    this.active = new LongAdder();
+  }
+
+  public void taskStarted() {
+    active.increment();
+  }
+
+  public void taskFinished() {
+    active.decrement();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getActiveCount() {
+    return active.sum();
+  }
+}
@@ -1,5 +1,6 @@
 package common;
 
+import java.util.List;
 import javax.annotation.Nonnull;
 
 public interface Queue {
@@ -10,6 +11,17 @@ public interface Queue {
    */
   Order fetch() throws InterruptedException;
 
+  /**
+   * Fetch a batch of orders from the queue
+   *
+   * Waits up to the given timeout for the first order, then takes whatever else is already waiting without blocking
+   *
+   * @param max maximum number of orders to fetch
+   * @param timeoutInMS how long to wait for the first order
+   * @return fetched orders in queue order, empty if no order arrived before the timeout
+   */
+  List<Order> fetchBatch(final int max, final long timeoutInMS) throws InterruptedException;
+
   /**
    * add message to the queue
    *
@@ -17,4 +29,25 @@ public interface Queue {
    * @return true if the given Order has been added to the queue, false otherwise
    */
   boolean add(@Nonnull final Order order);
+
+  /**
+   * @return number of orders waiting in the queue, might be approximate depending on the concrete implementation
+   */
+  int size();
+
+  /**
+   * add a batch of messages to the queue
+   *
+   * @param orders to be added
+   * @return result per order, in the same order as the given orders. true if the order has been added, false otherwise
+   */
+  default boolean[] addAll(@Nonnull final List<Order> orders) {
+    final boolean[] result = new boolean[orders.size()];
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = add(orders.get(i));
+    }
+
+    return result;
+  }
 }
@@ -0,0 +1,40 @@
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import journal.JournalMode;
+
+/**
+ * {@link Queue} implementation the server hands orders over with, selected by {@link ServerProperties#queueType}
+ *
+ * LINKED_BLOCKING_DEQUE: {@link OrdersQueue}, bounded by {@link ServerProperties#ordersQueueCapacity}, one lock for producers
+ * and consumers. Orders are rejected (503) when it is full
+ * RING_BUFFER: {@link RingBufferQueue}, bounded by {@link ServerProperties#ringBufferQueueCapacity} and lock-free,
+ * consumers wait according to {@link ServerProperties#ringBufferWaitStrategy}. Orders are rejected (503) when the ring is full
+ * SEGMENTED_LOG: {@link SegmentedLogQueue}, memory-mapped segment files in a directory per queue under
+ * {@link ServerProperties#logQueueDirectory}, bounded by {@link ServerProperties#logQueueCapacity}. Consumers resume
+ * from their offset after a restart, unless the journal is enabled: it restores the queued orders itself
+ */
+public enum QueueType {
+  LINKED_BLOCKING_DEQUE,
+  RING_BUFFER,
+  SEGMENTED_LOG;
+
+  /**
+   * @param name of the queue, names its directory for SEGMENTED_LOG
+   */
+  public Queue newQueue(@Nonnull final String name) throws IOException {
+    if (this == RING_BUFFER) {
+      return new RingBufferQueue(ServerProperties.ringBufferQueueCapacity.get(), ServerProperties.ringBufferWaitStrategy.get());
+    }
+
+    if (this == SEGMENTED_LOG) {
+      return new SegmentedLogQueue(new File(ServerProperties.logQueueDirectory.get(), name),
+          ServerProperties.logQueueSegmentSizeInBytes.get(), ServerProperties.logQueueCapacity.get(),
+          ServerProperties.journalMode.get() == JournalMode.DISABLED);
+    }
+
+    return new OrdersQueue();
+  }
+}
@@ -6,6 +6,8 @@ import javax.annotation.Nonnull;
  * General exception for our sever, all other specific exceptions should extend this class
  */
 public class RestaurantException extends Exception {
+  private static final long serialVersionUID = 1L;
+
   public RestaurantException(@Nonnull final String message, @Nonnull final Exception e) {
     super(message, e);
   }
@@ -0,0 +1,269 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nonnull;
+
+/**
+ * {@link Queue} implementation on a preallocated, bounded, multi-producer/multi-consumer ring buffer.
+ *
+ * Every slot carries a sequence number telling producers and consumers whose turn it is, so a producer
+ * (or consumer) only competes on one CAS of the tail (or head) cursor and never takes a lock. The cursors are
+ * padded to their own cache line so producers and consumers don't invalidate each other's line.
+ * No node is allocated per order.
+ *
+ * The queue is bounded, {@link #add(Order)} returns false when the ring is full.
+ * Consumers wait for orders according to the given {@link WaitStrategy}
+ */
+public class RingBufferQueue implements Queue {
+  private final int mask;
+  private final AtomicReferenceArray<Order> buffer;
+  private final AtomicLongArray sequences;
+  private final PaddedCursor head;
+  private final PaddedCursor tail;
+  private final WaitStrategy waitStrategy;
+
+  // Only used by WaitStrategy#BLOCK
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final AtomicInteger waitingConsumers;
+
+  /**
+   * @param capacity rounded up to the next power of 2
+   * @param waitStrategy how consumers wait for orders
+   */
+  public RingBufferQueue(final int capacity, @Nonnull final WaitStrategy waitStrategy) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException(String.format("Invalid ring buffer capacity %d", capacity));
+    }
+
+    final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = size - 1;
+    this.buffer = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    this.head = new PaddedCursor();
+    this.tail = new PaddedCursor();
+    this.waitStrategy = waitStrategy;
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.waitingConsumers = new AtomicInteger();
+
+    for (int i = 0; i < size; i++) {
+      sequences.lazySet(i, i);
+    }
+  }
+
+  @Override
+  public Order fetch() throws InterruptedException {
+    return take(false, 0);
+  }
+
+  @Override
+  public List<Order> fetchBatch(final int max, final long timeoutInMS) throws InterruptedException {
+    final Order first = take(true, TimeUnit.MILLISECONDS.toNanos(timeoutInMS));
+
+    if (first == null) {
+      return Collections.emptyList();
+    }
+
+    final List<Order> orders = new ArrayList<>(Math.min(max, size() + 1));
+    orders.add(first);
+
+    Order order;
+    while (orders.size() < max && (order = poll()) != null) {
+      orders.add(order);
+    }
+
+    return orders;
+  }
+
+  @Override
+  public boolean add(@Nonnull final Order order) {
+    long position = tail.get();
+
+    while (true) {
+      final int index = (int) position & mask;
+      final long difference = sequences.get(index) - position;
+
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+
+        position = tail.get();
+      } else if (difference < 0) {
+        // The order of the previous lap is still in this slot
+        if (position - head.get() > mask) {
+          // Consumers didn't take it, the ring is full
+          return false;
+        }
+
+        // A consumer took it but didn't free the slot yet
+        Thread.yield();
+        position = tail.get();
+      } else {
+        // Another producer took this slot
+        position = tail.get();
+      }
+    }
+
+    final int index = (int) position & mask;
+    buffer.lazySet(index, order);
+    // Volatile write so a blocking consumer registering itself can't miss this order, check take()
+    sequences.set(index, position + 1);
+
+    if (waitStrategy == WaitStrategy.BLOCK && waitingConsumers.get() > 0) {
+      signalNotEmpty();
+    }
+
+    return true;
+  }
+
+  @Override
+  public int size() {
+    final long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, mask + 1));
+  }
+
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * @return the oldest order or null if the ring is empty, never blocks
+   */
+  Order poll() {
+    long position = head.get();
+
+    while (true) {
+      final int index = (int) position & mask;
+      final long difference = sequences.get(index) - (position + 1);
+
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          break;
+        }
+
+        position = head.get();
+      } else if (difference < 0) {
+        // Producer hasn't published this slot yet, the ring is empty
+        return null;
+      } else {
+        // Another consumer took this slot
+        position = head.get();
+      }
+    }
+
+    final int index = (int) position & mask;
+    final Order order = buffer.get(index);
+    buffer.lazySet(index, null);
+    // Free the slot for the producer one lap ahead
+    sequences.lazySet(index, position + mask + 1);
+
+    return order;
+  }
+
+  /**
+   * @return the oldest order, null if timed and no order arrived before the timeout
+   */
+  private Order take(final boolean timed, final long timeoutInNanos) throws InterruptedException {
+    final long deadline = timed ? System.nanoTime() + timeoutInNanos : 0;
+    int attempt = 0;
+    Order order;
+
+    while ((order = poll()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      final long remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+
+      if (remaining <= 0) {
+        return null;
+      }
+
+      if (waitStrategy == WaitStrategy.BLOCK) {
+        return block(timed, remaining);
+      }
+
+      waitStrategy.idle(attempt++);
+    }
+
+    return order;
+  }
+
+  private Order block(final boolean timed, long remaining) throws InterruptedException {
+    lock.lockInterruptibly();
+    // Registered before polling again, producers check the counter after publishing (both volatile) so a
+    // producer either sees this consumer waiting or this consumer sees its order
+    waitingConsumers.incrementAndGet();
+
+    try {
+      Order order;
+
+      while ((order = poll()) == null) {
+        if (!timed) {
+          notEmpty.await();
+          continue;
+        }
+
+        if (remaining <= 0) {
+          return null;
+        }
+
+        remaining = notEmpty.awaitNanos(remaining);
+      }
+
+      return order;
+    } finally {
+      waitingConsumers.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  private void signalNotEmpty() {
+    lock.lock();
+
+    try {
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Padding before the cursor, keeps whatever sits before it in memory off its cache line
+   */
+  static class LeftPadding {
+    long p01, p02, p03, p04, p05, p06, p07;
+  }
+
+  static class CursorValue extends LeftPadding {
+    volatile long value;
+  }
+
+  /**
+   * A long cursor alone on its cache line (fields of a super class are laid out first, so the value sits between both paddings)
+   */
+  static final class PaddedCursor extends CursorValue {
+    private static final AtomicLongFieldUpdater<CursorValue> UPDATER = AtomicLongFieldUpdater.newUpdater(CursorValue.class, "value");
+
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    long get() {
+      return value;
+    }
+
+    boolean compareAndSet(final long expected, final long update) {
+      return UPDATER.compareAndSet(this, expected, update);
+    }
+  }
+}
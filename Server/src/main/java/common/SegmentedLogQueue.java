@@ -0,0 +1,560 @@
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * {@link Queue} on append-only memory-mapped segment files, a local stand-in for a Kafka-like log
+ *
+ * Orders are appended to the last segment (named after the offset of its first order, segment-00000000000000000000.log).
+ * The log is the only copy of a waiting order, consumers decode the orders straight from the mapping so a backlog
+ * takes no heap. A consumer gets its own {@link Order} instance: the pipeline timestamps (received, enqueued) travel
+ * in the record, the rest of the state consumers share goes through the shelves by order id (check
+ * {@link ShelvesManager#setCourierArrivalTimeStamp(Order, long)} and {@link ShelvesManager#takeOrder(Order)}).
+ * The consumer offset is stored in a mapped file (consumer.offset) on every fetch, so after a restart consumers resume
+ * after the last fetched order. A segment is deleted once the consumers moved past it.
+ *
+ * Record layout: [int length][int CRC32][{@link OrderCodec} order][long received nano time][long enqueued nano time].
+ * Nano times are only meaningful in the process that wrote them, orders left by a previous run come back without them.
+ * On restart the log ends at the first record with a bad CRC, a write torn by a crash, and the next add overwrites it.
+ *
+ * Records are published by {@link #writeOffset}, consumers never read past it. They are only written to the page cache,
+ * they survive a crash of the server but not of the machine (check journal.JournalMode for that)
+ *
+ * A preallocator thread keeps the next segment ready ({@link #SPARE_SEGMENT}), a roll only renames it so adds don't
+ * wait for the file system. The roll only creates the segment itself if the preallocator could not keep up
+ */
+public class SegmentedLogQueue implements Queue {
+  static final String SEGMENT_PREFIX = "segment-";
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String OFFSET_FILE = "consumer.offset";
+  // Not a segment until it is renamed after its first offset
+  static final String SPARE_SEGMENT = SEGMENT_PREFIX + "spare.tmp";
+  private static final Logger logger = Logger.getLogger(SegmentedLogQueue.class);
+  private static final int HEADER_SIZE = 8;
+  private static final int NANO_TIMES_SIZE = 2 * Long.BYTES;
+
+  private final File directory;
+  private final int segmentSizeInBytes;
+  private final int capacity;
+  private final ConcurrentSkipListMap<Long, Segment> segments;
+  // Orders below this offset were left by a previous run, their nano times are not restored
+  private long recoveredEndOffset;
+  private final Thread preallocator;
+  // Preallocated by the preallocator, taken by a roll
+  private final AtomicReference<Segment> spare;
+  private volatile boolean closed;
+
+  // Guarded by appendLock
+  private final ReentrantLock appendLock;
+  private final CRC32 crc;
+  private ByteBuffer scratch;
+  private Segment writeSegment;
+  private ByteBuffer writeBuffer;
+  private volatile long writeOffset;
+
+  // Guarded by readLock
+  private final ReentrantLock readLock;
+  private final Condition notEmpty;
+  private final RandomAccessFile offsetFile;
+  private final MappedByteBuffer offsetBuffer;
+  private Segment readSegment;
+  private ByteBuffer readBuffer;
+  private volatile long readOffset;
+  // Raised before checking for orders, so an add either sees the waiting consumer or the consumer sees the order
+  private volatile int waiting;
+
+  /**
+   * @param directory where the segments and the consumer offset are written, created if missing
+   * @param capacity adds fail once that many orders are waiting
+   * @param resume false to start from an empty log, true to resume the log left in the directory
+   */
+  public SegmentedLogQueue(@Nonnull final File directory, final int segmentSizeInBytes, final int capacity,
+                           final boolean resume) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(String.format("Could not create log directory %s", directory));
+    }
+
+    this.directory = directory;
+    this.segmentSizeInBytes = segmentSizeInBytes;
+    this.capacity = capacity;
+    this.segments = new ConcurrentSkipListMap<>();
+    this.appendLock = new ReentrantLock();
+    this.crc = new CRC32();
+    this.scratch = ByteBuffer.allocate(256);
+    this.readLock = new ReentrantLock();
+    this.notEmpty = readLock.newCondition();
+    this.spare = new AtomicReference<>();
+
+    if (!resume) {
+      final List<File> files = listSegments(directory);
+      files.add(new File(directory, OFFSET_FILE));
+
+      for (final File file : files) {
+        if (file.exists() && !file.delete()) {
+          throw new IOException(String.format("Could not delete %s", file));
+        }
+      }
+    }
+
+    this.offsetFile = new RandomAccessFile(new File(directory, OFFSET_FILE), "rw");
+    this.offsetFile.setLength(Long.BYTES);
+    this.offsetBuffer = offsetFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+
+    recover(offsetBuffer.getLong(0));
+
+    // Left by a previous run, preallocated again by the preallocator
+    Files.deleteIfExists(new File(directory, SPARE_SEGMENT).toPath());
+
+    preallocator = new Thread(this::runPreallocator);
+    preallocator.setName("LogQueuePreallocator");
+    preallocator.setDaemon(true);
+    preallocator.start();
+  }
+
+  @Override
+  public Order fetch() throws InterruptedException {
+    readLock.lockInterruptibly();
+
+    try {
+      awaitOrders(Long.MAX_VALUE);
+      return readNext();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public List<Order> fetchBatch(final int max, final long timeoutInMS) throws InterruptedException {
+    readLock.lockInterruptibly();
+
+    try {
+      if (!awaitOrders(TimeUnit.MILLISECONDS.toNanos(timeoutInMS))) {
+        return Collections.emptyList();
+      }
+
+      final int count = (int) Math.min(max, writeOffset - readOffset);
+      final List<Order> orders = new ArrayList<>(count);
+
+      for (int i = 0; i < count; i++) {
+        orders.add(readNext());
+      }
+
+      return orders;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean add(@Nonnull final Order order) {
+    // Cheap check before locking, checked again under the lock so concurrent producers can't go over capacity
+    if (writeOffset - readOffset >= capacity) {
+      return false;
+    }
+
+    appendLock.lock();
+
+    try {
+      if (writeOffset - readOffset >= capacity) {
+        return false;
+      }
+
+      final int length = encode(order);
+
+      if (HEADER_SIZE + length > segmentSizeInBytes) {
+        logger.error(String.format("Order %s doesn't fit in a log segment", order));
+        return false;
+      }
+
+      if (writeBuffer.remaining() < HEADER_SIZE + length) {
+        roll();
+      }
+
+      crc.reset();
+      crc.update(scratch.array(), 0, length);
+      writeBuffer.putInt(length).putInt((int) crc.getValue()).put(scratch.array(), 0, length);
+      writeOffset++;
+    } catch (final IOException e) {
+      logger.error("Could not roll the log segment", e);
+      return false;
+    } finally {
+      appendLock.unlock();
+    }
+
+    if (waiting > 0) {
+      readLock.lock();
+
+      try {
+        notEmpty.signal();
+      } finally {
+        readLock.unlock();
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.min(Integer.MAX_VALUE, writeOffset - readOffset);
+  }
+
+  /**
+   * Release the segment files, the queue can't be used after that
+   */
+  public void close() throws IOException {
+    synchronized (spare) {
+      closed = true;
+      spare.notifyAll();
+    }
+
+    try {
+      preallocator.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    final Segment unused = spare.getAndSet(null);
+
+    if (unused != null) {
+      unused.delete();
+    }
+
+    for (final Segment segment : segments.values()) {
+      segment.close();
+    }
+
+    offsetFile.close();
+  }
+
+  /**
+   * @return segment files of the given directory, oldest first
+   */
+  static List<File> listSegments(@Nonnull final File directory) {
+    final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+    if (files == null) {
+      return new ArrayList<>();
+    }
+
+    // Names are zero padded so they sort by offset
+    Arrays.sort(files);
+
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  /**
+   * Must hold readLock
+   *
+   * @param timeoutInNanos how long to wait for an order, Long.MAX_VALUE to wait until one shows up
+   * @return true if there is an order to read
+   */
+  private boolean awaitOrders(long timeoutInNanos) throws InterruptedException {
+    waiting++;
+
+    try {
+      while (readOffset >= writeOffset) {
+        if (timeoutInNanos == Long.MAX_VALUE) {
+          notEmpty.await();
+        } else if (timeoutInNanos <= 0) {
+          return false;
+        } else {
+          timeoutInNanos = notEmpty.awaitNanos(timeoutInNanos);
+        }
+      }
+
+      return true;
+    } finally {
+      waiting--;
+    }
+  }
+
+  /**
+   * Must hold readLock and there must be an order at the consumer offset
+   */
+  private Order readNext() {
+    if (readOffset == readSegment.endOffset) {
+      final Segment consumed = readSegment;
+      readSegment = segments.get(readOffset);
+      readBuffer = readSegment.buffer.duplicate();
+      segments.remove(consumed.firstOffset);
+      consumed.delete();
+    }
+
+    final int length = readBuffer.getInt();
+    readBuffer.getInt(); // CRC, only checked on restart
+    final ByteBuffer body = readBuffer.slice();
+    body.limit(length);
+    final Order order = OrderCodec.get(body);
+
+    if (readOffset >= recoveredEndOffset && body.remaining() >= NANO_TIMES_SIZE) {
+      order.setReceivedNanoTime(body.getLong());
+      order.setEnqueuedNanoTime(body.getLong());
+    }
+
+    readBuffer.position(readBuffer.position() + length);
+    readOffset++;
+    offsetBuffer.putLong(0, readOffset);
+
+    return order;
+  }
+
+  /**
+   * Must hold appendLock, encodes the order in {@link #scratch}
+   *
+   * @return encoded length
+   */
+  private int encode(@Nonnull final Order order) {
+    final int maxLength = OrderCodec.getMaxLength(order) + NANO_TIMES_SIZE;
+
+    if (scratch.capacity() < maxLength) {
+      scratch = ByteBuffer.allocate(Math.max(maxLength, scratch.capacity() * 2));
+    }
+
+    scratch.clear();
+    OrderCodec.put(scratch, order);
+    scratch.putLong(order.getReceivedNanoTime()).putLong(order.getEnqueuedNanoTime());
+
+    return scratch.position();
+  }
+
+  private void runPreallocator() {
+    while (true) {
+      synchronized (spare) {
+        while (!closed && spare.get() != null) {
+          try {
+            spare.wait();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+
+        if (closed) {
+          return;
+        }
+      }
+
+      preallocate();
+    }
+  }
+
+  /**
+   * Only called by the preallocator, a failure is logged and the next roll creates its segment itself
+   */
+  private void preallocate() {
+    try {
+      final File path = new File(directory, SPARE_SEGMENT);
+      Files.deleteIfExists(path.toPath());
+      spare.set(Segment.create(path, -1, segmentSizeInBytes));
+    } catch (final IOException e) {
+      logger.error(String.format("Could not preallocate the next segment of log %s", directory), e);
+
+      // Don't spin on a full disk, the rolls create their segments meanwhile
+      synchronized (spare) {
+        try {
+          spare.wait(1000);
+        } catch (final InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Must hold appendLock. The next segment and the end of the current one are set before the order starting the next
+   * segment is published, a consumer reaching the end always finds the next segment. The next segment is the
+   * preallocated spare renamed after its first offset, it is only created here if the preallocator could not keep up
+   */
+  private void roll() throws IOException {
+    final File path = Segment.getFile(directory, writeOffset);
+    final Segment preallocated = spare.getAndSet(null);
+    final Segment next;
+
+    if (preallocated == null) {
+      next = Segment.create(path, writeOffset, segmentSizeInBytes);
+    } else {
+      Files.move(preallocated.path.toPath(), path.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      next = new Segment(path, writeOffset, preallocated.file, preallocated.buffer);
+    }
+
+    // Wake up the preallocator to prepare the one after
+    synchronized (spare) {
+      spare.notifyAll();
+    }
+
+    segments.put(writeOffset, next);
+    writeSegment.endOffset = writeOffset;
+    writeSegment = next;
+    writeBuffer = next.buffer.duplicate();
+  }
+
+  /**
+   * Open the segments left in the directory, find the end of the log and the consumer position
+   */
+  private void recover(final long consumerOffset) throws IOException {
+    Segment previous = null;
+
+    for (final File file : listSegments(directory)) {
+      final Segment segment = Segment.open(file);
+      segments.put(segment.firstOffset, segment);
+
+      if (previous != null) {
+        previous.endOffset = segment.firstOffset;
+      }
+
+      previous = segment;
+    }
+
+    if (segments.isEmpty()) {
+      segments.put(consumerOffset, Segment.create(Segment.getFile(directory, consumerOffset), consumerOffset,
+                                                  segmentSizeInBytes));
+    }
+
+    writeSegment = segments.lastEntry().getValue();
+    writeBuffer = writeSegment.buffer.duplicate();
+    writeOffset = writeSegment.firstOffset + scanValidRecords(writeBuffer, Long.MAX_VALUE);
+    recoveredEndOffset = writeOffset;
+
+    // Orders before the first segment were consumed, orders after a torn record are lost
+    readOffset = Math.max(segments.firstKey(), Math.min(consumerOffset, writeOffset));
+    readSegment = segments.floorEntry(readOffset).getValue();
+    readBuffer = readSegment.buffer.duplicate();
+    scanValidRecords(readBuffer, readOffset - readSegment.firstOffset);
+    offsetBuffer.putLong(0, readOffset);
+
+    for (final Map.Entry<Long, Segment> entry : segments.headMap(readSegment.firstOffset).entrySet()) {
+      segments.remove(entry.getKey());
+      entry.getValue().delete();
+    }
+
+    logger.info(String.format("Log %s opened with %d orders waiting", directory, writeOffset - readOffset));
+  }
+
+  /**
+   * Move the buffer past at most max valid records, it is left at the first invalid one
+   *
+   * @return number of records skipped
+   */
+  private static long scanValidRecords(@Nonnull final ByteBuffer buffer, final long max) {
+    final CRC32 crc = new CRC32();
+    byte[] bytes = new byte[256];
+    long count = 0;
+
+    while (count < max && buffer.remaining() >= HEADER_SIZE) {
+      final int start = buffer.position();
+      final int length = buffer.getInt();
+      final int checksum = buffer.getInt();
+
+      if (length <= 0 || length > buffer.remaining()) {
+        buffer.position(start);
+        break;
+      }
+
+      if (bytes.length < length) {
+        bytes = new byte[length];
+      }
+
+      buffer.get(bytes, 0, length);
+      crc.reset();
+      crc.update(bytes, 0, length);
+
+      if ((int) crc.getValue() != checksum) {
+        buffer.position(start);
+        break;
+      }
+
+      count++;
+    }
+
+    return count;
+  }
+
+  /**
+   * A preallocated segment file mapped in memory
+   */
+  private static final class Segment {
+    private final File path;
+    private final long firstOffset;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    // Offset of the first order of the next segment, set when the log rolls
+    private volatile long endOffset = Long.MAX_VALUE;
+
+    private Segment(@Nonnull final File path, final long firstOffset, @Nonnull final RandomAccessFile file,
+                    @Nonnull final MappedByteBuffer buffer) {
+      this.path = path;
+      this.firstOffset = firstOffset;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    static File getFile(@Nonnull final File directory, final long firstOffset) {
+      return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstOffset, SEGMENT_SUFFIX));
+    }
+
+    static Segment create(@Nonnull final File path, final long firstOffset, final int sizeInBytes) throws IOException {
+      final RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+      try {
+        file.setLength(sizeInBytes);
+        return new Segment(path, firstOffset, file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes));
+      } catch (final IOException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    static Segment open(@Nonnull final File path) throws IOException {
+      final String name = path.getName();
+      final long firstOffset = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+      final RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+      try {
+        return new Segment(path, firstOffset, file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length()));
+      } catch (final IOException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    void close() throws IOException {
+      file.close();
+    }
+
+    /**
+     * The mapping stays valid until it is garbage collected, nobody reads it anymore
+     */
+    void delete() {
+      try {
+        file.close();
+      } catch (final IOException e) {
+        logger.error(String.format("Could not close log segment %s", path), e);
+      }
+
+      if (!path.delete()) {
+        logger.warn(String.format("Could not delete log segment %s", path));
+      }
+    }
+  }
+}
@@ -1,9 +1,13 @@
 package common;
 
+import courier.DispatcherMode;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
+import journal.JournalMode;
 import org.apache.log4j.Logger;
+import protocol.HandlerExecution;
+import protocol.TransportType;
 
 /**
  * Encapsulates all properties needed to configure the server.
@@ -11,7 +15,9 @@ import org.apache.log4j.Logger;
  * Each property has a default value but it can be overridden by
  * adding the property key in config.properties file
  *
- * The keys in config.properties takes precedence over the default value.
+ * The keys in config.properties takes precedence over the default value, and a system property
+ * with the same key (e.g. -Dport=11212) takes precedence over config.properties so several servers
+ * can run from the same build.
  *
  * Also, if this class couldn't load config.properties file, it will not crash or quit
  * the server. It will continue with using the default value and log a warning message.
@@ -37,12 +43,59 @@ public final class ServerProperties {
   }
 
   public static PropertyKey<Integer> PORT = new IntegerPropertyKey("port", 11211);
+  public static PropertyKey<TransportType> transportType = new EnumPropertyKey<>("transportType", TransportType.class, TransportType.NIO);
+  public static PropertyKey<Integer> nettyWorkerThreads = new IntegerPropertyKey("nettyWorkerThreads", 0);
+  public static PropertyKey<Integer> socketBacklog = new IntegerPropertyKey("socketBacklog", 128);
+  public static PropertyKey<Boolean> tcpNoDelay = new BooleanPropertyKey("tcpNoDelay", true);
+  public static PropertyKey<Boolean> reusePort = new BooleanPropertyKey("reusePort", true);
+  public static PropertyKey<Boolean> epollEdgeTriggered = new BooleanPropertyKey("epollEdgeTriggered", true);
+  public static PropertyKey<Boolean> pooledDirectBuffers = new BooleanPropertyKey("pooledDirectBuffers", true);
+  public static PropertyKey<HandlerExecution> handlerExecution = new EnumPropertyKey<>("handlerExecution", HandlerExecution.class, HandlerExecution.EVENT_LOOP);
+  public static PropertyKey<Integer> binaryPort = new IntegerPropertyKey("binaryPort", 0);
+  public static PropertyKey<Integer> idleConnectionTimeoutInSeconds = new IntegerPropertyKey("idleConnectionTimeoutInSeconds", 60);
   public static PropertyKey<Integer> statsReporterIntervalInMS = new IntegerPropertyKey("statsReporterIntervalInMS", 60000);
   public static PropertyKey<Integer> shelfGarbageCollectorIntervalInMS = new IntegerPropertyKey("shelfGarbageCollectorIntervalInMS", 1000);
   public static PropertyKey<Integer> dispatcherLowWaitTimeInSeconds = new IntegerPropertyKey("dispatcherLowWaitTimeInSeconds", 2);
   public static PropertyKey<Integer> dispatcherHighWaitTimeInSeconds = new IntegerPropertyKey("dispatcherHighWaitTimeInSeconds", 6);
   public static PropertyKey<Integer> numOfThreadsForOrderProcessing = new IntegerPropertyKey("numOfThreadsForOrderProcessing", Runtime.getRuntime().availableProcessors() * 2);
   public static PropertyKey<Integer> numOfThreadsForDispatching = new IntegerPropertyKey("numOfThreadsForDispatching", Runtime.getRuntime().availableProcessors() * 2);
+  public static PropertyKey<Integer> orderProcessorBatchSize = new IntegerPropertyKey("orderProcessorBatchSize", 64);
+  public static PropertyKey<Integer> orderProcessorBatchTimeoutInMS = new IntegerPropertyKey("orderProcessorBatchTimeoutInMS", 100);
+  public static PropertyKey<Integer> ordersQueueCapacity = new IntegerPropertyKey("ordersQueueCapacity", 65536);
+  public static PropertyKey<Integer> queueHighWatermark = new IntegerPropertyKey("queueHighWatermark", 49152);
+  public static PropertyKey<Integer> queueLowWatermark = new IntegerPropertyKey("queueLowWatermark", 16384);
+  public static PropertyKey<Integer> maxRequestBodyInBytes = new IntegerPropertyKey("maxRequestBodyInBytes", 1024 * 1024);
+  public static PropertyKey<Integer> maxInFlightRequestBytes = new IntegerPropertyKey("maxInFlightRequestBytes", 64 * 1024 * 1024);
+  public static PropertyKey<QueueType> queueType = new EnumPropertyKey<>("queueType", QueueType.class, QueueType.LINKED_BLOCKING_DEQUE);
+  public static PropertyKey<Integer> ringBufferQueueCapacity = new IntegerPropertyKey("ringBufferQueueCapacity", 65536);
+  public static PropertyKey<WaitStrategy> ringBufferWaitStrategy = new EnumPropertyKey<>("ringBufferWaitStrategy", WaitStrategy.class, WaitStrategy.BLOCK);
+  public static PropertyKey<String> logQueueDirectory = new StringPropertyKey("logQueueDirectory", "queues");
+  public static PropertyKey<Integer> logQueueSegmentSizeInBytes = new IntegerPropertyKey("logQueueSegmentSizeInBytes", 64 * 1024 * 1024);
+  public static PropertyKey<Integer> logQueueCapacity = new IntegerPropertyKey("logQueueCapacity", 16 * 1024 * 1024);
+  public static PropertyKey<EvictionPolicy> overflowEvictionPolicy = new EnumPropertyKey<>("overflowEvictionPolicy", EvictionPolicy.class, EvictionPolicy.OLDEST);
+  public static PropertyKey<ExecutionMode> executionMode = new EnumPropertyKey<>("executionMode", ExecutionMode.class, ExecutionMode.FIXED_POOL);
+  public static PropertyKey<DispatcherMode> dispatcherMode = new EnumPropertyKey<>("dispatcherMode", DispatcherMode.class, DispatcherMode.THREAD_PER_COURIER);
+  public static PropertyKey<Integer> courierTimerTickDurationInMS = new IntegerPropertyKey("courierTimerTickDurationInMS", 100);
+  public static PropertyKey<Integer> courierTimerTicksPerWheel = new IntegerPropertyKey("courierTimerTicksPerWheel", 512);
+  public static PropertyKey<JournalMode> journalMode = new EnumPropertyKey<>("journalMode", JournalMode.class, JournalMode.DISABLED);
+  public static PropertyKey<String> journalDirectory = new StringPropertyKey("journalDirectory", "journal");
+  public static PropertyKey<Integer> journalSegmentSizeInBytes = new IntegerPropertyKey("journalSegmentSizeInBytes", 64 * 1024 * 1024);
+  public static PropertyKey<Integer> journalFlushIntervalInMS = new IntegerPropertyKey("journalFlushIntervalInMS", 10);
+  public static PropertyKey<Integer> snapshotIntervalInSeconds = new IntegerPropertyKey("snapshotIntervalInSeconds", 60);
+  public static PropertyKey<String> clusterNodes = new StringPropertyKey("clusterNodes", "");
+  public static PropertyKey<String> clusterSelf = new StringPropertyKey("clusterSelf", "");
+  public static PropertyKey<Integer> clusterVirtualNodes = new IntegerPropertyKey("clusterVirtualNodes", 128);
+  public static PropertyKey<Integer> clusterRequestTimeoutInMS = new IntegerPropertyKey("clusterRequestTimeoutInMS", 5000);
+  public static PropertyKey<Boolean> eventLogEnabled = new BooleanPropertyKey("eventLogEnabled", true);
+  public static PropertyKey<String> eventLogDirectory = new StringPropertyKey("eventLogDirectory", "events");
+  public static PropertyKey<Integer> eventLogSegmentSizeInBytes = new IntegerPropertyKey("eventLogSegmentSizeInBytes", 4 * 1024 * 1024);
+  public static PropertyKey<Integer> eventLogBufferSize = new IntegerPropertyKey("eventLogBufferSize", 65536);
+  public static PropertyKey<Integer> eventLogMaxSegments = new IntegerPropertyKey("eventLogMaxSegments", 8);
+  public static PropertyKey<Integer> orderLogSampleRate = new IntegerPropertyKey("orderLogSampleRate", 0);
+
+  private static String getValue(final String key) {
+    return System.getProperty(key, propsFromFile.getProperty(key));
+  }
 
   public static abstract class PropertyKey<T> {
     private final String key;
@@ -72,7 +125,7 @@ public final class ServerProperties {
 
     @Override
     public Integer get() {
-      final String value = propsFromFile.getProperty(getKey());
+      final String value = getValue(getKey());
 
       if (value == null) {
         return getDefaultValue();
@@ -86,4 +139,65 @@ public final class ServerProperties {
       }
     }
   }
+
+  public static final class StringPropertyKey extends PropertyKey<String> {
+
+    public StringPropertyKey(String key, String defaultValue) {
+      super(key, defaultValue);
+    }
+
+    @Override
+    public String get() {
+      final String value = getValue(getKey());
+      return value == null || value.trim().isEmpty() ? getDefaultValue() : value.trim();
+    }
+  }
+
+  public static final class BooleanPropertyKey extends PropertyKey<Boolean> {
+
+    public BooleanPropertyKey(String key, Boolean defaultValue) {
+      super(key, defaultValue);
+    }
+
+    @Override
+    public Boolean get() {
+      final String value = getValue(getKey());
+
+      if (value == null) {
+        return getDefaultValue();
+      }
+
+      if (!value.trim().equalsIgnoreCase("true") && !value.trim().equalsIgnoreCase("false")) {
+        logger.error(String.format("Could not load Property. Defaulting to the default value. PropertyName: %s, InputValue: %s", getKey(), value));
+        return getDefaultValue();
+      }
+
+      return Boolean.valueOf(value.trim());
+    }
+  }
+
+  public static final class EnumPropertyKey<T extends Enum<T>> extends PropertyKey<T> {
+    private final Class<T> enumClass;
+
+    public EnumPropertyKey(String key, Class<T> enumClass, T defaultValue) {
+      super(key, defaultValue);
+      this.enumClass = enumClass;
+    }
+
+    @Override
+    public T get() {
+      final String value = getValue(getKey());
+
+      if (value == null) {
+        return getDefaultValue();
+      }
+
+      try {
+        return Enum.valueOf(enumClass, value.trim().toUpperCase());
+      } catch (final IllegalArgumentException e) {
+        logger.error(String.format("Could not load Property. Defaulting to the default value. PropertyName: %s, InputValue: %s", getKey(), value));
+        return getDefaultValue();
+      }
+    }
+  }
 }
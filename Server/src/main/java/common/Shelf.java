@@ -1,78 +1,230 @@
 package common;
 
+import com.google.common.collect.Iterators;
+import events.EventLogManager;
+import events.LifecycleEvent;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import javax.annotation.Nonnull;
+import journal.JournalEvent;
+import journal.JournalManager;
 import org.apache.log4j.Logger;
 
 /**
  * Encapsulate a "Shelf" with a list of Orders on it
+ *
+ * Besides the orders map (keyed by order id) the shelf keeps two sorted indexes over the same orders,
+ * one by expiry deadline ({@link Order#getExpiryTimeStamp()}) and one by the {@link EvictionPolicy} priority of the order,
+ * taken when the order is added. This way removing expired orders only touches the orders that actually expired and
+ * evicting an order does not need a sort.
+ *
+ * The orders map is the source of truth, whoever removes an order from the map removes it from the indexes.
+ *
+ * Capacity is enforced without locks, a slot is reserved with a CAS on {@link #count} before the order is put
+ * on the shelf and released if the put does not happen. Removing an order only releases its slot if this
+ * thread is the one that actually removed it from the map, so the count never goes over capacity or below 0.
+ * CAS retries and rejected adds are published through {@link #getSlotContentionCount()} and {@link #getRejectedCount()}
+ *
+ * Every removal (pickup, expiry, eviction) is reported to the listener set with {@link #setRemoveListener(BiConsumer)}
+ * once the slot is released, on the removing thread
  */
 public class Shelf {
   private static Logger logger = Logger.getLogger(Shelf.class);
+  private static final Comparator<Order> BY_EXPIRY = Comparator.comparingLong(Order::getExpiryTimeStamp).thenComparing(Order::getId);
+  private static final Comparator<Entry> BY_EVICTION_PRIORITY = Comparator.comparingLong((Entry entry) -> entry.evictionPriority)
+      .thenComparing(entry -> entry.order.getId());
 
   private final String name;
   private final int capacity;
   private final Temp temperature;
-  private final ConcurrentMap<String, Order> orders;
-  private AtomicInteger count;
+  private final EvictionPolicy evictionPolicy;
+  private final ConcurrentMap<String, Entry> orders;
+  private final ConcurrentSkipListSet<Order> ordersByExpiry;
+  private final ConcurrentSkipListSet<Entry> ordersByEviction;
+  private final AtomicInteger count;
+  private final LongAdder slotContentionCount;
+  private final LongAdder rejectedCount;
+  private volatile BiConsumer<Shelf, Order> removeListener = (shelf, order) -> { };
 
   public Shelf(@Nonnull final String name, final int capacity, @Nonnull final Temp temperature) {
+    this(name, capacity, temperature, EvictionPolicy.OLDEST);
+  }
+
+  public Shelf(@Nonnull final String name, final int capacity, @Nonnull final Temp temperature,
+               @Nonnull final EvictionPolicy evictionPolicy) {
     this.name = name;
     this.capacity = capacity;
     this.temperature = temperature;
+    this.evictionPolicy = evictionPolicy;
     orders = new ConcurrentHashMap<>();
+    ordersByExpiry = new ConcurrentSkipListSet<>(BY_EXPIRY);
+    ordersByEviction = new ConcurrentSkipListSet<>(BY_EVICTION_PRIORITY);
     count = new AtomicInteger();
+    slotContentionCount = new LongAdder();
+    rejectedCount = new LongAdder();
   }
 
+  /**
+   * @param order to be added
+   * @return true if the order has been added, false if the shelf is full or it already has an order with the same id
+   */
   public boolean addOrder(@Nonnull final Order order) {
-    if (count.get() >= capacity) {
+    if (!reserveSlot()) {
+      rejectedCount.increment();
       return false;
     }
 
-    orders.put(getKey(order), order);
-    count.incrementAndGet();
+    final Entry entry = new Entry(order);
+
+    if (orders.putIfAbsent(getKey(order), entry) != null) {
+      releaseSlot();
+      return false;
+    }
+
+    // Only this thread holds the order until it is indexed, update its decay state for this shelf
+    final long now = System.currentTimeMillis();
+    order.placedOn(temperature, now);
+    entry.evictionPriority = evictionPolicy.getPriority(order, now);
+
+    ordersByExpiry.add(order);
+    ordersByEviction.add(entry);
+
+    // A concurrent remove can slip in before the indexes are updated, it didn't find the entries to remove so drop them here
+    if (orders.get(getKey(order)) != entry) {
+      removeFromIndexes(entry);
+    }
 
     return true;
   }
 
   public boolean removeOrder(@Nonnull final Order order) {
-    if(!orders.containsKey(getKey(order))) {
+    return takeOrder(order) != null;
+  }
+
+  /**
+   * Same as {@link #removeOrder(Order)}, orders are matched by id so the given order can be another instance of it
+   *
+   * @return the instance that was on the shelf, null if the shelf has no such order
+   */
+  public Order takeOrder(@Nonnull final Order order) {
+    final Entry removed = orders.remove(getKey(order));
+
+    if (removed == null) {
+      return null;
+    }
+
+    removed(removed);
+
+    return removed.order;
+  }
+
+  /**
+   * @return the instance of the order that is on the shelf, matched by id, null if the shelf has no such order
+   */
+  public Order getOrder(@Nonnull final Order order) {
+    final Entry entry = orders.get(getKey(order));
+    return entry == null ? null : entry.order;
+  }
+
+  /**
+   * Recompute the eviction priority of the order, if it is on this shelf, after an input of its priority changed
+   * (the courier arrival). Must hold the shelf lock, so the order is not evicted meanwhile
+   *
+   * @return true if the order is on this shelf
+   */
+  public boolean updateEvictionPriority(@Nonnull final Order order) {
+    final Entry entry = orders.get(getKey(order));
+
+    if (entry == null) {
       return false;
     }
 
-    orders.remove(getKey(order));
-    count.decrementAndGet();
+    // Out of the index while its key changes. A concurrent remove that missed it is caught by the check below, same as in addOrder
+    if (ordersByEviction.remove(entry)) {
+      entry.evictionPriority = evictionPolicy.getPriority(entry.order, System.currentTimeMillis());
+      ordersByEviction.add(entry);
+
+      if (orders.get(getKey(order)) != entry) {
+        ordersByEviction.remove(entry);
+      }
+    }
 
     return true;
   }
 
+  /**
+   * @param removeListener called with this shelf and the removed order after every removal, must not block
+   */
+  public void setRemoveListener(@Nonnull final BiConsumer<Shelf, Order> removeListener) {
+    this.removeListener = removeListener;
+  }
+
   public boolean hasOrder(@Nonnull final Order order) {
     return orders.containsKey(getKey(order));
   }
 
   public Iterator<Order> getOrdersIterator() {
-    return orders.values().iterator();
+    return Iterators.transform(orders.values().iterator(), entry -> entry.order);
   }
 
   public List<Order> removeExpiredOrders() {
-    final List<Order> result = new ArrayList<>();
+    return removeExpiredOrders(System.currentTimeMillis());
+  }
+
+  /**
+   * Remove all the orders that expired at or before the given time. Walks the expiry index
+   * starting from the soonest deadline and stops at the first order that is still alive.
+   *
+   * @param now time reference in millis
+   * @return list of the removed orders
+   */
+  public List<Order> removeExpiredOrders(final long now) {
+    // Allocated on the first expired order, nothing expired is the common case
+    List<Order> result = Collections.emptyList();
+
+    while (true) {
+      final Order order;
+
+      try {
+        order = ordersByExpiry.first();
+      } catch (final NoSuchElementException e) {
+        break;
+      }
+
+      if (order.getExpiryTimeStamp() > now) {
+        break;
+      }
 
-    for (final Iterator<Order> it = getOrdersIterator(); it.hasNext(); ) {
-      final Order order = it.next();
+      if (removeOrder(order)) {
+        order.updateAndGetLife(now);
+        EventLogManager.getEventLog().record(LifecycleEvent.EXPIRED, order, temperature);
+
+        if (EventLogManager.isSampled(order)) {
+          logger.info(String.format("Removed an expired order %s", order));
+        }
+
+        JournalManager.getJournal().append(JournalEvent.EXPIRED, order);
+
+        if (result.isEmpty()) {
+          result = new ArrayList<>();
+        }
 
-      if (order.updateAndGetLife() <= 0f) {
-        removeOrder(order);
-        logger.info(String.format("Removed an expired order %s", order));
         result.add(order);
-        GlobalStats.getInstance().reportExpiredOrder();
+        GlobalStats.getInstance().reportExpiredOrder(order);
+      } else {
+        // Another thread removed it from the map and is about to drop it from the indexes
+        ordersByExpiry.remove(order);
       }
     }
 
@@ -92,21 +244,98 @@ public class Shelf {
     return name;
   }
 
-  public Optional<Order> removeOldestOrder() {
-    if(orders.isEmpty()) {
-      return Optional.empty();
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getOrdersCount() {
+    return count.get();
+  }
+
+  /**
+   * @return number of times a slot reservation had to retry its CAS because another thread changed the count
+   */
+  public long getSlotContentionCount() {
+    return slotContentionCount.sum();
+  }
+
+  /**
+   * @return number of adds rejected because the shelf was full
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  public EvictionPolicy getEvictionPolicy() {
+    return evictionPolicy;
+  }
+
+  /**
+   * Remove the order with the lowest {@link EvictionPolicy} priority to make room for another one
+   *
+   * @return the evicted order, {@link Optional#empty()} if the shelf is empty
+   */
+  public Optional<Order> evictOrder() {
+    Entry entry;
+
+    while ((entry = ordersByEviction.pollFirst()) != null) {
+      if (orders.remove(getKey(entry.order), entry)) {
+        removed(entry);
+        return Optional.of(entry.order);
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  private boolean reserveSlot() {
+    while (true) {
+      final int current = count.get();
+
+      if (current >= capacity) {
+        return false;
+      }
+
+      if (count.compareAndSet(current, current + 1)) {
+        return true;
+      }
+
+      slotContentionCount.increment();
     }
+  }
 
-    final List<Order> values = new ArrayList<>(orders.values());
-    Collections.sort(values, Comparator.comparingLong(Order::getCreateTimeStamp));
-    final Order oldestOrder = values.get(0);
+  private void releaseSlot() {
+    count.decrementAndGet();
+  }
 
-    removeOrder(oldestOrder);
+  /**
+   * Clean-up after this thread removed the entry from the orders map
+   */
+  private void removed(@Nonnull final Entry entry) {
+    removeFromIndexes(entry);
+    releaseSlot();
+    removeListener.accept(this, entry.order);
+  }
 
-    return Optional.of(oldestOrder);
+  private void removeFromIndexes(@Nonnull final Entry entry) {
+    ordersByExpiry.remove(entry.order);
+    ordersByEviction.remove(entry);
   }
 
   private String getKey(Order order) {
     return order.getId();
   }
+
+  /**
+   * An order on the shelf with its eviction priority, set when the order was added (before the entry is indexed) and
+   * only changed while the entry is out of the index, check {@link #updateEvictionPriority(Order)}
+   */
+  private static final class Entry {
+    private final Order order;
+    private volatile long evictionPriority;
+
+    private Entry(@Nonnull final Order order) {
+      this.order = order;
+    }
+  }
 }
@@ -1,36 +1,88 @@
 package common;
 
-import java.util.Iterator;
+import events.EventLogManager;
+import events.LifecycleEvent;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nonnull;
+import journal.JournalEvent;
+import journal.JournalManager;
 import org.apache.log4j.Logger;
 
 /**
  * Encapsulates all the logic of choosing a shelf and placing an order on that shelf. It is a singleton thread-safe class
  * Also this class encapsulates {@link ShelfGarbageCollector} which is a GC for expired orders.
  * The GC runs on a diff thread on an interval decided by {@link ServerProperties#shelfGarbageCollectorIntervalInMS}
+ * and {@link OverflowRebalancer} which moves orders from the overflow shelf back to their shelves as soon as a slot frees
+ *
+ * Every placement, move and eviction is journaled while the shelf lock is held, so the journal sees the moves of an
+ * order in the order they happened
+ *
+ * Orders are matched by id, not by instance: the dispatcher may hold another instance of an order than the one on the
+ * shelves (check {@link SegmentedLogQueue}), so the state it sets and the pickup go through this class
  */
 public class ShelvesManager {
   private final static Logger logger = Logger.getLogger(ShelvesManager.class);
+  private static final Comparator<Order> BY_AGE = Comparator.comparingLong(Order::getCreateTimeStamp).thenComparing(Order::getId);
   private static volatile ShelvesManager INSTANCE;
 
   private final ConcurrentMap<Temp, Shelf> shelves;
+  private final Map<Temp, Lock> locks;
+  private final Map<Temp, ConcurrentSkipListSet<Order>> overflowOrders;
+  // Odd while an order of the temp is moving from the overflow shelf to its shelf, only written under both shelf locks
+  private final AtomicIntegerArray moveSequences;
+  // Courier arrival of the dispatched orders until their pickup, by order id, for the orders not on a shelf yet
+  private final ConcurrentMap<String, Long> courierArrivals;
   private final ShelfGarbageCollector shelfGarbageCollector;
+  private final OverflowRebalancer overflowRebalancer;
+  private final Thread orderGc;
+  private final Thread rebalancer;
 
   private ShelvesManager() {
     shelves = new ConcurrentHashMap<>();
+    locks = new EnumMap<>(Temp.class);
+    overflowOrders = new EnumMap<>(Temp.class);
+    moveSequences = new AtomicIntegerArray(Temp.values().length);
+    courierArrivals = new ConcurrentHashMap<>();
     shelfGarbageCollector = new ShelfGarbageCollector();
+    overflowRebalancer = new OverflowRebalancer();
 
     for (final Temp temp : Temp.values()) {
-      shelves.put(temp, new Shelf(temp.getShelfName(), temp.getCapacity(), temp));
+      final Shelf shelf = temp == Temp.ANY
+          ? new Shelf(temp.getShelfName(), temp.getCapacity(), temp, ServerProperties.overflowEvictionPolicy.get())
+          : new Shelf(temp.getShelfName(), temp.getCapacity(), temp);
+      shelves.put(temp, shelf);
+      locks.put(temp, new ReentrantLock());
+      overflowOrders.put(temp, new ConcurrentSkipListSet<>(BY_AGE));
+
+      if (temp == Temp.ANY) {
+        shelf.setRemoveListener((overflowShelf, order) -> overflowOrders.get(order.getTemp()).remove(order));
+      } else {
+        shelf.setRemoveListener((homeShelf, order) -> overflowRebalancer.signal(temp));
+      }
     }
 
-    final Thread orderGc = new Thread(shelfGarbageCollector);
+    orderGc = new Thread(shelfGarbageCollector);
     orderGc.setName("OrdersGarbageCollector");
     orderGc.start();
+
+    rebalancer = new Thread(overflowRebalancer);
+    rebalancer.setName("OverflowRebalancer");
+    rebalancer.start();
   }
 
   public static ShelvesManager getInstance() {
@@ -45,8 +97,31 @@ public class ShelvesManager {
     return INSTANCE;
   }
 
+  /**
+   * Drop the instance, its background threads are stopped. The next {@link #getInstance()} starts with empty shelves
+   */
   public static void reset() {
-    INSTANCE = null;
+    synchronized (ShelvesManager.class) {
+      if (INSTANCE != null) {
+        INSTANCE.shutdown();
+        INSTANCE = null;
+      }
+    }
+  }
+
+  /**
+   * Stop the {@link ShelfGarbageCollector} and {@link OverflowRebalancer} threads and wait for them to exit
+   */
+  void shutdown() {
+    orderGc.interrupt();
+    rebalancer.interrupt();
+
+    try {
+      orderGc.join();
+      rebalancer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   /**
@@ -56,61 +131,490 @@ public class ShelvesManager {
    * @return {@link Shelf} that the order added to, {@link Optional#empty()} if no shelves are available
    */
   public Optional<Shelf> addOrder(@Nonnull final Order order) {
-    // Clean-up the shelf (remove expired orders)
-    // Try adding the order to its shelf
-    final Shelf shelf = shelves.get(order.getTemp());
+    return Optional.ofNullable(addOrders(Collections.singletonList(order))[0]);
+  }
+
+  /**
+   * Handles adding a batch of orders to the shelves
+   *
+   * Orders are placed grouped by {@link Temp}, every shelf the batch touches is cleaned-up (expired orders removed) once
+   * per batch, instead of once per order.
+   * When the overflow shelf is full, at most one order per shelf with a free slot is moved out of overflow (the
+   * {@link OverflowRebalancer} normally did it already), so placing never walks the whole overflow shelf.
+   * Orders that still don't fit anywhere force an order out of the overflow shelf, picked by
+   * {@link ServerProperties#overflowEvictionPolicy}, same as {@link #addOrder(Order)}
+   *
+   * Every shelf has its own lock, held while orders are added to it, so placements on different shelves never contend.
+   * When two locks are needed (moving an order from overflow to its shelf) they are taken in {@link Temp} order,
+   * overflow being the last one
+   *
+   * @param orders to be added
+   * @return shelf of every order, in the same order as the given orders. null if the order could not be added to any shelf
+   */
+  public Shelf[] addOrders(@Nonnull final List<Order> orders) {
+    final Shelf[] result = new Shelf[orders.size()];
+    int overflowing = 0;
+
+    // Try adding every order to its shelf, one temp at a time
+    for (final Temp temp : Temp.values()) {
+      final Shelf shelf = shelves.get(temp);
+      boolean locked = false;
+
+      try {
+        for (int i = 0; i < result.length; i++) {
+          final Order order = orders.get(i);
+
+          if (order.getTemp() != temp) {
+            continue;
+          }
 
-    shelf.removeExpiredOrders();
+          // Clean-up the shelf (remove expired orders)
+          if (!locked) {
+            locks.get(temp).lock();
+            locked = true;
+            shelf.removeExpiredOrders();
+          }
 
-    if (shelf.addOrder(order)) {
-      logger.debug(String.format("Added Order to shelf. Order: %s, shelf: %s", order, shelf));
-      return Optional.of(shelf);
+          if (shelf.addOrder(order)) {
+            if (logger.isDebugEnabled()) {
+              logger.debug(String.format("Added Order to shelf. Order: %s, shelf: %s", order, shelf));
+            }
+
+            shelved(order, shelf, LifecycleEvent.SHELVED);
+            result[i] = shelf;
+          } else {
+            overflowing++;
+          }
+        }
+      } finally {
+        if (locked) {
+          locks.get(temp).unlock();
+        }
+      }
+    }
+
+    if (overflowing == 0) {
+      return result;
     }
 
-    // Order's shelf is full so lets
+    // Some shelves are full so lets
     // try the overflow shelf
     final Shelf overflowShelf = shelves.get(Temp.ANY);
+    final Lock overflowLock = locks.get(Temp.ANY);
 
-    overflowShelf.removeExpiredOrders();
+    overflowLock.lock();
 
-    if (overflowShelf.addOrder(order)) {
-      logger.debug(String.format("Added Order to Overflow shelf. Order: %s, shelf: %s", order, shelf));
-      return Optional.of(overflowShelf);
+    try {
+      overflowShelf.removeExpiredOrders();
+      overflowing = addToOverflow(orders, result, overflowShelf);
+    } finally {
+      overflowLock.unlock();
+    }
+
+    if (overflowing == 0) {
+      return result;
+    }
+
+    // Overflow is full, the rebalancer might not have caught up with a freed slot yet
+    // so lets move one order out of overflow for every shelf that has room
+    for (final Temp temp : Temp.values()) {
+      if (temp != Temp.ANY) {
+        moveOldestToItsShelf(temp, overflowShelf);
+      }
     }
 
-    // Overflow is full so lets try to move any order out of overflow
-    // either by moving it to the right shelf or completely discard it
-    // because it is expired
+    overflowLock.lock();
+
+    try {
+      // Try adding again to overflow after reshuffling orders
+      if (addToOverflow(orders, result, overflowShelf) == 0) {
+        return result;
+      }
+
+      // remove an order for every order that is left
+      for (int i = 0; i < result.length; i++) {
+        final Order order = orders.get(i);
+
+        if (result[i] != null) {
+          continue;
+        }
+
+        final Optional<Order> evicted = overflowShelf.evictOrder();
+        evicted.ifPresent(this::discarded);
+
+        if (evicted.isPresent() && overflowShelf.addOrder(order)) {
+          if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Added Order to shelf after force removing another order out. Order: %s, shelf: %s", order, overflowShelf));
+          }
+
+          GlobalStats.getInstance().reportDiscardedOrder();
+          shelved(order, overflowShelf, LifecycleEvent.SHELVED);
+          indexOverflowOrder(order, overflowShelf);
+          result[i] = overflowShelf;
+        } else {
+          if (EventLogManager.isSampled(order)) {
+            logger.info(String.format("Could not add order %s to any shelf!", order));
+          }
+
+          discarded(order);
+        }
+      }
+    } finally {
+      overflowLock.unlock();
+    }
+
+    return result;
+  }
+
+  /**
+   * Put a recovered order back on the shelf it was on before the restart, placed like a new order if that shelf is full
+   *
+   * @return {@link Shelf} that the order added to, {@link Optional#empty()} if no shelves are available
+   */
+  public Optional<Shelf> restoreOrder(@Nonnull final Order order, @Nonnull final Temp temp) {
+    final Shelf shelf = shelves.get(temp);
+    final Lock lock = locks.get(temp);
+    lock.lock();
+
+    try {
+      if (shelf.addOrder(order)) {
+        shelved(order, shelf, LifecycleEvent.SHELVED);
+
+        if (temp == Temp.ANY) {
+          indexOverflowOrder(order, shelf);
+        }
+
+        return Optional.of(shelf);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return addOrder(order);
+  }
+
+  /**
+   * Must hold the lock of the shelf
+   *
+   * @param event {@link LifecycleEvent#SHELVED} or {@link LifecycleEvent#MOVED}, both are journaled as {@link JournalEvent#SHELVED}
+   */
+  private void shelved(@Nonnull final Order order, @Nonnull final Shelf shelf, @Nonnull final LifecycleEvent event) {
+    // Checked after the order is on the shelf, a courier arrival set meanwhile is either seen here or finds the order
+    final Long courierArrivalTimeStamp = courierArrivals.get(order.getId());
+
+    if (courierArrivalTimeStamp != null && courierArrivalTimeStamp != order.getCourierArrivalTimeStamp()) {
+      order.setCourierArrivalTimeStamp(courierArrivalTimeStamp);
+
+      if (shelf.getEvictionPolicy().usesCourierArrival()) {
+        shelf.updateEvictionPriority(order);
+      }
+    }
+
+    EventLogManager.getEventLog().record(event, order, shelf.getTemperature());
+    JournalManager.getJournal().append(JournalEvent.SHELVED, order, shelf.getTemperature());
+  }
+
+  private void discarded(@Nonnull final Order order) {
+    EventLogManager.getEventLog().record(LifecycleEvent.DISCARDED, order);
+    JournalManager.getJournal().append(JournalEvent.DISCARDED, order);
+  }
+
+  /**
+   * Must hold the overflow shelf lock
+   *
+   * @return number of orders that are still not on a shelf
+   */
+  private int addToOverflow(@Nonnull final List<Order> orders, @Nonnull final Shelf[] result, @Nonnull final Shelf overflowShelf) {
+    int left = 0;
+
+    for (int i = 0; i < result.length; i++) {
+      final Order order = orders.get(i);
+
+      if (result[i] != null) {
+        continue;
+      }
+
+      if (overflowShelf.addOrder(order)) {
+        if (logger.isDebugEnabled()) {
+          logger.debug(String.format("Added Order to Overflow shelf. Order: %s, shelf: %s", order, overflowShelf));
+        }
+
+        shelved(order, overflowShelf, LifecycleEvent.SHELVED);
+        indexOverflowOrder(order, overflowShelf);
+        result[i] = overflowShelf;
+      } else {
+        left++;
+      }
+    }
+
+    return left;
+  }
+
+  /**
+   * Index an order just added to the overflow shelf by its temp, so the rebalancer finds it without walking the shelf.
+   * Indexed first then checked, if the order left overflow meanwhile the remove listener may have run before the index
+   * add, so drop it here
+   */
+  private void indexOverflowOrder(@Nonnull final Order order, @Nonnull final Shelf overflowShelf) {
+    overflowOrders.get(order.getTemp()).add(order);
+
+    if (!overflowShelf.hasOrder(order)) {
+      overflowOrders.get(order.getTemp()).remove(order);
+      return;
+    }
+
+    // Its shelf could have freed a slot after this order was refused there
+    final Shelf shelf = shelves.get(order.getTemp());
 
-    for (Iterator<Order> it = overflowShelf.getOrdersIterator(); it.hasNext(); ) {
-      final Order overflowOrder = it.next();
-      if (shelves.get(overflowOrder.getTemp()).addOrder(overflowOrder)) {
-        overflowShelf.removeOrder(overflowOrder);
+    if (shelf.getOrdersCount() < shelf.getCapacity()) {
+      overflowRebalancer.signal(order.getTemp());
+    }
+  }
+
+  /**
+   * Move the oldest overflow order of the given temp to its shelf, it is the one that has been decaying faster the longest
+   *
+   * @return true if an order has been moved, false if there is no such order or its shelf is full
+   */
+  private boolean moveOldestToItsShelf(@Nonnull final Temp temp, @Nonnull final Shelf overflowShelf) {
+    final ConcurrentSkipListSet<Order> candidates = overflowOrders.get(temp);
+    Order order;
+
+    while ((order = candidates.pollFirst()) != null) {
+      if (moveToItsShelf(order, overflowShelf)) {
+        return true;
+      }
+
+      if (overflowShelf.hasOrder(order)) {
+        // Its shelf is full, keep it for the next freed slot
+        indexOverflowOrder(order, overflowShelf);
+        return false;
+      }
+
+      // Not on overflow anymore, picked up or expired before its index entry was dropped
+    }
+
+    return false;
+  }
+
+  /**
+   * Atomically move an order from the overflow shelf to its shelf, if it is still on overflow and its shelf has room.
+   * Both shelves are locked so nobody else adds to them meanwhile, removals (pickups, expiry) can only free slots
+   *
+   * @return true if the order has been moved
+   */
+  private boolean moveToItsShelf(@Nonnull final Order order, @Nonnull final Shelf overflowShelf) {
+    final Shelf shelf = shelves.get(order.getTemp());
+
+    // Cheap check before locking
+    if (shelf == overflowShelf || shelf.getOrdersCount() >= shelf.getCapacity()) {
+      return false;
+    }
+
+    final Lock shelfLock = locks.get(order.getTemp());
+    final Lock overflowLock = locks.get(Temp.ANY);
+    shelfLock.lock();
+    overflowLock.lock();
+
+    try {
+      if (shelf.getOrdersCount() >= shelf.getCapacity()) {
+        return false;
+      }
+
+      // Tells lock-free removals that missed the order on both shelves to wait for it to land
+      moveSequences.incrementAndGet(order.getTemp().ordinal());
+
+      try {
+        if (!overflowShelf.removeOrder(order)) {
+          return false;
+        }
+
+        if (!shelf.addOrder(order)) {
+          // Can't happen while adds hold the shelf lock, put it back rather than losing it
+          logger.error(String.format("Failed to move order %s to %s, keeping it on overflow", order, shelf));
+
+          if (overflowShelf.addOrder(order)) {
+            indexOverflowOrder(order, overflowShelf);
+          }
+
+          return false;
+        }
+      } finally {
+        moveSequences.incrementAndGet(order.getTemp().ordinal());
+      }
+
+      if (logger.isDebugEnabled()) {
         logger.debug(String.format("Moved Order. From Overflow shelf to %s shelf. Order: %s", shelf, order));
       }
+
+      shelved(order, shelf, LifecycleEvent.MOVED);
+      return true;
+    } finally {
+      overflowLock.unlock();
+      shelfLock.unlock();
+    }
+  }
+
+  /**
+   * Set when the courier of the order will show up, on the given order and on the instance on the shelves. Shelves
+   * whose {@link EvictionPolicy} depends on it re-key the order, under their lock. An order that is not on a shelf yet
+   * picks the arrival up when it is placed, it is kept until the order is taken with {@link #takeOrder(Order)}
+   */
+  public void setCourierArrivalTimeStamp(@Nonnull final Order order, final long courierArrivalTimeStamp) {
+    order.setCourierArrivalTimeStamp(courierArrivalTimeStamp);
+    courierArrivals.put(order.getId(), courierArrivalTimeStamp);
+    updateCourierArrival(order, courierArrivalTimeStamp, order.getTemp());
+
+    if (order.getTemp() != Temp.ANY) {
+      updateCourierArrival(order, courierArrivalTimeStamp, Temp.ANY);
     }
+  }
+
+  private void updateCourierArrival(@Nonnull final Order order, final long courierArrivalTimeStamp, @Nonnull final Temp temp) {
+    final Shelf shelf = shelves.get(temp);
+    // Looked up after the arrival is recorded, an order placed after this lookup picks it up in shelved()
+    final Order shelved = shelf.getOrder(order);
 
-    // Try adding again to overflow after reshuffling orders
-    if (overflowShelf.addOrder(order)) {
-      logger.debug(String.format("Added Order to Overflow shelf. Order: %s, shelf: %s", order, shelf));
-      return Optional.of(overflowShelf);
+    if (shelved == null) {
+      return;
     }
 
-    // remove an order
-    if (overflowShelf.removeOldestOrder().isPresent() && overflowShelf.addOrder(order)) {
-      logger.debug(String.format("Added Order to shelf after force removing another order out. Order: %s, shelf: %s", order, shelf));
-      GlobalStats.getInstance().reportDiscardedOrder();
-      return Optional.of(overflowShelf);
+    shelved.setCourierArrivalTimeStamp(courierArrivalTimeStamp);
+
+    if (!shelf.getEvictionPolicy().usesCourierArrival()) {
+      return;
     }
 
-    logger.info("Could not add order to any shelf!");
+    final Lock lock = locks.get(temp);
+    lock.lock();
+
+    try {
+      shelf.updateEvictionPriority(order);
+    } finally {
+      lock.unlock();
+    }
+  }
 
-    return Optional.empty();
+  public Collection<Shelf> getShelves() {
+    return shelves.values();
   }
 
+  /**
+   * Remove an order wherever it is, its shelf or the overflow shelf. Lock-free unless an order of its temp was moving
+   * from the overflow shelf to its shelf while it was looked up
+   *
+   * @return true if the order has been removed, false if it is not on any shelf
+   */
   public boolean removeOrder(@Nonnull final Order order) {
+    return takeOrder(order) != null;
+  }
+
+  /**
+   * Same as {@link #removeOrder(Order)} for a courier picking the order up, its courier arrival is forgotten
+   *
+   * @return the instance that was on a shelf, matched by id, null if the order is not on any shelf
+   */
+  public Order takeOrder(@Nonnull final Order order) {
+    courierArrivals.remove(order.getId());
+
     final Shelf shelf = shelves.get(order.getTemp());
-    return shelf.removeOrder(order);
+    final Shelf overflowShelf = shelves.get(Temp.ANY);
+    final int moveSequence = moveSequences.get(order.getTemp().ordinal());
+    Order taken = shelf.takeOrder(order);
+
+    if (taken == null && shelf != overflowShelf) {
+      taken = overflowShelf.takeOrder(order);
+    }
+
+    // Orders only move from overflow to their shelf, if no move of its temp started or ended meanwhile the order is on no shelf
+    if (taken != null || shelf == overflowShelf
+        || (!isMoving(moveSequence) && moveSequences.get(order.getTemp().ordinal()) == moveSequence)) {
+      return taken;
+    }
+
+    // Missed it while it might have been moving from overflow to its shelf. Moves hold both locks so wait for it to land
+    final Lock shelfLock = locks.get(order.getTemp());
+    final Lock overflowLock = locks.get(Temp.ANY);
+    shelfLock.lock();
+    overflowLock.lock();
+
+    try {
+      taken = shelf.takeOrder(order);
+      return taken != null ? taken : overflowShelf.takeOrder(order);
+    } finally {
+      overflowLock.unlock();
+      shelfLock.unlock();
+    }
+  }
+
+  /**
+   * @return true while a move started with this sequence is in progress
+   */
+  static boolean isMoving(final int moveSequence) {
+    return (moveSequence & 1) != 0;
+  }
+
+  /**
+   * Sequence of the moves of the given temp from the overflow shelf to its shelf, odd while a move is in progress
+   */
+  int getMoveSequence(@Nonnull final Temp temp) {
+    return moveSequences.get(temp.ordinal());
+  }
+
+  /**
+   * A background thread moving orders from the overflow shelf back to their shelves. Every removal from a shelf
+   * (pickup, expiry) signals its temp and the rebalancer fills the freed slots with the oldest overflow orders of that temp.
+   * Signals of the same temp are coalesced until the rebalancer picks them up
+   */
+  public class OverflowRebalancer implements Runnable {
+    private Logger logger = Logger.getLogger(OverflowRebalancer.class);
+    private final BlockingQueue<Temp> signals = new LinkedBlockingQueue<>();
+    private final Set<Temp> pending = ConcurrentHashMap.newKeySet();
+
+    public void signal(@Nonnull final Temp temp) {
+      if (pending.add(temp)) {
+        signals.offer(temp);
+      }
+    }
+
+    @Override
+    public void run() {
+      logger.info("Starting OverflowRebalancer thread");
+
+      while (true) {
+        try {
+          final Temp temp = signals.take();
+          pending.remove(temp);
+          rebalance(temp);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (final Exception e) {
+          // We want this thread to keep running so we don't wanna any exception to escape
+          logger.error("Error while rebalancing overflow shelf", e);
+        }
+      }
+    }
+
+    /**
+     * Move overflow orders of the given temp to their shelf until it is full or there are none left
+     *
+     * @return number of moved orders
+     */
+    public int rebalance(@Nonnull final Temp temp) {
+      final Shelf overflowShelf = shelves.get(Temp.ANY);
+      int moved = 0;
+
+      while (moveOldestToItsShelf(temp, overflowShelf)) {
+        moved++;
+      }
+
+      if (moved > 0 && logger.isDebugEnabled()) {
+        logger.debug(String.format("Moved %d orders from Overflow shelf to %s shelf", moved, temp.getShelfName()));
+      }
+
+      return moved;
+    }
   }
 
   /**
@@ -128,6 +632,9 @@ public class ShelvesManager {
         try {
           runNow();
           Thread.sleep(ServerProperties.shelfGarbageCollectorIntervalInMS.get());
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
         } catch (final Exception e) {
           // We want this thread to keep running so we don't wanna any exception to escape
           logger.error("Error while collecting order", e);
@@ -0,0 +1,56 @@
+package common;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a {@link RingBufferQueue} consumer waits for an order when the ring is empty
+ *
+ * BUSY_SPIN: keeps polling, lowest hand-off latency but burns a core per waiting consumer
+ * YIELD: polls and yields the CPU between attempts, low latency as long as there are spare cores
+ * PARK: spins for a while then parks for {@link #PARK_NANOS} between attempts, producers never have to wake consumers up
+ * BLOCK: sleeps on a condition signalled by producers, no CPU used while idle at the cost of a lock hand-off per wake-up
+ */
+public enum WaitStrategy {
+  BUSY_SPIN {
+    @Override
+    void idle(final int attempt) {
+    }
+  },
+  YIELD {
+    @Override
+    void idle(final int attempt) {
+      Thread.yield();
+    }
+  },
+  PARK {
+    @Override
+    void idle(final int attempt) {
+      if (attempt < SPIN_ATTEMPTS) {
+        return;
+      }
+
+      if (attempt < SPIN_ATTEMPTS * 2) {
+        Thread.yield();
+        return;
+      }
+
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  },
+  BLOCK {
+    @Override
+    void idle(final int attempt) {
+      // Blocking consumers wait on the queue condition, check RingBufferQueue
+    }
+  };
+
+  static final int SPIN_ATTEMPTS = 100;
+  static final long PARK_NANOS = 50_000;
+
+  /**
+   * Called every time a consumer found the ring empty
+   *
+   * @param attempt number of consecutive empty polls so far
+   */
+  abstract void idle(final int attempt);
+}
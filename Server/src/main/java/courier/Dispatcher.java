@@ -2,20 +2,32 @@ package courier;
 
 import common.GlobalStats;
 import common.Order;
+import common.PoolStats;
+import common.Processor;
 import common.Queue;
 import common.ServerProperties;
 import common.ShelvesManager;
+import events.EventLogManager;
+import events.LifecycleEvent;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
+import journal.JournalEvent;
+import journal.JournalManager;
 import org.apache.log4j.Logger;
 
-public class Dispatcher implements Runnable {
+public class Dispatcher implements Runnable, Processor {
   private static Logger logger = Logger.getLogger(Dispatcher.class);
   private final Queue queue;
+  private final PoolStats poolStats;
 
   public Dispatcher(@Nonnull final Queue queue) {
+    this(queue, new PoolStats("dispatcher", 1));
+  }
+
+  public Dispatcher(@Nonnull final Queue queue, @Nonnull final PoolStats poolStats) {
     this.queue = queue;
+    this.poolStats = poolStats;
   }
 
   @Override
@@ -32,23 +44,7 @@ public class Dispatcher implements Runnable {
   public void run(@Nonnull final Supplier<Boolean> condition) {
     while (condition.get()) {
       try {
-        final Order order = queue.fetch();
-        logger.info(String.format("Dispatching order %s", order));
-
-        final int randomWait = (int) (Math.random() * (ServerProperties.dispatcherHighWaitTimeInSeconds.get() - ServerProperties.dispatcherLowWaitTimeInSeconds.get()))
-            + ServerProperties.dispatcherLowWaitTimeInSeconds.get();
-
-        logger.debug(String.format("Dispatcher estimated arrival time %d for order %s", randomWait, order));
-
-        Thread.sleep(TimeUnit.SECONDS.toMillis(randomWait));
-
-        if (ShelvesManager.getInstance().removeOrder(order)) {
-          logger.info(String.format("Dispatcher picked-up order %s", order));
-          GlobalStats.getInstance().reportDispatchedOrder();
-        } else {
-          logger.error(String.format("Dispatcher failed to pickup order %s", order));
-          GlobalStats.getInstance().reportFailedDispatch();
-        }
+        process(queue.fetch());
       } catch (final Exception e) {
         // We want this thread to keep running so we don't wanna any exception to escape
         // In here we will just log, yes we have failed to process this order, we should Alert or
@@ -58,4 +54,74 @@ public class Dispatcher implements Runnable {
       }
     }
   }
+
+  /**
+   * Wait for the courier to arrive (blocks the calling thread) then pickup the order
+   */
+  @Override
+  public boolean process(@Nonnull final Order order) {
+    EventLogManager.getEventLog().record(LifecycleEvent.DISPATCHED, order);
+
+    if (EventLogManager.isSampled(order)) {
+      logger.info(String.format("Dispatching order %s", order));
+    }
+
+    final int randomWait = estimateArrivalTimeInSeconds();
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Dispatcher estimated arrival time %d for order %s", randomWait, order));
+    }
+
+    ShelvesManager.getInstance().setCourierArrivalTimeStamp(order, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(randomWait));
+
+    poolStats.taskStarted();
+
+    try {
+      Thread.sleep(TimeUnit.SECONDS.toMillis(randomWait));
+    } catch (final InterruptedException e) {
+      logger.warn(String.format("Dispatcher interrupted while waiting for the courier of order %s", order));
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      poolStats.taskFinished();
+    }
+
+    return pickup(order);
+  }
+
+  /**
+   * @return random courier arrival time between {@link ServerProperties#dispatcherLowWaitTimeInSeconds}
+   * and {@link ServerProperties#dispatcherHighWaitTimeInSeconds}
+   */
+  public static int estimateArrivalTimeInSeconds() {
+    return (int) (Math.random() * (ServerProperties.dispatcherHighWaitTimeInSeconds.get() - ServerProperties.dispatcherLowWaitTimeInSeconds.get()))
+        + ServerProperties.dispatcherLowWaitTimeInSeconds.get();
+  }
+
+  /**
+   * Courier arrived, pickup the order from its shelf. The order is reported through the instance that was on the shelf,
+   * the dispatcher might hold another one
+   *
+   * @param order to be picked-up
+   * @return true if the order has been picked-up, false otherwise
+   */
+  public static boolean pickup(@Nonnull final Order order) {
+    final Order pickedUp = ShelvesManager.getInstance().takeOrder(order);
+
+    if (pickedUp != null) {
+      EventLogManager.getEventLog().record(LifecycleEvent.PICKED_UP, pickedUp);
+
+      if (EventLogManager.isSampled(pickedUp)) {
+        logger.info(String.format("Dispatcher picked-up order %s", pickedUp));
+      }
+
+      JournalManager.getJournal().append(JournalEvent.PICKED_UP, pickedUp);
+      GlobalStats.getInstance().reportDispatchedOrder(pickedUp);
+      return true;
+    }
+
+    logger.error(String.format("Dispatcher failed to pickup order %s", order));
+    GlobalStats.getInstance().reportFailedDispatch();
+    return false;
+  }
 }
@@ -1,28 +1,68 @@
 package courier;
 
+import common.ExecutionMode;
+import common.OrderTaskFeeder;
+import common.PoolStats;
+import common.Processor;
 import common.Queue;
 import common.ServerProperties;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import org.apache.log4j.Logger;
 
+/**
+ * Starts the dispatching threads, the way couriers are awaited depends on {@link ServerProperties#dispatcherMode}
+ * (check {@link DispatcherMode}) and how the work is scheduled depends on {@link ExecutionMode}
+ */
 public class DispatcherManager {
   private final static Logger logger = Logger.getLogger(DispatcherManager.class);
   private final ExecutorService executorService;
   private final Queue queue;
+  private final DispatcherMode mode;
+  private final ExecutionMode executionMode;
+  private final PoolStats poolStats;
 
   public DispatcherManager(@Nonnull final Queue queue) {
+    this(queue, ServerProperties.dispatcherMode.get(), ServerProperties.executionMode.get());
+  }
+
+  public DispatcherManager(@Nonnull final Queue queue, @Nonnull final DispatcherMode mode, @Nonnull final ExecutionMode executionMode) {
     this.queue = queue;
-    executorService = Executors.newFixedThreadPool(ServerProperties.numOfThreadsForDispatching.get());
+    this.mode = mode;
+    this.executionMode = executionMode;
+    executorService = executionMode.newExecutorService(ServerProperties.numOfThreadsForDispatching.get());
+    poolStats = new PoolStats("dispatcher", ExecutionMode.getPoolSize(executorService));
   }
 
   public void initialize(){
     final Integer threadCount = ServerProperties.numOfThreadsForDispatching.get();
-    logger.info(String.format("Initializing DispatcherManager with %d order processors", threadCount));
+    logger.info(String.format("Initializing DispatcherManager with %d order processors, mode %s, execution mode %s", threadCount, mode, executionMode));
+
+    final Timer timer = mode == DispatcherMode.TIMER_WHEEL ? new HashedWheelTimer(new DefaultThreadFactory("CourierTimer"),
+        ServerProperties.courierTimerTickDurationInMS.get(), TimeUnit.MILLISECONDS,
+        ServerProperties.courierTimerTicksPerWheel.get()) : null;
+
+    if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+      final Processor processor = timer != null ? new TimerWheelDispatcher(queue, timer, poolStats) : new Dispatcher(queue, poolStats);
+      final Thread feeder = new Thread(new OrderTaskFeeder(queue, processor, executorService));
+      feeder.setName("Dispatcher-Feeder");
+      feeder.start();
+      return;
+    }
 
     for (int i = 0; i < threadCount; i++) {
-      executorService.submit(new Dispatcher(queue));
+      executorService.submit(timer != null ? new TimerWheelDispatcher(queue, timer, poolStats) : new Dispatcher(queue, poolStats));
     }
   }
+
+  /**
+   * @return dispatchers utilization, active tasks are the couriers in flight whatever the {@link DispatcherMode}
+   */
+  public PoolStats getPoolStats() {
+    return poolStats;
+  }
 }
@@ -0,0 +1,15 @@
+package courier;
+
+/**
+ * How {@link DispatcherManager} waits for couriers to arrive
+ *
+ * {@link #THREAD_PER_COURIER} every {@link Dispatcher} thread sleeps until its courier arrives, so the number of
+ * couriers in flight is capped by {@link common.ServerProperties#numOfThreadsForDispatching}
+ *
+ * {@link #TIMER_WHEEL} {@link TimerWheelDispatcher} threads only register the pickup deadline on a hashed timing wheel
+ * and go back to the queue, the wheel thread fires the pickups once they are due
+ */
+public enum DispatcherMode {
+  THREAD_PER_COURIER,
+  TIMER_WHEEL
+}
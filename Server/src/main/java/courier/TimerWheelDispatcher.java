@@ -0,0 +1,95 @@
+package courier;
+
+import common.Order;
+import common.PoolStats;
+import common.Processor;
+import common.Queue;
+import common.ShelvesManager;
+import events.EventLogManager;
+import events.LifecycleEvent;
+import io.netty.util.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Dispatcher that never waits for the courier itself.
+ *
+ * For every order it fetches, it registers the courier arrival as a deadline on a hashed timing wheel ({@link Timer})
+ * and goes back to the queue. The wheel thread calls {@link Dispatcher#pickup(Order)} once the deadline is due.
+ * This way the number of couriers in flight is bounded by memory, not by the number of dispatching threads.
+ */
+public class TimerWheelDispatcher implements Runnable, Processor {
+  private static Logger logger = Logger.getLogger(TimerWheelDispatcher.class);
+  private final Queue queue;
+  private final Timer timer;
+  private final Supplier<Long> arrivalTimeInMSSupplier;
+  private final PoolStats poolStats;
+
+  public TimerWheelDispatcher(@Nonnull final Queue queue, @Nonnull final Timer timer, @Nonnull final PoolStats poolStats) {
+    this(queue, timer, () -> TimeUnit.SECONDS.toMillis(Dispatcher.estimateArrivalTimeInSeconds()), poolStats);
+  }
+
+  TimerWheelDispatcher(@Nonnull final Queue queue, @Nonnull final Timer timer, @Nonnull final Supplier<Long> arrivalTimeInMSSupplier,
+                       @Nonnull final PoolStats poolStats) {
+    this.queue = queue;
+    this.timer = timer;
+    this.arrivalTimeInMSSupplier = arrivalTimeInMSSupplier;
+    this.poolStats = poolStats;
+  }
+
+  @Override
+  public void run() {
+    logger.info("Starting TimerWheelDispatcher thread.");
+    run(() -> true);
+  }
+
+  /**
+   * Keep running in a loop while the given condition is true!
+   *
+   * @param condition the condition when met Run will end (the thread will stop)
+   */
+  public void run(@Nonnull final Supplier<Boolean> condition) {
+    while (condition.get()) {
+      try {
+        process(queue.fetch());
+      } catch (final Exception e) {
+        // We want this thread to keep running so we don't wanna any exception to escape
+        logger.error("Error while pooling from the queue", e);
+      }
+    }
+  }
+
+  /**
+   * Register the courier arrival on the timer, doesn't wait for it. The courier counts as an active task
+   * of {@link PoolStats} until the pickup
+   */
+  @Override
+  public boolean process(@Nonnull final Order order) {
+    EventLogManager.getEventLog().record(LifecycleEvent.DISPATCHED, order);
+
+    if (EventLogManager.isSampled(order)) {
+      logger.info(String.format("Dispatching order %s", order));
+    }
+
+    final long arrivalTimeInMS = arrivalTimeInMSSupplier.get();
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Dispatcher estimated arrival time %d ms for order %s", arrivalTimeInMS, order));
+    }
+
+    ShelvesManager.getInstance().setCourierArrivalTimeStamp(order, System.currentTimeMillis() + arrivalTimeInMS);
+
+    poolStats.taskStarted();
+    timer.newTimeout(timeout -> {
+      try {
+        Dispatcher.pickup(order);
+      } finally {
+        poolStats.taskFinished();
+      }
+    }, arrivalTimeInMS, TimeUnit.MILLISECONDS);
+
+    return true;
+  }
+}
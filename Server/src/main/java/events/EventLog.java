@@ -0,0 +1,49 @@
+package events;
+
+import common.Order;
+import common.Temp;
+import javax.annotation.Nonnull;
+
+/**
+ * Record of the lifecycle of every order, replaces the per-order text logs of the hot path. Check {@link EventLogManager}
+ *
+ * Recording never blocks nor allocates, an event that can't be recorded right away is dropped and counted
+ */
+public interface EventLog {
+  /**
+   * Event log that drops every event, used when the event log is disabled
+   */
+  EventLog NOOP = new EventLog() {
+    @Override
+    public void record(@Nonnull final LifecycleEvent event, @Nonnull final Order order, final Temp shelf) {
+    }
+
+    @Override
+    public long getDroppedCount() {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  /**
+   * @param shelf temperature of the shelf the event happened on, null if the order is on no shelf
+   */
+  void record(@Nonnull final LifecycleEvent event, @Nonnull final Order order, final Temp shelf);
+
+  default void record(@Nonnull final LifecycleEvent event, @Nonnull final Order order) {
+    record(event, order, null);
+  }
+
+  /**
+   * @return number of events dropped because the recorder was behind
+   */
+  long getDroppedCount();
+
+  /**
+   * Write the recorded events and release the event log
+   */
+  void close();
+}
@@ -0,0 +1,54 @@
+package events;
+
+import common.ServerProperties;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line decoder of the {@link MappedEventLog} segments, prints one line per record
+ *
+ * Arguments are segment files or directories (every segment of the directory, oldest first), the configured
+ * {@link ServerProperties#eventLogDirectory} if none is given
+ */
+public final class EventLogDecoder {
+  private EventLogDecoder() {
+  }
+
+  public static void main(final String[] args) {
+    final List<File> segments = new ArrayList<>();
+    String[] paths = args;
+
+    if (paths.length == 0) {
+      ServerProperties.initialize();
+      paths = new String[]{ServerProperties.eventLogDirectory.get()};
+    }
+
+    for (final String path : paths) {
+      final File file = new File(path);
+
+      if (file.isDirectory()) {
+        segments.addAll(MappedEventLog.listSegments(file));
+      } else {
+        segments.add(file);
+      }
+    }
+
+    final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)));
+
+    try {
+      MappedEventLog.read(segments, out::println);
+    } catch (final IOException | IllegalArgumentException e) {
+      out.flush();
+      System.err.println(String.format("Could not decode the event log: %s", e.getMessage()));
+      System.exit(1);
+    }
+
+    out.flush();
+  }
+}
@@ -0,0 +1,61 @@
+package events;
+
+import common.Order;
+import common.ServerProperties;
+import java.io.File;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the server {@link EventLog}, {@link EventLog#NOOP} until {@link #initialize()} opens the {@link MappedEventLog}
+ * enabled by {@link ServerProperties#eventLogEnabled}
+ *
+ * The per-order text logs are sampled, {@link #isSampled(Order)} picks 1 order in
+ * {@link ServerProperties#orderLogSampleRate} (none by default) and the same orders at every stage, so a sampled
+ * order can be followed through the log
+ */
+public final class EventLogManager {
+  private static final Logger logger = Logger.getLogger(EventLogManager.class);
+  private static volatile EventLog eventLog = EventLog.NOOP;
+  private static volatile int sampleRate = ServerProperties.orderLogSampleRate.get();
+
+  private EventLogManager() {
+  }
+
+  public static EventLog getEventLog() {
+    return eventLog;
+  }
+
+  public static void setEventLog(@Nonnull final EventLog eventLog) {
+    EventLogManager.eventLog = eventLog;
+  }
+
+  public static void initialize() throws IOException {
+    sampleRate = ServerProperties.orderLogSampleRate.get();
+
+    if (!ServerProperties.eventLogEnabled.get()) {
+      logger.info("Event log is disabled");
+      return;
+    }
+
+    final File directory = new File(ServerProperties.eventLogDirectory.get());
+    eventLog = new MappedEventLog(directory, ServerProperties.eventLogSegmentSizeInBytes.get(),
+        ServerProperties.eventLogBufferSize.get(), ServerProperties.eventLogMaxSegments.get());
+
+    logger.info(String.format("Event log %s opened, decode it with events.EventLogDecoder", directory.getAbsolutePath()));
+  }
+
+  /**
+   * @return true if the text logs of the given order should be written, keyed by the order id so every stage agrees
+   */
+  public static boolean isSampled(@Nonnull final Order order) {
+    final int rate = sampleRate;
+    return rate > 0 && Math.floorMod(order.getId().hashCode(), rate) == 0;
+  }
+
+  public static void close() {
+    eventLog.close();
+    eventLog = EventLog.NOOP;
+  }
+}
@@ -0,0 +1,67 @@
+package events;
+
+import common.Temp;
+import java.time.Instant;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+
+/**
+ * An event log record read back
+ */
+public final class EventRecord {
+  private final long timeStamp;
+  private final LifecycleEvent event;
+  private final String orderId;
+  private final Temp shelf;
+  private final float life;
+
+  EventRecord(final long timeStamp, @Nonnull final LifecycleEvent event, @Nonnull final String orderId, final Temp shelf,
+              final float life) {
+    this.timeStamp = timeStamp;
+    this.event = event;
+    this.orderId = orderId;
+    this.shelf = shelf;
+    this.life = life;
+  }
+
+  /**
+   * @return epoch millis of the event
+   */
+  public long getTimeStamp() {
+    return timeStamp;
+  }
+
+  public LifecycleEvent getEvent() {
+    return event;
+  }
+
+  /**
+   * @return order id, truncated to {@link MappedEventLog#MAX_ID_LENGTH} chars with non ASCII chars replaced by '?'
+   */
+  public String getOrderId() {
+    return orderId;
+  }
+
+  /**
+   * @return shelf temperature the event happened on, null if the order was on no shelf
+   */
+  public Temp getShelf() {
+    return shelf;
+  }
+
+  /**
+   * @return life of the order at the time of the event
+   */
+  public float getLife() {
+    return life;
+  }
+
+  /**
+   * @return one line of text, e.g. 2020-03-01T10:15:30.123Z SHELVED 9012736d-777b-4f5b-a12d-982e302fefa1 shelf=HOT life=0.982
+   */
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%s %s %s shelf=%s life=%.3f", Instant.ofEpochMilli(timeStamp), event, orderId,
+        shelf == null ? "-" : shelf, life);
+  }
+}
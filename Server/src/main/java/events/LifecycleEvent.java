@@ -0,0 +1,34 @@
+package events;
+
+/**
+ * What happened to an order, one {@link EventLog} record per event. Stored by code so only add new events at the end,
+ * code 0 is an empty record
+ *
+ * RECEIVED: the order was decoded by a protocol handler
+ * SHELVED: the order was placed on a shelf, MOVED: the order left the overflow shelf for its own shelf
+ * DISPATCHED: a courier was sent for the order
+ * PICKED_UP, EXPIRED, DISCARDED: the order left the server
+ */
+public enum LifecycleEvent {
+  RECEIVED,
+  SHELVED,
+  MOVED,
+  DISPATCHED,
+  PICKED_UP,
+  EXPIRED,
+  DISCARDED;
+
+  private static final LifecycleEvent[] VALUES = values();
+
+  byte getCode() {
+    return (byte) (ordinal() + 1);
+  }
+
+  static LifecycleEvent fromCode(final byte code) {
+    if (code < 1 || code > VALUES.length) {
+      throw new IllegalArgumentException(String.format("Unknown lifecycle event %d", code));
+    }
+
+    return VALUES[code - 1];
+  }
+}
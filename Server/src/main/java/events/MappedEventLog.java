@@ -0,0 +1,394 @@
+package events;
+
+import common.Order;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * {@link EventLog} of fixed size binary records, written to memory-mapped segment files by a single recorder thread
+ * (events-00000000000000000001.log). Segments are preallocated, numbered in the order they are written and only the
+ * last {@code maxSegments} are kept.
+ *
+ * Segment layout: a {@link #RECORD_SIZE} header [int magic][short version][short record size][long creation millis]
+ * then records of {@link #RECORD_SIZE} bytes
+ * [long epoch millis][byte event code][byte shelf or -1][float order life][byte id length][id, ASCII]
+ * an event code of 0 marks the end of the segment.
+ *
+ * Producers claim a slot of a preallocated ring with a CAS on the tail, encode the record in place and publish its
+ * sequence, no lock and no allocation. The recorder copies published records to the mapping in sequence order and frees
+ * their slots. When the ring is full the event is dropped rather than waiting for the recorder.
+ */
+public class MappedEventLog implements EventLog {
+  static final String SEGMENT_PREFIX = "events-";
+  static final String SEGMENT_SUFFIX = ".log";
+  static final int RECORD_SIZE = 64;
+  static final int MAGIC = 0x4F455654; // OEVT
+  static final short VERSION = 1;
+  private static final int ID_OFFSET = 15;
+  static final int MAX_ID_LENGTH = RECORD_SIZE - ID_OFFSET;
+  private static final byte NO_SHELF = -1;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final Logger logger = Logger.getLogger(MappedEventLog.class);
+
+  private final File directory;
+  private final int segmentSizeInBytes;
+  private final int maxSegments;
+
+  // Ring shared by the producers and the recorder, a slot is free once the recorder head moved past its sequence
+  private final ByteBuffer ring;
+  private final AtomicLongArray published;
+  private final int mask;
+  private final AtomicLong tail;
+  private volatile long head;
+  private final LongAdder dropped;
+
+  // Recorder thread only (the closing thread once the recorder stopped)
+  private final Deque<File> segments;
+  private Segment segment;
+  private long nextSegmentIndex;
+  private long reportedDropped;
+
+  private final Thread recorder;
+  private volatile boolean running;
+
+  /**
+   * @param directory where the segments are written, created if missing
+   * @param bufferSize number of events the ring holds while the recorder is behind, rounded up to a power of 2
+   * @param maxSegments number of segments kept, the oldest ones are deleted when a new one starts
+   */
+  public MappedEventLog(@Nonnull final File directory, final int segmentSizeInBytes, final int bufferSize,
+                        final int maxSegments) throws IOException {
+    this(directory, segmentSizeInBytes, bufferSize, maxSegments, true);
+  }
+
+  MappedEventLog(@Nonnull final File directory, final int segmentSizeInBytes, final int bufferSize, final int maxSegments,
+                 final boolean startRecorder) throws IOException {
+    if (segmentSizeInBytes < 2 * RECORD_SIZE) {
+      throw new IllegalArgumentException(String.format("Event log segments must hold at least one record, got %d bytes",
+          segmentSizeInBytes));
+    }
+
+    if (bufferSize <= 0 || bufferSize > (1 << 30) / RECORD_SIZE) {
+      throw new IllegalArgumentException(String.format("Invalid event log buffer size %d", bufferSize));
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(String.format("Could not create event log directory %s", directory));
+    }
+
+    final int capacity = Integer.highestOneBit(bufferSize) == bufferSize ? bufferSize : Integer.highestOneBit(bufferSize) << 1;
+
+    this.directory = directory;
+    // Whole records only, the end of the segment never holds a partial one
+    this.segmentSizeInBytes = segmentSizeInBytes / RECORD_SIZE * RECORD_SIZE;
+    this.maxSegments = Math.max(1, maxSegments);
+    this.ring = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    this.published = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+    this.tail = new AtomicLong();
+    this.dropped = new LongAdder();
+    this.segments = new ArrayDeque<>(listSegments(directory));
+    this.nextSegmentIndex = segments.isEmpty() ? 1 : getSegmentIndex(segments.getLast()) + 1;
+
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+
+    roll();
+
+    recorder = new Thread(this::runRecorder);
+    recorder.setName("EventRecorder");
+    recorder.setDaemon(true);
+    running = startRecorder;
+
+    if (startRecorder) {
+      recorder.start();
+    }
+  }
+
+  @Override
+  public void record(@Nonnull final LifecycleEvent event, @Nonnull final Order order, final Temp shelf) {
+    long sequence;
+
+    do {
+      sequence = tail.get();
+
+      if (sequence - head >= published.length()) {
+        dropped.increment();
+        return;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+
+    final int index = (int) (sequence & mask);
+    final int offset = index * RECORD_SIZE;
+    final long now = System.currentTimeMillis();
+    final String id = order.getId();
+    final int idLength = Math.min(id.length(), MAX_ID_LENGTH);
+
+    ring.putLong(offset, now)
+        .put(offset + 8, event.getCode())
+        .put(offset + 9, shelf == null ? NO_SHELF : (byte) shelf.ordinal())
+        .putFloat(offset + 10, order.getLifeAt(now))
+        .put(offset + 14, (byte) idLength);
+
+    for (int i = 0; i < idLength; i++) {
+      final char c = id.charAt(i);
+      ring.put(offset + ID_OFFSET + i, c < 128 ? (byte) c : (byte) '?');
+    }
+
+    // Ordered write, the recorder sees the record once it sees the sequence
+    published.lazySet(index, sequence);
+  }
+
+  @Override
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void close() {
+    if (running) {
+      running = false;
+      LockSupport.unpark(recorder);
+
+      try {
+        recorder.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // Whatever was published before the recorder stopped
+    drain();
+    reportDropped();
+
+    if (segment != null) {
+      segment.close();
+      segment = null;
+    }
+  }
+
+  /**
+   * Read every record of the given segments, in the given order. A segment is read up to its first empty or corrupt
+   * record, a corrupt one is logged as a warning
+   *
+   * @return number of records read
+   */
+  public static long read(@Nonnull final List<File> segments, @Nonnull final Consumer<EventRecord> consumer) throws IOException {
+    final Temp[] shelves = Temp.values();
+    final int events = LifecycleEvent.values().length;
+    final byte[] id = new byte[MAX_ID_LENGTH];
+    long count = 0;
+
+    for (final File file : segments) {
+      try (final RandomAccessFile raf = new RandomAccessFile(file, "r"); final FileChannel channel = raf.getChannel()) {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        if (buffer.remaining() < RECORD_SIZE || buffer.getInt() != MAGIC) {
+          throw new IOException(String.format("%s is not an event log segment", file));
+        }
+
+        final short version = buffer.getShort();
+        final short recordSize = buffer.getShort();
+
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+          throw new IOException(String.format("Unsupported event log segment %s, version %d record size %d", file, version, recordSize));
+        }
+
+        buffer.position(RECORD_SIZE);
+
+        while (buffer.remaining() >= RECORD_SIZE) {
+          final int offset = buffer.position();
+          final long timeStamp = buffer.getLong();
+          final byte code = buffer.get();
+
+          if (code == 0) {
+            break;
+          }
+
+          final byte shelf = buffer.get();
+          final float life = buffer.getFloat();
+          final int idLength = buffer.get() & 0xFF;
+
+          // Torn or overwritten tail, nothing after it can be trusted
+          if (code < 0 || code > events || (shelf != NO_SHELF && (shelf < 0 || shelf >= shelves.length))
+              || idLength > MAX_ID_LENGTH || idLength > buffer.remaining()) {
+            logger.warn(String.format("Corrupt event record at offset %d of %s, skipping the rest of the segment", offset, file));
+            break;
+          }
+
+          buffer.get(id, 0, idLength);
+
+          consumer.accept(new EventRecord(timeStamp, LifecycleEvent.fromCode(code), new String(id, 0, idLength, StandardCharsets.US_ASCII),
+              shelf == NO_SHELF ? null : shelves[shelf], life));
+          count++;
+          buffer.position(offset + RECORD_SIZE);
+        }
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * @return segment files of the given directory, oldest first
+   */
+  public static List<File> listSegments(@Nonnull final File directory) {
+    final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+    if (files == null) {
+      return new ArrayList<>();
+    }
+
+    // Names are zero padded so they sort by index
+    Arrays.sort(files);
+
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  private static long getSegmentIndex(@Nonnull final File segment) {
+    final String name = segment.getName();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private void runRecorder() {
+    while (running) {
+      if (drain() == 0) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Copy the published records to the segment, stops at the first slot that is claimed but not published yet
+   *
+   * @return number of records copied
+   */
+  private int drain() {
+    final byte[] records = ring.array();
+    long sequence = head;
+    int drained = 0;
+
+    while (published.get((int) (sequence & mask)) == sequence) {
+      write(records, (int) (sequence & mask) * RECORD_SIZE);
+      sequence++;
+      drained++;
+      // Frees the slot for the producers, after the copy
+      head = sequence;
+    }
+
+    return drained;
+  }
+
+  private void write(@Nonnull final byte[] records, final int offset) {
+    if (segment != null && !segment.buffer.hasRemaining()) {
+      reportDropped();
+
+      try {
+        roll();
+      } catch (final IOException e) {
+        logger.error(String.format("Could not start a new event log segment in %s, dropping the events", directory), e);
+        segment.close();
+        segment = null;
+      }
+    }
+
+    if (segment == null) {
+      dropped.increment();
+      return;
+    }
+
+    segment.buffer.put(records, offset, RECORD_SIZE);
+  }
+
+  private void roll() throws IOException {
+    final Segment next = Segment.create(directory, nextSegmentIndex, segmentSizeInBytes);
+
+    if (segment != null) {
+      segment.close();
+    }
+
+    segment = next;
+    segments.addLast(next.path);
+    nextSegmentIndex++;
+
+    while (segments.size() > maxSegments) {
+      final File oldest = segments.removeFirst();
+
+      if (!oldest.delete()) {
+        logger.warn(String.format("Could not delete event log segment %s", oldest));
+      }
+    }
+  }
+
+  private void reportDropped() {
+    final long total = dropped.sum();
+
+    if (total > reportedDropped) {
+      logger.warn(String.format("Event log dropped %d events, %d in total", total - reportedDropped, total));
+      reportedDropped = total;
+    }
+  }
+
+  /**
+   * A preallocated segment file mapped in memory, positioned after its header
+   */
+  private static final class Segment {
+    private final File path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    private Segment(@Nonnull final File path, @Nonnull final RandomAccessFile file, @Nonnull final MappedByteBuffer buffer) {
+      this.path = path;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    static Segment create(@Nonnull final File directory, final long index, final int sizeInBytes) throws IOException {
+      final File path = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+      final RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+      try {
+        file.setLength(sizeInBytes);
+        final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(System.currentTimeMillis());
+        buffer.position(RECORD_SIZE);
+        return new Segment(path, file, buffer);
+      } catch (final IOException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    /**
+     * The mapping stays valid until it is garbage collected, closing only releases the file descriptor
+     */
+    void close() {
+      try {
+        buffer.force();
+        file.close();
+      } catch (final IOException e) {
+        logger.error("Could not close event log segment", e);
+      }
+    }
+  }
+}
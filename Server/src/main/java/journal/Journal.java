@@ -0,0 +1,56 @@
+package journal;
+
+import common.Order;
+import common.Temp;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nonnull;
+
+/**
+ * Append-only log of order events, replayed on startup to rebuild the queues and shelves. Check {@link JournalManager}
+ *
+ * Appending never waits for the disk, callers that must not go on before their event is durable (acknowledging an
+ * order) wait on {@link #whenDurable(long)}
+ */
+public interface Journal {
+  CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+
+  /**
+   * Journal that drops every event, used when journaling is disabled
+   */
+  Journal NOOP = new Journal() {
+    @Override
+    public long append(@Nonnull final JournalEvent event, @Nonnull final Order order, final Temp shelf) {
+      return 0;
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(final long lsn) {
+      return DURABLE;
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  /**
+   * @param shelf temperature of the shelf for {@link JournalEvent#SHELVED}, null otherwise
+   * @return log sequence number of the event
+   */
+  long append(@Nonnull final JournalEvent event, @Nonnull final Order order, final Temp shelf);
+
+  default long append(@Nonnull final JournalEvent event, @Nonnull final Order order) {
+    return append(event, order, null);
+  }
+
+  /**
+   * @return future completed once every event up to the given log sequence number is on disk, completed exceptionally
+   * if the journal failed to write it
+   */
+  CompletableFuture<Void> whenDurable(final long lsn);
+
+  /**
+   * Flush and release the journal
+   */
+  void close();
+}
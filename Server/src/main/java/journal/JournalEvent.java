@@ -0,0 +1,33 @@
+package journal;
+
+/**
+ * What happened to an order, one journal record per event. Stored by ordinal so only add new events at the end
+ *
+ * ACCEPTED: the order was received, the record carries the whole order
+ * SHELVED: the order was placed (or moved) on a shelf, the record carries the shelf temperature
+ * PICKED_UP, DISCARDED, EXPIRED: the order left the server
+ */
+public enum JournalEvent {
+  ACCEPTED,
+  SHELVED,
+  PICKED_UP,
+  DISCARDED,
+  EXPIRED;
+
+  private static final JournalEvent[] VALUES = values();
+
+  /**
+   * @return true if the order is gone after this event
+   */
+  public boolean isTerminal() {
+    return this == PICKED_UP || this == DISCARDED || this == EXPIRED;
+  }
+
+  static JournalEvent fromCode(final byte code) {
+    if (code < 0 || code >= VALUES.length) {
+      throw new IllegalArgumentException(String.format("Unknown journal event %d", code));
+    }
+
+    return VALUES[code];
+  }
+}
@@ -0,0 +1,116 @@
+package journal;
+
+import common.Order;
+import common.Queue;
+import common.ServerProperties;
+import common.Shelf;
+import common.ShelvesManager;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the server {@link Journal}, {@link Journal#NOOP} until {@link #initialize(Queue, Queue)} opens the one
+ * configured by {@link ServerProperties#journalMode}
+ *
+ * On startup the {@link Snapshot} and the journal left by the previous run are replayed: orders that were shelved go
+ * back on their shelf, orders that were still queued go back in the order queue, and all of them go back in the
+ * dispatcher queue (their couriers are gone with the previous run). A snapshot of the recovered orders replaces the
+ * old segments, then the {@link Snapshotter} keeps the journal short while the server runs
+ */
+public final class JournalManager {
+  private static final Logger logger = Logger.getLogger(JournalManager.class);
+  private static volatile Journal journal = Journal.NOOP;
+  private static Thread snapshotter;
+
+  private JournalManager() {
+  }
+
+  public static Journal getJournal() {
+    return journal;
+  }
+
+  public static void setJournal(@Nonnull final Journal journal) {
+    JournalManager.journal = journal;
+  }
+
+  /**
+   * Replay the journal of the previous run into the given queues and the shelves, then start journaling.
+   * Must run before the server accepts orders
+   */
+  public static void initialize(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue) throws IOException {
+    final JournalMode mode = ServerProperties.journalMode.get();
+
+    if (mode == JournalMode.DISABLED) {
+      logger.info("Journal is disabled");
+      return;
+    }
+
+    final long start = System.nanoTime();
+    final File directory = new File(ServerProperties.journalDirectory.get());
+    final List<File> previousSegments = MappedJournal.listSegments(directory);
+    final JournalRecovery recovery = JournalRecovery.recover(directory);
+    final MappedJournal mappedJournal = new MappedJournal(directory, recovery.getLastLsn() + 1,
+        ServerProperties.journalSegmentSizeInBytes.get(), mode, ServerProperties.journalFlushIntervalInMS.get());
+
+    journal = mappedJournal;
+    restore(recovery, orderQueue, dispatcherQueue);
+
+    // Placements of the restored orders are journaled after the snapshot, the previous segments can go
+    final Collection<Shelf> shelves = ShelvesManager.getInstance().getShelves();
+    Snapshot.write(directory, recovery, shelves);
+
+    for (final File segment : previousSegments) {
+      if (!segment.delete()) {
+        logger.warn(String.format("Could not delete journal segment %s", segment));
+      }
+    }
+
+    logger.info(String.format("Journal %s opened in %s mode, recovered %d orders in %d ms", directory.getAbsolutePath(),
+        mode, recovery.getOrders().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+    final int snapshotIntervalInSeconds = ServerProperties.snapshotIntervalInSeconds.get();
+
+    if (snapshotIntervalInSeconds > 0) {
+      snapshotter = new Thread(new Snapshotter(mappedJournal, directory, recovery, shelves, snapshotIntervalInSeconds));
+      snapshotter.setName("Snapshotter");
+      snapshotter.setDaemon(true);
+      snapshotter.start();
+    }
+  }
+
+  public static void close() {
+    if (snapshotter != null) {
+      snapshotter.interrupt();
+
+      try {
+        snapshotter.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      snapshotter = null;
+    }
+
+    journal.close();
+    journal = Journal.NOOP;
+  }
+
+  private static void restore(@Nonnull final JournalRecovery recovery, @Nonnull final Queue orderQueue,
+                              @Nonnull final Queue dispatcherQueue) {
+    for (final Order order : recovery.getOrders()) {
+      final Temp shelf = recovery.getShelf(order);
+      // Dispatcher queue first, an order left on a shelf without a courier would hold its slot until it expires
+      if (!dispatcherQueue.add(order)
+          || !(shelf != null ? ShelvesManager.getInstance().restoreOrder(order, shelf).isPresent() : orderQueue.add(order))) {
+        logger.error(String.format("Could not restore order %s, discarding it", order));
+        journal.append(JournalEvent.DISCARDED, order);
+      }
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package journal;
+
+import common.ServerProperties;
+
+/**
+ * Whether and how order events are journaled, selected by {@link ServerProperties#journalMode}
+ *
+ * DISABLED: nothing is journaled, a crash loses every queued and shelved order
+ * ASYNC: events are appended to the journal and flushed to disk every {@link ServerProperties#journalFlushIntervalInMS},
+ * orders are acknowledged right away. A machine crash can lose the last interval, a process crash loses nothing
+ * (the mapped pages are written back by the OS)
+ * GROUP_COMMIT: same as ASYNC but an order is only acknowledged once it is on disk. A single thread flushes everything
+ * appended since the previous flush at once, so the flush cost is shared by all the orders waiting for it
+ */
+public enum JournalMode {
+  DISABLED,
+  ASYNC,
+  GROUP_COMMIT
+}
@@ -0,0 +1,51 @@
+package journal;
+
+import common.Order;
+import common.Temp;
+import javax.annotation.Nonnull;
+
+/**
+ * A journal record read back, {@link #getOrder()} is only complete for {@link JournalEvent#ACCEPTED}, the other events
+ * only carry the order id
+ */
+public final class JournalRecord {
+  private final long lsn;
+  private final JournalEvent event;
+  private final String orderId;
+  private final Order order;
+  private final Temp shelf;
+
+  JournalRecord(final long lsn, @Nonnull final JournalEvent event, @Nonnull final String orderId, final Order order, final Temp shelf) {
+    this.lsn = lsn;
+    this.event = event;
+    this.orderId = orderId;
+    this.order = order;
+    this.shelf = shelf;
+  }
+
+  public long getLsn() {
+    return lsn;
+  }
+
+  public JournalEvent getEvent() {
+    return event;
+  }
+
+  public String getOrderId() {
+    return orderId;
+  }
+
+  /**
+   * @return the order for {@link JournalEvent#ACCEPTED}, null otherwise
+   */
+  public Order getOrder() {
+    return order;
+  }
+
+  /**
+   * @return shelf temperature for {@link JournalEvent#SHELVED}, null otherwise
+   */
+  public Temp getShelf() {
+    return shelf;
+  }
+}
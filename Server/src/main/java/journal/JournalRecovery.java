@@ -0,0 +1,100 @@
+package journal;
+
+import common.Order;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Orders still in the server according to the journal: accepted and not picked-up, discarded or expired yet.
+ * Orders keep their acceptance order
+ *
+ * Starts from the {@link Snapshot} if there is one and folds the journal events that came after it
+ */
+public final class JournalRecovery {
+  private final Map<String, Order> orders;
+  private final Map<String, Temp> shelves;
+  private long lastLsn;
+
+  public JournalRecovery() {
+    this.orders = new LinkedHashMap<>();
+    this.shelves = new HashMap<>();
+  }
+
+  /**
+   * @param directory journal directory, missing or empty means nothing to recover
+   */
+  public static JournalRecovery recover(@Nonnull final File directory) throws IOException {
+    final JournalRecovery recovery = Snapshot.read(directory);
+    recovery.apply(MappedJournal.listSegments(directory));
+    return recovery;
+  }
+
+  /**
+   * Fold the records of the given segments that came after this state
+   */
+  public void apply(@Nonnull final List<File> segments) throws IOException {
+    final long snapshotLsn = lastLsn;
+
+    MappedJournal.read(segments, record -> {
+      if (record.getLsn() > snapshotLsn) {
+        apply(record);
+      }
+    });
+  }
+
+  public void apply(@Nonnull final JournalRecord record) {
+    lastLsn = Math.max(lastLsn, record.getLsn());
+
+    if (record.getEvent() == JournalEvent.ACCEPTED) {
+      orders.put(record.getOrderId(), record.getOrder());
+    } else if (record.getEvent() == JournalEvent.SHELVED) {
+      if (orders.containsKey(record.getOrderId())) {
+        shelves.put(record.getOrderId(), record.getShelf());
+      }
+    } else if (record.getEvent().isTerminal()) {
+      orders.remove(record.getOrderId());
+      shelves.remove(record.getOrderId());
+    }
+  }
+
+  /**
+   * @return orders still in the server, in acceptance order
+   */
+  public List<Order> getOrders() {
+    return Collections.unmodifiableList(new ArrayList<>(orders.values()));
+  }
+
+  /**
+   * @return temperature of the shelf the order was last placed on, null if it was still waiting in the order queue
+   */
+  public Temp getShelf(@Nonnull final Order order) {
+    return shelves.get(order.getId());
+  }
+
+  public long getLastLsn() {
+    return lastLsn;
+  }
+
+  void setLastLsn(final long lastLsn) {
+    this.lastLsn = lastLsn;
+  }
+
+  /**
+   * Add an order loaded from a {@link Snapshot}
+   */
+  void restore(@Nonnull final Order order, final Temp shelf) {
+    orders.put(order.getId(), order);
+
+    if (shelf != null) {
+      shelves.put(order.getId(), shelf);
+    }
+  }
+}
@@ -0,0 +1,533 @@
+package journal;
+
+import common.Order;
+import common.OrderCodec;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * {@link Journal} on memory-mapped segment files of a fixed size, named after the first log sequence number they hold
+ * (journal-00000000000000000001.log). Segments are preallocated and never appended to after a restart, the journal
+ * always starts a new segment.
+ *
+ * Record layout: [int body length][int CRC32 of the body][long lsn][byte event][byte shelf or -1][order]
+ * the order is the whole {@link OrderCodec} form for {@link JournalEvent#ACCEPTED} and [id] for the other events.
+ * A 0 length marks the end of a segment, a record with a bad CRC is a write torn by a crash and ends the replay.
+ *
+ * Segments are only written until they roll, {@link Snapshotter} rolls the journal and deletes the segments its
+ * snapshot covers.
+ *
+ * Appends copy the record into the mapping under a lock, nothing waits for the disk there. A single committer thread
+ * forces the mapping when somebody waits on {@link #whenDurable(long)} (group commit) or every flush interval, and
+ * completes every waiter covered by the flush at once.
+ *
+ * The committer also keeps the next segment preallocated ({@link #SPARE_SEGMENT}), a roll only renames it and hands
+ * the full segment over to the committer to force and close, so appending threads never wait for the file system.
+ */
+public class MappedJournal implements Journal {
+  static final String SEGMENT_PREFIX = "journal-";
+  static final String SEGMENT_SUFFIX = ".log";
+  // Not a segment until it is renamed after its first lsn
+  static final String SPARE_SEGMENT = SEGMENT_PREFIX + "spare.tmp";
+  private static final Logger logger = Logger.getLogger(MappedJournal.class);
+  private static final int HEADER_SIZE = 8;
+  private static final byte NO_SHELF = -1;
+
+  private final File directory;
+  private final int segmentSizeInBytes;
+  private final boolean waitForDisk;
+  private final long flushIntervalInMS;
+  private final Thread committer;
+
+  // Guarded by appendLock
+  private final ReentrantLock appendLock;
+  private final CRC32 crc;
+  private ByteBuffer scratch;
+  private Segment segment;
+  private long nextLsn;
+  // Full segments waiting for the committer to force and close them
+  private List<Segment> retired;
+
+  // Preallocated by the committer, taken by a roll
+  private final AtomicReference<Segment> spare;
+
+  private volatile long appendedLsn;
+  private final AtomicLong durableLsn;
+  private volatile boolean closed;
+
+  // Guarded by itself
+  private final Object commitMonitor;
+  private List<Waiter> waiters;
+
+  /**
+   * @param directory where the segments are written, created if missing
+   * @param firstLsn log sequence number of the first appended event, one past the last replayed one
+   * @param mode {@link JournalMode#GROUP_COMMIT} makes {@link #whenDurable(long)} wait for the disk
+   */
+  public MappedJournal(@Nonnull final File directory, final long firstLsn, final int segmentSizeInBytes,
+                       @Nonnull final JournalMode mode, final long flushIntervalInMS) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(String.format("Could not create journal directory %s", directory));
+    }
+
+    this.directory = directory;
+    this.segmentSizeInBytes = segmentSizeInBytes;
+    this.waitForDisk = mode == JournalMode.GROUP_COMMIT;
+    this.flushIntervalInMS = flushIntervalInMS;
+    this.appendLock = new ReentrantLock();
+    this.crc = new CRC32();
+    this.scratch = ByteBuffer.allocate(256);
+    this.nextLsn = firstLsn;
+    this.appendedLsn = firstLsn - 1;
+    this.durableLsn = new AtomicLong(firstLsn - 1);
+    this.commitMonitor = new Object();
+    this.waiters = new ArrayList<>();
+    this.retired = new ArrayList<>();
+    this.spare = new AtomicReference<>();
+    this.segment = Segment.create(getSegmentFile(directory, firstLsn), segmentSizeInBytes);
+
+    // Left by a previous run, preallocated again by the committer
+    Files.deleteIfExists(new File(directory, SPARE_SEGMENT).toPath());
+
+    committer = new Thread(this::runCommitter);
+    committer.setName("JournalCommitter");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  @Override
+  public long append(@Nonnull final JournalEvent event, @Nonnull final Order order, final Temp shelf) {
+    appendLock.lock();
+
+    try {
+      if (closed) {
+        throw new IllegalStateException("Journal is closed");
+      }
+
+      final long lsn = nextLsn;
+      final int bodyLength = encode(lsn, event, order, shelf);
+
+      if (segment.buffer.remaining() < HEADER_SIZE + bodyLength) {
+        if (HEADER_SIZE + bodyLength > segmentSizeInBytes - HEADER_SIZE) {
+          throw new IllegalArgumentException(String.format("Journal record of %d bytes doesn't fit in a segment", bodyLength));
+        }
+
+        roll(lsn);
+      }
+
+      crc.reset();
+      crc.update(scratch.array(), 0, bodyLength);
+      segment.buffer.putInt(bodyLength).putInt((int) crc.getValue()).put(scratch.array(), 0, bodyLength);
+
+      nextLsn++;
+      appendedLsn = lsn;
+
+      return lsn;
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not roll the journal segment", e);
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> whenDurable(final long lsn) {
+    if (!waitForDisk || lsn <= durableLsn.get()) {
+      return DURABLE;
+    }
+
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    synchronized (commitMonitor) {
+      waiters.add(new Waiter(lsn, future));
+      commitMonitor.notifyAll();
+    }
+
+    return future;
+  }
+
+  /**
+   * Close the current segment and start a new one, the closed segments are never written again
+   *
+   * @return log sequence number of the last event in the closed segments
+   */
+  public long rollSegment() throws IOException {
+    appendLock.lock();
+
+    try {
+      if (closed) {
+        throw new IllegalStateException("Journal is closed");
+      }
+
+      roll(nextLsn);
+      return nextLsn - 1;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  public long getDurableLsn() {
+    return durableLsn.get();
+  }
+
+  /**
+   * @return log sequence number of the last appended event, on disk or not
+   */
+  public long getAppendedLsn() {
+    return appendedLsn;
+  }
+
+  @Override
+  public void close() {
+    appendLock.lock();
+
+    try {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+    } finally {
+      appendLock.unlock();
+    }
+
+    synchronized (commitMonitor) {
+      commitMonitor.notifyAll();
+    }
+
+    try {
+      committer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (final Segment full : retired) {
+      full.close();
+    }
+
+    segment.close();
+    final Segment unused = spare.getAndSet(null);
+
+    if (unused != null) {
+      unused.close();
+
+      if (!unused.path.delete()) {
+        logger.warn(String.format("Could not delete the spare journal segment %s", unused.path));
+      }
+    }
+  }
+
+  /**
+   * Read every record of the journal in the given directory, in log sequence order
+   *
+   * @return log sequence number of the last record read, 0 if there are none
+   */
+  public static long read(@Nonnull final File directory, @Nonnull final Consumer<JournalRecord> consumer) throws IOException {
+    return read(listSegments(directory), consumer);
+  }
+
+  /**
+   * Read every record of the given segments, in the given order
+   *
+   * @return log sequence number of the last record read, 0 if there are none
+   */
+  public static long read(@Nonnull final List<File> segments, @Nonnull final Consumer<JournalRecord> consumer) throws IOException {
+    long lastLsn = 0;
+
+    for (final File file : segments) {
+      try (final RandomAccessFile raf = new RandomAccessFile(file, "r"); final FileChannel channel = raf.getChannel()) {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        final CRC32 crc = new CRC32();
+        final byte[] body = new byte[256];
+
+        while (buffer.remaining() >= HEADER_SIZE) {
+          final int bodyLength = buffer.getInt();
+          final int checksum = buffer.getInt();
+
+          if (bodyLength <= 0) {
+            break;
+          }
+
+          final byte[] bytes = bodyLength <= body.length ? body : new byte[bodyLength];
+
+          if (bodyLength > buffer.remaining()) {
+            logger.warn(String.format("Torn journal record at the end of %s, ignoring it", file));
+            break;
+          }
+
+          buffer.get(bytes, 0, bodyLength);
+          crc.reset();
+          crc.update(bytes, 0, bodyLength);
+
+          if ((int) crc.getValue() != checksum) {
+            logger.warn(String.format("Corrupted journal record in %s after lsn %d, ignoring the rest of the segment", file, lastLsn));
+            break;
+          }
+
+          final JournalRecord record = decode(ByteBuffer.wrap(bytes, 0, bodyLength));
+          lastLsn = record.getLsn();
+          consumer.accept(record);
+        }
+      }
+    }
+
+    return lastLsn;
+  }
+
+  /**
+   * @return segment files of the given directory, oldest first
+   */
+  public static List<File> listSegments(@Nonnull final File directory) {
+    final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+    if (files == null) {
+      return new ArrayList<>();
+    }
+
+    // Names are zero padded so they sort by lsn
+    Arrays.sort(files);
+
+    return new ArrayList<>(Arrays.asList(files));
+  }
+
+  /**
+   * @return log sequence number of the first record of the given segment, from its name
+   */
+  public static long getFirstLsn(@Nonnull final File segment) {
+    final String name = segment.getName();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private void runCommitter() {
+    while (true) {
+      final List<Waiter> ready;
+
+      if (!closed && spare.get() == null) {
+        preallocate();
+      }
+
+      synchronized (commitMonitor) {
+        if (waiters.isEmpty() && !closed) {
+          try {
+            commitMonitor.wait(flushIntervalInMS);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+
+        ready = waiters;
+        waiters = new ArrayList<>();
+      }
+
+      Throwable failure = null;
+
+      try {
+        commit();
+      } catch (final Exception e) {
+        logger.error("Could not flush the journal", e);
+        failure = e;
+      }
+
+      final long durable = durableLsn.get();
+
+      for (final Waiter waiter : ready) {
+        if (failure != null) {
+          waiter.future.completeExceptionally(failure);
+        } else if (waiter.lsn <= durable) {
+          waiter.future.complete(null);
+        } else {
+          // Appended after this flush started, wait for the next one
+          synchronized (commitMonitor) {
+            waiters.add(waiter);
+          }
+        }
+      }
+
+      if (closed && ready.isEmpty()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Only called by the committer, a failure is logged and the next roll creates its segment itself
+   */
+  private void preallocate() {
+    try {
+      final File path = new File(directory, SPARE_SEGMENT);
+      Files.deleteIfExists(path.toPath());
+      spare.set(Segment.create(path, segmentSizeInBytes));
+    } catch (final IOException e) {
+      logger.error("Could not preallocate the next journal segment", e);
+    }
+  }
+
+  /**
+   * Force everything appended so far to disk, full segments first
+   */
+  private void commit() {
+    final Segment current;
+    final List<Segment> full;
+    final long target;
+
+    appendLock.lock();
+
+    try {
+      current = segment;
+      target = appendedLsn;
+      full = retired;
+
+      if (!full.isEmpty()) {
+        retired = new ArrayList<>();
+      }
+    } finally {
+      appendLock.unlock();
+    }
+
+    for (final Segment fullSegment : full) {
+      fullSegment.close();
+    }
+
+    if (target <= durableLsn.get()) {
+      return;
+    }
+
+    current.buffer.force();
+    durableLsn.accumulateAndGet(target, Math::max);
+  }
+
+  /**
+   * Must hold appendLock. The full segment is left to the committer, durable lsns only move once it forced it
+   * along with the current one. The next segment is the preallocated spare renamed after its first lsn, it is
+   * only created here if the committer could not keep up
+   */
+  private void roll(final long firstLsn) throws IOException {
+    final File path = getSegmentFile(directory, firstLsn);
+    final Segment next = spare.getAndSet(null);
+
+    retired.add(segment);
+
+    if (next == null) {
+      segment = Segment.create(path, segmentSizeInBytes);
+    } else {
+      Files.move(next.path.toPath(), path.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      segment = new Segment(path, next.file, next.buffer);
+    }
+
+    // Wake up the committer to preallocate the next one
+    synchronized (commitMonitor) {
+      commitMonitor.notifyAll();
+    }
+  }
+
+  private static File getSegmentFile(@Nonnull final File directory, final long firstLsn) {
+    return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * Must hold appendLock, encodes the record body in {@link #scratch}
+   *
+   * @return body length
+   */
+  private int encode(final long lsn, @Nonnull final JournalEvent event, @Nonnull final Order order, final Temp shelf) {
+    final boolean accepted = event == JournalEvent.ACCEPTED;
+    final int maxLength = 8 + 1 + 1 + (accepted ? OrderCodec.getMaxLength(order) : OrderCodec.getMaxLength(order.getId()));
+
+    if (scratch.capacity() < maxLength) {
+      scratch = ByteBuffer.allocate(Math.max(maxLength, scratch.capacity() * 2));
+    }
+
+    scratch.clear();
+    scratch.putLong(lsn).put((byte) event.ordinal()).put(shelf == null ? NO_SHELF : (byte) shelf.ordinal());
+
+    if (accepted) {
+      OrderCodec.put(scratch, order);
+    } else {
+      OrderCodec.putString(scratch, order.getId());
+    }
+
+    return scratch.position();
+  }
+
+  private static JournalRecord decode(@Nonnull final ByteBuffer body) {
+    final long lsn = body.getLong();
+    final JournalEvent event = JournalEvent.fromCode(body.get());
+    final byte shelfCode = body.get();
+    final Temp shelf = shelfCode == NO_SHELF ? null : Temp.values()[shelfCode];
+
+    if (event == JournalEvent.ACCEPTED) {
+      final Order order = OrderCodec.get(body);
+      return new JournalRecord(lsn, event, order.getId(), order, shelf);
+    }
+
+    return new JournalRecord(lsn, event, OrderCodec.getString(body), null, shelf);
+  }
+
+  private static final class Waiter {
+    private final long lsn;
+    private final CompletableFuture<Void> future;
+
+    private Waiter(final long lsn, @Nonnull final CompletableFuture<Void> future) {
+      this.lsn = lsn;
+      this.future = future;
+    }
+  }
+
+  /**
+   * A preallocated segment file mapped in memory
+   */
+  private static final class Segment {
+    private final File path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    private Segment(@Nonnull final File path, @Nonnull final RandomAccessFile file, @Nonnull final MappedByteBuffer buffer) {
+      this.path = path;
+      this.file = file;
+      this.buffer = buffer;
+    }
+
+    static Segment create(@Nonnull final File path, final int sizeInBytes) throws IOException {
+      final RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+      try {
+        file.setLength(sizeInBytes);
+        return new Segment(path, file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes));
+      } catch (final IOException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    /**
+     * The mapping stays valid until it is garbage collected, closing only releases the file descriptor
+     */
+    void close() {
+      try {
+        buffer.force();
+        file.close();
+      } catch (final IOException e) {
+        logger.error("Could not close journal segment", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package journal;
+
+import common.Order;
+import common.Shelf;
+import common.Temp;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Binary snapshot of the orders still in the server up to a log sequence number of the journal, restarting only replays
+ * the journal after it. Written to a temporary file then renamed over the previous one so a crash leaves either of them
+ *
+ * Layout: [int magic][int version][long lsn][long takenTimeStamp][int count] then per order
+ * [UTF id][UTF name][byte temp][int shelfLife][float decayRate][long createTimeStamp][byte shelf or -1]
+ * [byte deadline shelf or -1][long expiryTimeStamp] and [int CRC32 of everything before] at the end
+ *
+ * The shelf comes from the journal. The expiry deadline comes from the live shelves, read without locking them, with
+ * the shelf it was found on (its decay modifier applies until the order is placed again)
+ */
+public final class Snapshot {
+  static final String FILE_NAME = "snapshot.bin";
+  private static final int MAGIC = 0x534e4150; // SNAP
+  private static final int VERSION = 1;
+  private static final byte NO_SHELF = -1;
+
+  private Snapshot() {
+  }
+
+  /**
+   * Save the given state, its last log sequence number is the one of the snapshot
+   *
+   * @param shelves live shelves to take the expiry deadlines from
+   */
+  public static void write(@Nonnull final File directory, @Nonnull final JournalRecovery state,
+                           @Nonnull final Collection<Shelf> shelves) throws IOException {
+    final Map<String, Placement> placements = new HashMap<>();
+
+    for (final Shelf shelf : shelves) {
+      final Iterator<Order> iterator = shelf.getOrdersIterator();
+
+      while (iterator.hasNext()) {
+        final Order order = iterator.next();
+        placements.put(order.getId(), new Placement(shelf.getTemperature(), order.getExpiryTimeStamp()));
+      }
+    }
+
+    final List<Order> orders = state.getOrders();
+    final File temporary = new File(directory, FILE_NAME + ".tmp");
+    final CRC32 crc = new CRC32();
+
+    try (final FileOutputStream file = new FileOutputStream(temporary);
+         final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(state.getLastLsn());
+      out.writeLong(System.currentTimeMillis());
+      out.writeInt(orders.size());
+
+      for (final Order order : orders) {
+        final Temp shelf = state.getShelf(order);
+        final Placement placement = placements.get(order.getId());
+
+        out.writeUTF(order.getId());
+        out.writeUTF(order.getName());
+        out.writeByte(order.getTemp().ordinal());
+        out.writeInt(order.getShelfLife());
+        out.writeFloat(order.getDecayRate());
+        out.writeLong(order.getCreateTimeStamp());
+        out.writeByte(shelf == null ? NO_SHELF : shelf.ordinal());
+        out.writeByte(placement == null ? NO_SHELF : placement.shelf.ordinal());
+        out.writeLong(placement == null ? 0 : placement.expiryTimeStamp);
+      }
+
+      // Everything buffered must go through the checksum before reading it
+      out.flush();
+      out.writeInt((int) crc.getValue());
+      out.flush();
+      file.getFD().sync();
+    }
+
+    Files.move(temporary.toPath(), new File(directory, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Load the snapshot of the given directory, orders that were on a shelf resume their decay toward the saved deadline
+   *
+   * @return state of the snapshot, empty with log sequence number 0 if there is none
+   * @throws IOException if the snapshot is corrupted, the journal it covers is gone so it can't be ignored
+   */
+  public static JournalRecovery read(@Nonnull final File directory) throws IOException {
+    final JournalRecovery state = new JournalRecovery();
+    final File file = new File(directory, FILE_NAME);
+
+    if (!file.isFile()) {
+      return state;
+    }
+
+    final long now = System.currentTimeMillis();
+    final CRC32 crc = new CRC32();
+
+    try (final DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(String.format("%s is not a snapshot this server can read", file));
+      }
+
+      final long lsn = in.readLong();
+      in.readLong(); // taken time stamp
+      final int count = in.readInt();
+      final Temp[] temps = Temp.values();
+
+      for (int i = 0; i < count; i++) {
+        final Order order = new Order(in.readUTF(), in.readUTF(), temps[in.readByte()], in.readInt(), in.readFloat(), in.readLong());
+        final byte shelf = in.readByte();
+        final byte deadlineShelf = in.readByte();
+        final long expiryTimeStamp = in.readLong();
+
+        if (deadlineShelf != NO_SHELF) {
+          order.restoreDecay(expiryTimeStamp, temps[deadlineShelf], now);
+        }
+
+        state.restore(order, shelf == NO_SHELF ? null : temps[shelf]);
+      }
+
+      final int checksum = (int) crc.getValue();
+
+      if (in.readInt() != checksum) {
+        throw new IOException(String.format("Snapshot %s is corrupted", file));
+      }
+
+      state.setLastLsn(lsn);
+    }
+
+    return state;
+  }
+
+  private static final class Placement {
+    private final Temp shelf;
+    private final long expiryTimeStamp;
+
+    private Placement(@Nonnull final Temp shelf, final long expiryTimeStamp) {
+      this.shelf = shelf;
+      this.expiryTimeStamp = expiryTimeStamp;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package journal;
+
+import common.Shelf;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * A background thread writing a {@link Snapshot} every {@link common.ServerProperties#snapshotIntervalInSeconds}
+ *
+ * Placements never stop for it: the journal is rolled to a new segment, the closed segments (immutable from there) are
+ * folded into the state of the previous snapshot, the expiry deadlines are read from the live shelves without locking
+ * them, then the closed segments are deleted. The journal and the restart time stay bounded by the number of orders
+ * in the server and the events of the last interval, whatever the uptime
+ */
+public class Snapshotter implements Runnable {
+  private static final Logger logger = Logger.getLogger(Snapshotter.class);
+
+  private final MappedJournal journal;
+  private final File directory;
+  private final JournalRecovery state;
+  private final Collection<Shelf> shelves;
+  private final long intervalInMS;
+
+  /**
+   * @param state orders in the server up to its last log sequence number, only touched by this snapshotter from now on
+   */
+  public Snapshotter(@Nonnull final MappedJournal journal, @Nonnull final File directory, @Nonnull final JournalRecovery state,
+                     @Nonnull final Collection<Shelf> shelves, final long intervalInSeconds) {
+    this.journal = journal;
+    this.directory = directory;
+    this.state = state;
+    this.shelves = shelves;
+    this.intervalInMS = TimeUnit.SECONDS.toMillis(intervalInSeconds);
+  }
+
+  @Override
+  public void run() {
+    logger.info("Starting Snapshotter thread");
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(intervalInMS);
+        runNow();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (final Exception e) {
+        // We want this thread to keep running so we don't wanna any exception to escape
+        logger.error("Error while writing snapshot", e);
+      }
+    }
+  }
+
+  /**
+   * @return true if a snapshot has been written, false if nothing was journaled since the last one
+   */
+  public synchronized boolean runNow() throws IOException {
+    if (journal.getAppendedLsn() <= state.getLastLsn()) {
+      return false;
+    }
+
+    final long start = System.nanoTime();
+    final long lsn = journal.rollSegment();
+    final List<File> closed = new ArrayList<>();
+
+    for (final File segment : MappedJournal.listSegments(directory)) {
+      if (MappedJournal.getFirstLsn(segment) <= lsn) {
+        closed.add(segment);
+      }
+    }
+
+    state.apply(closed);
+    state.setLastLsn(lsn);
+    Snapshot.write(directory, state, shelves);
+
+    for (final File segment : closed) {
+      if (!segment.delete()) {
+        logger.warn(String.format("Could not delete journal segment %s", segment));
+      }
+    }
+
+    logger.info(String.format("Snapshot of %d orders up to lsn %d written in %d ms", state.getOrders().size(), lsn,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    return true;
+  }
+}
@@ -2,20 +2,41 @@ package processor;
 
 import common.GlobalStats;
 import common.Order;
+import common.PoolStats;
+import common.Processor;
 import common.Queue;
+import common.ServerProperties;
 import common.Shelf;
 import common.ShelvesManager;
-import java.util.Optional;
+import events.EventLogManager;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 import org.apache.log4j.Logger;
 
-public class OrderProcessor implements Runnable {
+/**
+ * Places orders on the shelves
+ *
+ * When running as a thread the processor fetches orders in batches (up to {@link ServerProperties#orderProcessorBatchSize})
+ * and places a whole batch at once, check {@link ShelvesManager#addOrders(List)}
+ */
+public class OrderProcessor implements Runnable, Processor {
   private static Logger logger = Logger.getLogger(OrderProcessor.class);
   private final Queue queue;
+  private final PoolStats poolStats;
+  private final int batchSize;
+  private final long batchTimeoutInMS;
 
   public OrderProcessor(@Nonnull final Queue queue) {
+    this(queue, new PoolStats("order_processor", 1));
+  }
+
+  public OrderProcessor(@Nonnull final Queue queue, @Nonnull final PoolStats poolStats) {
     this.queue = queue;
+    this.poolStats = poolStats;
+    this.batchSize = ServerProperties.orderProcessorBatchSize.get();
+    this.batchTimeoutInMS = ServerProperties.orderProcessorBatchTimeoutInMS.get();
   }
 
   @Override
@@ -32,18 +53,11 @@ public class OrderProcessor implements Runnable {
   public void run(@Nonnull final Supplier<Boolean> condition) {
     while (condition.get()) {
       try {
-        final Order order = queue.fetch();
-        logger.info(String.format("Processing order %s", order));
-
-        final Optional<Shelf> shelf = ShelvesManager.getInstance().addOrder(order);
+        final List<Order> orders = queue.fetchBatch(batchSize, batchTimeoutInMS);
 
-        if(shelf.isPresent()){
-          logger.info(String.format("Added order to shelf. Order %s -> shelf %s", order, shelf.get()));
-          GlobalStats.getInstance().reportProcessedOrder();
-        }else {
-          logger.error(String.format("Failed to add an order to any shelf"));
+        if (!orders.isEmpty()) {
+          process(orders);
         }
-
       } catch (final Exception e) {
         // We want this thread to keep running so we don't wanna any exception to escape
         // In here we will just log, yes we might have failed to process this order and
@@ -52,4 +66,47 @@ public class OrderProcessor implements Runnable {
       }
     }
   }
+
+  @Override
+  public boolean process(@Nonnull final Order order) {
+    return process(Collections.singletonList(order)) == 1;
+  }
+
+  /**
+   * @param orders to be placed on the shelves
+   * @return number of orders that have been placed
+   */
+  public int process(@Nonnull final List<Order> orders) {
+    poolStats.taskStarted();
+
+    try {
+      if (logger.isDebugEnabled()) {
+        logger.debug(String.format("Processing a batch of %d orders", orders.size()));
+      }
+
+      final Shelf[] shelves = ShelvesManager.getInstance().addOrders(orders);
+      int processed = 0;
+
+      for (int i = 0; i < shelves.length; i++) {
+        final Order order = orders.get(i);
+
+        if (shelves[i] == null) {
+          logger.error(String.format("Failed to add an order to any shelf. Order %s", order));
+          continue;
+        }
+
+        if (EventLogManager.isSampled(order)) {
+          logger.info(String.format("Added order to shelf. Order %s -> shelf %s", order, shelves[i]));
+        }
+
+        GlobalStats.getInstance().reportProcessedOrder();
+        GlobalStats.getInstance().reportShelvedOrder(order);
+        processed++;
+      }
+
+      return processed;
+    } finally {
+      poolStats.taskFinished();
+    }
+  }
 }
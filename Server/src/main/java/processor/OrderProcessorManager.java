@@ -1,27 +1,53 @@
 package processor;
 
+import common.ExecutionMode;
+import common.OrderTaskFeeder;
+import common.PoolStats;
 import common.Queue;
 import common.ServerProperties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.annotation.Nonnull;
 import org.apache.log4j.Logger;
 
+/**
+ * Starts the order processing threads, check {@link ExecutionMode} for how the work is scheduled
+ */
 public class OrderProcessorManager {
   private final static Logger logger = Logger.getLogger(OrderProcessorManager.class);
   private final ExecutorService executorService;
   private final Queue queue;
+  private final ExecutionMode executionMode;
+  private final PoolStats poolStats;
 
   public OrderProcessorManager(@Nonnull final Queue queue) {
+    this(queue, ServerProperties.executionMode.get());
+  }
+
+  public OrderProcessorManager(@Nonnull final Queue queue, @Nonnull final ExecutionMode executionMode) {
     this.queue = queue;
-    executorService = Executors.newFixedThreadPool(ServerProperties.numOfThreadsForOrderProcessing.get());
+    this.executionMode = executionMode;
+    executorService = executionMode.newExecutorService(ServerProperties.numOfThreadsForOrderProcessing.get());
+    poolStats = new PoolStats("order_processor", ExecutionMode.getPoolSize(executorService));
   }
 
   public void initialize(){
+    if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+      logger.info("Initializing OrderProcessorManager with a task per order");
+
+      final Thread feeder = new Thread(new OrderTaskFeeder(queue, new OrderProcessor(queue, poolStats), executorService));
+      feeder.setName("OrderProcessor-Feeder");
+      feeder.start();
+      return;
+    }
+
     logger.info(String.format("Initializing OrderProcessorManager with %d order processors", ServerProperties.numOfThreadsForOrderProcessing.get()));
 
     for (int i = 0; i < ServerProperties.numOfThreadsForOrderProcessing.get(); i++) {
-      executorService.submit(new OrderProcessor(queue));
+      executorService.submit(new OrderProcessor(queue, poolStats));
     }
   }
+
+  public PoolStats getPoolStats() {
+    return poolStats;
+  }
 }
@@ -0,0 +1,195 @@
+package protocol;
+
+import common.GlobalStats;
+import common.Queue;
+import common.ServerProperties;
+import io.netty.channel.Channel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps an overload burst from turning into heap growth, shared by all the channels
+ *
+ * Two limits are watched:
+ * 1- Queue depth: once the order or dispatcher queue reaches {@link ServerProperties#queueHighWatermark} the server is
+ * overloaded, new orders are answered with a 503 and the channels they came from stop reading (autoRead off)
+ * 2- In-flight request bodies: bytes of the requests read from the sockets but not answered yet. Over
+ * {@link ServerProperties#maxInFlightRequestBytes} new orders are answered with a 429 and the channels stop reading
+ *
+ * {@link #run()} runs periodically (every {@link #CHECK_INTERVAL_IN_MS}), it measures how fast the queues drain and
+ * resumes reading on the paused channels once the queues are below {@link ServerProperties#queueLowWatermark} and
+ * the in-flight bytes are below half the budget. Rejections carry a Retry-After computed from the drain rate.
+ *
+ * Rejections are counted in {@link GlobalStats}, a burst of them is logged once per {@link #REJECTION_LOG_INTERVAL_IN_MS}
+ */
+public class Backpressure implements Runnable {
+  public static final long CHECK_INTERVAL_IN_MS = 100;
+  static final long MAX_RETRY_AFTER_IN_SECONDS = 60;
+  static final long REJECTION_LOG_INTERVAL_IN_MS = 1000;
+  private static final double SMOOTHING = 0.5;
+  private static final Logger logger = Logger.getLogger(Backpressure.class);
+
+  private final Queue orderQueue;
+  private final Queue dispatcherQueue;
+  private final int highWatermark;
+  private final int lowWatermark;
+  private final long maxInFlightBytes;
+  private final AtomicLong inFlightBytes;
+  private final Set<Channel> pausedChannels;
+  private final AtomicLong unloggedRejections;
+  private final AtomicLong nextRejectionLogNanoTime;
+
+  // Orders per second leaving each queue, smoothed over the checks
+  private volatile double orderQueueDrainRate;
+  private volatile double dispatcherQueueDrainRate;
+
+  // Only touched by run()
+  private long lastCheckNanoTime;
+  private long lastProcessedCount;
+  private long lastPickedUpCount;
+
+  public Backpressure(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue) {
+    this(orderQueue, dispatcherQueue, ServerProperties.queueHighWatermark.get(), ServerProperties.queueLowWatermark.get(),
+        ServerProperties.maxInFlightRequestBytes.get());
+  }
+
+  public Backpressure(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, final int highWatermark,
+                      final int lowWatermark, final long maxInFlightBytes) {
+    this.orderQueue = orderQueue;
+    this.dispatcherQueue = dispatcherQueue;
+    this.highWatermark = highWatermark;
+    this.lowWatermark = lowWatermark;
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.inFlightBytes = new AtomicLong();
+    this.pausedChannels = ConcurrentHashMap.newKeySet();
+    this.unloggedRejections = new AtomicLong();
+    this.nextRejectionLogNanoTime = new AtomicLong(System.nanoTime());
+    this.lastCheckNanoTime = System.nanoTime();
+  }
+
+  /**
+   * Account for a request body read from a socket. The bytes are always accounted, release them once the request is answered
+   *
+   * @return false if the budget is exceeded
+   */
+  public boolean reserve(final int bytes) {
+    return inFlightBytes.addAndGet(bytes) <= maxInFlightBytes;
+  }
+
+  public void release(final int bytes) {
+    inFlightBytes.addAndGet(-bytes);
+  }
+
+  public boolean isOverBudget() {
+    return inFlightBytes.get() > maxInFlightBytes;
+  }
+
+  public boolean isOverloaded() {
+    return orderQueue.size() >= highWatermark || dispatcherQueue.size() >= highWatermark;
+  }
+
+  /**
+   * Stop reading from the channel until the server drains, check {@link #run()}
+   */
+  public void pause(@Nonnull final Channel channel) {
+    if (!pausedChannels.add(channel)) {
+      return;
+    }
+
+    logger.debug(String.format("Pausing reads on %s", channel));
+    channel.config().setAutoRead(false);
+    channel.closeFuture().addListener(future -> pausedChannels.remove(channel));
+  }
+
+  /**
+   * Count a rejected request, only one thread logs the rejections of the last {@link #REJECTION_LOG_INTERVAL_IN_MS}
+   *
+   * @param what what was rejected (a response status, a protocol), only formatted when logged
+   */
+  public void reportRejection(@Nonnull final Object what) {
+    GlobalStats.getInstance().reportRejectedRequest();
+    unloggedRejections.incrementAndGet();
+
+    final long now = System.nanoTime();
+    final long nextLogNanoTime = nextRejectionLogNanoTime.get();
+
+    if (now - nextLogNanoTime < 0
+        || !nextRejectionLogNanoTime.compareAndSet(nextLogNanoTime, now + TimeUnit.MILLISECONDS.toNanos(REJECTION_LOG_INTERVAL_IN_MS))) {
+      return;
+    }
+
+    logger.warn(String.format("Server overloaded, rejected %d requests since the last warning (last one: %s), retry after %d seconds",
+        unloggedRejections.getAndSet(0), what, getRetryAfterInSeconds()));
+  }
+
+  /**
+   * @return seconds until the queues should be back under the low watermark at the current drain rate, between 1 and
+   * {@link #MAX_RETRY_AFTER_IN_SECONDS}
+   */
+  public long getRetryAfterInSeconds() {
+    final double seconds = Math.max(secondsToDrain(orderQueue.size(), orderQueueDrainRate),
+        secondsToDrain(dispatcherQueue.size(), dispatcherQueueDrainRate));
+
+    return Math.max(1, Math.min(MAX_RETRY_AFTER_IN_SECONDS, (long) Math.ceil(seconds)));
+  }
+
+  public long getInFlightBytes() {
+    return inFlightBytes.get();
+  }
+
+  public int getPausedChannelsCount() {
+    return pausedChannels.size();
+  }
+
+  @Override
+  public void run() {
+    final long now = System.nanoTime();
+    final double elapsedSeconds = (now - lastCheckNanoTime) / (double) TimeUnit.SECONDS.toNanos(1);
+
+    if (elapsedSeconds > 0) {
+      final GlobalStats stats = GlobalStats.getInstance();
+      final long processedCount = stats.getProcessedOrdersCount().get();
+      final long pickedUpCount = stats.getDispatchedOrdersCount().get() + stats.getFailedToDispatchCount().get();
+
+      orderQueueDrainRate = smooth(orderQueueDrainRate, (processedCount - lastProcessedCount) / elapsedSeconds);
+      dispatcherQueueDrainRate = smooth(dispatcherQueueDrainRate, (pickedUpCount - lastPickedUpCount) / elapsedSeconds);
+
+      lastCheckNanoTime = now;
+      lastProcessedCount = processedCount;
+      lastPickedUpCount = pickedUpCount;
+    }
+
+    if (pausedChannels.isEmpty() || !isDrained()) {
+      return;
+    }
+
+    logger.info(String.format("Server drained, resuming reads on %d channels", pausedChannels.size()));
+
+    for (final Channel channel : pausedChannels) {
+      pausedChannels.remove(channel);
+      channel.config().setAutoRead(true);
+    }
+  }
+
+  private boolean isDrained() {
+    return orderQueue.size() <= lowWatermark && dispatcherQueue.size() <= lowWatermark && inFlightBytes.get() <= maxInFlightBytes / 2;
+  }
+
+  private double secondsToDrain(final int depth, final double drainRate) {
+    final int excess = depth - lowWatermark;
+
+    if (excess <= 0) {
+      return 0;
+    }
+
+    return drainRate > 0 ? excess / drainRate : MAX_RETRY_AFTER_IN_SECONDS;
+  }
+
+  private static double smooth(final double previous, final double current) {
+    return previous * SMOOTHING + current * (1 - SMOOTHING);
+  }
+}
@@ -0,0 +1,44 @@
+package protocol;
+
+/**
+ * Result of an order sent with the binary protocol, the counterpart of the HTTP status of a JSON order
+ */
+public enum BinaryAckStatus {
+  /**
+   * Queued, and durable if the journal waits for the disk (HTTP 200)
+   */
+  ACCEPTED(0),
+  /**
+   * Could not be queued, the queues are full (HTTP 503)
+   */
+  REJECTED(1),
+  /**
+   * Not decoded, the server is over its queue watermarks or in-flight budget and stopped reading from the connection
+   * for a while (HTTP 503/429). Retry later
+   */
+  OVERLOADED(2),
+  /**
+   * The journal failed, the order might not survive a restart (HTTP 500)
+   */
+  FAILED(3);
+
+  private static final BinaryAckStatus[] BY_CODE = values();
+
+  private final byte code;
+
+  BinaryAckStatus(final int code) {
+    this.code = (byte) code;
+  }
+
+  public byte getCode() {
+    return code;
+  }
+
+  public static BinaryAckStatus fromCode(final byte code) {
+    if (code < 0 || code >= BY_CODE.length) {
+      throw new IllegalArgumentException(String.format("Unknown ack status %d", code));
+    }
+
+    return BY_CODE[code];
+  }
+}
@@ -0,0 +1,134 @@
+package protocol;
+
+import common.Order;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nonnull;
+
+/**
+ * Frames of the binary order protocol, see {@link BinaryOrderHandler}. Every frame is prefixed by its length on 4 bytes
+ * (added and stripped by the pipeline, not by this codec)
+ *
+ * Orders frame: [int requestId][unsigned short count] then for every order
+ * [long id most significant bits][long id least significant bits][byte temp][int shelfLife][float decayRate][name]
+ * where temp is the {@link Temp} ordinal and name is [unsigned short length][UTF-8 bytes]
+ *
+ * Ack frame: [int requestId][unsigned short count][byte status]* with one {@link BinaryAckStatus} per order, same order
+ * as the orders frame
+ *
+ * Ids are UUIDs, decoded orders get the canonical UUID string as id. Stateless and thread-safe
+ */
+public final class BinaryOrderCodec {
+  public static final int MAX_ORDERS_PER_FRAME = 0xFFFF;
+  private static final int FIXED_ORDER_LENGTH = 8 + 8 + 1 + 4 + 4 + 2;
+  private static final Temp[] TEMPS = Temp.values();
+
+  private BinaryOrderCodec() {
+  }
+
+  /**
+   * @param orders with UUID ids
+   * @throws IllegalArgumentException if there are too many orders or an id is not a UUID
+   */
+  public static void encodeOrders(@Nonnull final ByteBuf out, final int requestId, @Nonnull final List<Order> orders) {
+    if (orders.size() > MAX_ORDERS_PER_FRAME) {
+      throw new IllegalArgumentException(String.format("%d orders don't fit in a frame", orders.size()));
+    }
+
+    out.writeInt(requestId).writeShort(orders.size());
+
+    for (final Order order : orders) {
+      final UUID id = UUID.fromString(order.getId());
+      out.writeLong(id.getMostSignificantBits())
+          .writeLong(id.getLeastSignificantBits())
+          .writeByte(order.getTemp().ordinal())
+          .writeInt(order.getShelfLife())
+          .writeFloat(order.getDecayRate());
+
+      final int lengthIndex = out.writerIndex();
+      out.writeShort(0);
+      final int length = out.writeCharSequence(order.getName(), CharsetUtil.UTF_8);
+
+      if (length > 0xFFFF) {
+        throw new IllegalArgumentException(String.format("Name of order %s is too long to encode", order.getId()));
+      }
+
+      out.setShort(lengthIndex, length);
+    }
+  }
+
+  /**
+   * @param frame orders frame, without its length prefix
+   * @return request id of the frame, the orders are added to the given list
+   * @throws CorruptedFrameException if the frame doesn't hold the orders it announces
+   */
+  public static int decodeOrders(@Nonnull final ByteBuf frame, @Nonnull final List<Order> orders) {
+    if (frame.readableBytes() < 6) {
+      throw new CorruptedFrameException(String.format("Orders frame of %d bytes is too short", frame.readableBytes()));
+    }
+
+    final int requestId = frame.readInt();
+    final int count = frame.readUnsignedShort();
+
+    for (int i = 0; i < count; i++) {
+      if (frame.readableBytes() < FIXED_ORDER_LENGTH) {
+        throw new CorruptedFrameException(String.format("Frame %d ends in the middle of order %d", requestId, i));
+      }
+
+      final String id = new UUID(frame.readLong(), frame.readLong()).toString();
+      final int temp = frame.readUnsignedByte();
+      final int shelfLife = frame.readInt();
+      final float decayRate = frame.readFloat();
+      final int nameLength = frame.readUnsignedShort();
+
+      if (temp >= TEMPS.length || frame.readableBytes() < nameLength) {
+        throw new CorruptedFrameException(String.format("Order %s of frame %d is corrupted", id, requestId));
+      }
+
+      final String name = frame.readCharSequence(nameLength, CharsetUtil.UTF_8).toString();
+      orders.add(new Order(id, name, TEMPS[temp], shelfLife, decayRate));
+    }
+
+    if (frame.isReadable()) {
+      throw new CorruptedFrameException(String.format("Frame %d has %d bytes after its orders", requestId, frame.readableBytes()));
+    }
+
+    return requestId;
+  }
+
+  public static void encodeAck(@Nonnull final ByteBuf out, final int requestId, @Nonnull final BinaryAckStatus[] statuses) {
+    out.writeInt(requestId).writeShort(statuses.length);
+
+    for (final BinaryAckStatus status : statuses) {
+      out.writeByte(status.getCode());
+    }
+  }
+
+  /**
+   * @param frame ack frame, without its length prefix
+   * @return status of every order of the frame, the request id is {@link #getRequestId(ByteBuf)}
+   */
+  public static List<BinaryAckStatus> decodeAck(@Nonnull final ByteBuf frame) {
+    frame.skipBytes(4);
+    final int count = frame.readUnsignedShort();
+    final List<BinaryAckStatus> statuses = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      statuses.add(BinaryAckStatus.fromCode(frame.readByte()));
+    }
+
+    return statuses;
+  }
+
+  /**
+   * @return request id of an orders or ack frame, without moving the reader index
+   */
+  public static int getRequestId(@Nonnull final ByteBuf frame) {
+    return frame.getInt(frame.readerIndex());
+  }
+}
@@ -0,0 +1,133 @@
+package protocol;
+
+import common.Order;
+import common.Queue;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nonnull;
+import journal.Journal;
+import org.apache.log4j.Logger;
+
+/**
+ * Handles the frames of the binary order protocol, for producers that don't need HTTP and JSON. Every frame carries one
+ * or more orders in the fixed layout of {@link BinaryOrderCodec} and is answered with an ack frame holding the
+ * {@link BinaryAckStatus} of every order. Orders go through the same journal and queues as the JSON ones
+ *
+ * Must be placed after a {@link LengthFieldBasedFrameDecoder} stripping the 4 bytes length prefix of the frames (and a
+ * prepender adding it to the acks). Acks of a connection are written in frame order, once the orders are durable
+ *
+ * Under overload (check {@link Backpressure}) frames are acked with {@link BinaryAckStatus#OVERLOADED} without being
+ * decoded and the channel stops reading until the server drains. Corrupted frames close the connection
+ */
+public class BinaryOrderHandler extends SimpleChannelInboundHandler<ByteBuf> {
+  private static final Logger logger = Logger.getLogger(BinaryOrderHandler.class);
+  private final Backpressure backpressure;
+  private final Journal journal;
+  private final OrderIntake intake;
+  // Completes once the last ack of this connection has been written, only touched on the handler executor
+  private CompletableFuture<Void> responded = Journal.DURABLE;
+
+  public BinaryOrderHandler(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final Backpressure backpressure,
+                            @Nonnull final Journal journal) {
+    this.backpressure = backpressure;
+    this.journal = journal;
+    this.intake = new OrderIntake(orderQueue, dispatcherQueue, journal);
+  }
+
+  @Override
+  protected void channelRead0(final ChannelHandlerContext ctx, final ByteBuf frame) {
+    final long receivedNanoTime = System.nanoTime();
+
+    if (backpressure.isOverBudget() || backpressure.isOverloaded()) {
+      reject(ctx, frame);
+      return;
+    }
+
+    final List<Order> orders = new ArrayList<>();
+    final int requestId = BinaryOrderCodec.decodeOrders(frame, orders);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Received frame %d with %d orders", requestId, orders.size()));
+    }
+
+    final boolean[] accepted = new boolean[orders.size()];
+    final long lsn = intake.accept(orders, receivedNanoTime, accepted);
+    final BinaryAckStatus[] statuses = new BinaryAckStatus[accepted.length];
+
+    for (int i = 0; i < accepted.length; i++) {
+      statuses[i] = accepted[i] ? BinaryAckStatus.ACCEPTED : BinaryAckStatus.REJECTED;
+    }
+
+    writeAck(ctx, requestId, statuses, journal.whenDurable(lsn));
+
+    if (backpressure.isOverloaded()) {
+      backpressure.pause(ctx.channel());
+    }
+  }
+
+  /**
+   * Ack every order of the frame as overloaded, only its header is read
+   */
+  private void reject(@Nonnull final ChannelHandlerContext ctx, @Nonnull final ByteBuf frame) {
+    if (frame.readableBytes() < 6) {
+      throw new CorruptedFrameException(String.format("Orders frame of %d bytes is too short", frame.readableBytes()));
+    }
+
+    final int requestId = BinaryOrderCodec.getRequestId(frame);
+    final BinaryAckStatus[] statuses = new BinaryAckStatus[frame.getUnsignedShort(frame.readerIndex() + 4)];
+    Arrays.fill(statuses, BinaryAckStatus.OVERLOADED);
+    backpressure.reportRejection(BinaryAckStatus.OVERLOADED);
+
+    writeAck(ctx, requestId, statuses, Journal.DURABLE);
+    backpressure.pause(ctx.channel());
+  }
+
+  /**
+   * Write the ack once the given journal future and every previous ack of the connection completed, accepted orders
+   * are acked as {@link BinaryAckStatus#FAILED} if the journal failed
+   */
+  private void writeAck(@Nonnull final ChannelHandlerContext ctx, final int requestId, @Nonnull final BinaryAckStatus[] statuses,
+                        @Nonnull final CompletableFuture<Void> durable) {
+    if (responded.isDone() && durable.isDone() && !durable.isCompletedExceptionally()) {
+      ctx.writeAndFlush(encodeAck(ctx, requestId, statuses));
+      return;
+    }
+
+    responded = CompletableFuture.allOf(responded, durable).handleAsync((ignored, failure) -> {
+      if (failure != null) {
+        logger.error(String.format("Journal failed, acking the orders of frame %d as failed", requestId), failure);
+
+        for (int i = 0; i < statuses.length; i++) {
+          if (statuses[i] == BinaryAckStatus.ACCEPTED) {
+            statuses[i] = BinaryAckStatus.FAILED;
+          }
+        }
+      }
+
+      ctx.writeAndFlush(encodeAck(ctx, requestId, statuses));
+      return null;
+    }, ctx.executor());
+  }
+
+  private static ByteBuf encodeAck(@Nonnull final ChannelHandlerContext ctx, final int requestId, @Nonnull final BinaryAckStatus[] statuses) {
+    final ByteBuf ack = ctx.alloc().buffer(6 + statuses.length);
+    BinaryOrderCodec.encodeAck(ack, requestId, statuses);
+    return ack;
+  }
+
+  /**
+   * Frames can't be matched with their acks anymore, close the connection
+   */
+  @Override
+  public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+    logger.error(String.format("Error while handling a frame of %s, closing it", ctx.channel()), cause);
+    ctx.close();
+  }
+}
@@ -0,0 +1,61 @@
+package protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import javax.annotation.Nonnull;
+
+/**
+ * Accounts every frame of the binary protocol in the {@link Backpressure} in-flight budget until its ack is written,
+ * and stops reading from the channel when the budget is exceeded. Binary counterpart of {@link RequestBudgetHandler}
+ *
+ * Must be placed after the {@link LengthFieldBasedFrameDecoder} and the {@link LengthFieldPrepender}, right before the
+ * {@link BinaryOrderHandler}, and run on the event loop. Acks are written in frame order so the oldest pending frame is
+ * released with every ack. Not sharable, one instance per channel
+ */
+public class FrameBudgetHandler extends ChannelDuplexHandler {
+  private final Backpressure backpressure;
+  private final Queue<Integer> pendingBytes;
+
+  public FrameBudgetHandler(@Nonnull final Backpressure backpressure) {
+    this.backpressure = backpressure;
+    this.pendingBytes = new ArrayDeque<>();
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof ByteBuf) {
+      final int bytes = ((ByteBuf) msg).readableBytes();
+      pendingBytes.add(bytes);
+
+      if (!backpressure.reserve(bytes)) {
+        backpressure.pause(ctx.channel());
+      }
+    }
+
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof ByteBuf && !pendingBytes.isEmpty()) {
+      backpressure.release(pendingBytes.poll());
+    }
+
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    while (!pendingBytes.isEmpty()) {
+      backpressure.release(pendingBytes.poll());
+    }
+
+    super.channelInactive(ctx);
+  }
+}
@@ -0,0 +1,40 @@
+package protocol;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+/**
+ * Where the order handlers (HTTP and binary) and the metrics handler run
+ */
+public enum HandlerExecution {
+  /**
+   * On the I/O thread of the channel: no task handoff nor context switch per request. The handlers only decode,
+   * journal into memory-mapped segments and offer to non-blocking queues. The journal and the SEGMENTED_LOG queues
+   * roll into segments preallocated off the event loop, a roll only creates its segment (and blocks on the file
+   * system) if the preallocation fell behind
+   */
+  EVENT_LOOP {
+    @Override
+    public EventExecutorGroup newExecutorGroup(final int threads) {
+      return null;
+    }
+  },
+
+  /**
+   * On a separate {@link DefaultEventExecutorGroup}, every request is handed off from the I/O thread. Only worth it
+   * if a handler blocks
+   */
+  HANDLER_GROUP {
+    @Override
+    public EventExecutorGroup newExecutorGroup(final int threads) {
+      return new DefaultEventExecutorGroup(threads);
+    }
+  };
+
+  /**
+   * @return group to add the handlers with, see {@link ChannelPipeline#addLast(EventExecutorGroup, String, io.netty.channel.ChannelHandler)},
+   * null to run them on the event loop of the channel
+   */
+  public abstract EventExecutorGroup newExecutorGroup(final int threads);
+}
@@ -0,0 +1,28 @@
+package protocol;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.apache.log4j.Logger;
+
+/**
+ * Closes persistent connections that have been idle for too long.
+ * Must be placed after an {@link IdleStateHandler} which fires the {@link IdleStateEvent}
+ */
+@ChannelHandler.Sharable
+public class IdleConnectionHandler extends ChannelDuplexHandler {
+  private static final Logger logger = Logger.getLogger(IdleConnectionHandler.class);
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (evt instanceof IdleStateEvent) {
+      logger.debug(String.format("Closing idle connection %s", ctx.channel()));
+      ctx.close();
+      return;
+    }
+
+    super.userEventTriggered(ctx, evt);
+  }
+}
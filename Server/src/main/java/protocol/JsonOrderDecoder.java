@@ -0,0 +1,446 @@
+package protocol;
+
+import com.google.gson.annotations.SerializedName;
+import common.Order;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Decodes orders straight from the request {@link ByteBuf}, without copying the body into a String first.
+ *
+ * The decoder only knows the order schema (id, name, temp, shelfLife, decayRate), unknown fields are skipped.
+ * The only allocations on the fast path are the order itself and its id/name Strings. Temp values are matched
+ * against the {@link SerializedName} aliases of {@link Temp}, same as Gson does.
+ *
+ * Anything the fast path doesn't handle (escaped strings, exponents, numbers as strings, malformed JSON,...)
+ * falls back to {@link Order#createFromJson(String)}, so both paths accept and reject the same input.
+ * The decoder is stateless and thread-safe, it never moves the buffer reader index.
+ */
+public final class JsonOrderDecoder {
+  private static final byte[] ID = "id".getBytes(CharsetUtil.US_ASCII);
+  private static final byte[] NAME = "name".getBytes(CharsetUtil.US_ASCII);
+  private static final byte[] TEMP = "temp".getBytes(CharsetUtil.US_ASCII);
+  private static final byte[] SHELF_LIFE = "shelfLife".getBytes(CharsetUtil.US_ASCII);
+  private static final byte[] DECAY_RATE = "decayRate".getBytes(CharsetUtil.US_ASCII);
+  private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+  private static final int MAX_SIGNIFICANT_DIGITS = 15;
+
+  private static final List<byte[]> TEMP_ALIASES = new ArrayList<>();
+  private static final List<Temp> TEMP_VALUES = new ArrayList<>();
+
+  static {
+    for (final Temp temp : Temp.values()) {
+      try {
+        final SerializedName serializedName = Temp.class.getField(temp.name()).getAnnotation(SerializedName.class);
+
+        if (serializedName == null) {
+          addTempAlias(temp.name(), temp);
+          continue;
+        }
+
+        addTempAlias(serializedName.value(), temp);
+
+        for (final String alternate : serializedName.alternate()) {
+          addTempAlias(alternate, temp);
+        }
+      } catch (final NoSuchFieldException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private JsonOrderDecoder() {
+  }
+
+  /**
+   * @param content JSON order
+   * @return decoded {@link Order}
+   */
+  public static Order decode(@Nonnull final ByteBuf content) {
+    try {
+      final Parser parser = new Parser(content);
+      final Order order = parser.readOrder();
+      parser.expectEnd();
+      return order;
+    } catch (final FallbackException e) {
+      return Order.createFromJson(content.toString(CharsetUtil.UTF_8));
+    }
+  }
+
+  /**
+   * @param content JSON array of orders
+   * @return decoded orders, in the same order as the array
+   */
+  public static List<Order> decodeList(@Nonnull final ByteBuf content) {
+    try {
+      final Parser parser = new Parser(content);
+      final List<Order> orders = parser.readOrders();
+      parser.expectEnd();
+      return orders;
+    } catch (final FallbackException e) {
+      return Order.createListFromJson(content.toString(CharsetUtil.UTF_8));
+    }
+  }
+
+  private static void addTempAlias(@Nonnull final String alias, @Nonnull final Temp temp) {
+    TEMP_ALIASES.add(alias.getBytes(CharsetUtil.UTF_8));
+    TEMP_VALUES.add(temp);
+  }
+
+  /**
+   * Thrown when the fast path can not decode the input, preallocated and stackless since it is just a signal
+   */
+  private static final class FallbackException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private static final FallbackException INSTANCE = new FallbackException();
+
+    private FallbackException() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final class Parser {
+    private final ByteBuf buf;
+    private final int end;
+    private int pos;
+
+    private Parser(@Nonnull final ByteBuf buf) {
+      this.buf = buf;
+      this.pos = buf.readerIndex();
+      this.end = buf.writerIndex();
+    }
+
+    private List<Order> readOrders() {
+      final List<Order> orders = new ArrayList<>();
+      skipWhitespaces();
+      expect('[');
+      skipWhitespaces();
+
+      if (peek() == ']') {
+        pos++;
+        return orders;
+      }
+
+      while (true) {
+        orders.add(readOrder());
+        skipWhitespaces();
+
+        final byte b = next();
+
+        if (b == ']') {
+          return orders;
+        }
+
+        if (b != ',') {
+          throw FallbackException.INSTANCE;
+        }
+      }
+    }
+
+    private Order readOrder() {
+      String id = null;
+      String name = null;
+      Temp temp = null;
+      int shelfLife = 0;
+      float decayRate = 0;
+
+      skipWhitespaces();
+      expect('{');
+      skipWhitespaces();
+
+      if (peek() == '}') {
+        pos++;
+        return new Order(id, name, temp, shelfLife, decayRate);
+      }
+
+      while (true) {
+        skipWhitespaces();
+        expect('"');
+        final int keyStart = pos;
+        final int keyEnd = skipPlainString();
+        skipWhitespaces();
+        expect(':');
+        skipWhitespaces();
+
+        if (keyEquals(keyStart, keyEnd, ID)) {
+          id = readString();
+        } else if (keyEquals(keyStart, keyEnd, NAME)) {
+          name = readString();
+        } else if (keyEquals(keyStart, keyEnd, TEMP)) {
+          temp = readTemp();
+        } else if (keyEquals(keyStart, keyEnd, SHELF_LIFE)) {
+          shelfLife = readInt();
+        } else if (keyEquals(keyStart, keyEnd, DECAY_RATE)) {
+          decayRate = readFloat();
+        } else {
+          skipValue();
+        }
+
+        skipWhitespaces();
+
+        final byte b = next();
+
+        if (b == '}') {
+          return new Order(id, name, temp, shelfLife, decayRate);
+        }
+
+        if (b != ',') {
+          throw FallbackException.INSTANCE;
+        }
+      }
+    }
+
+    private void expectEnd() {
+      skipWhitespaces();
+
+      if (pos != end) {
+        throw FallbackException.INSTANCE;
+      }
+    }
+
+    private String readString() {
+      if (readNull()) {
+        return null;
+      }
+
+      expect('"');
+      final int start = pos;
+      final int stringEnd = skipPlainString();
+      return buf.toString(start, stringEnd - start, CharsetUtil.UTF_8);
+    }
+
+    private Temp readTemp() {
+      if (readNull()) {
+        return null;
+      }
+
+      expect('"');
+      final int start = pos;
+      final int stringEnd = skipPlainString();
+
+      for (int i = 0; i < TEMP_ALIASES.size(); i++) {
+        if (keyEquals(start, stringEnd, TEMP_ALIASES.get(i))) {
+          return TEMP_VALUES.get(i);
+        }
+      }
+
+      throw FallbackException.INSTANCE;
+    }
+
+    private int readInt() {
+      final boolean negative = peek() == '-';
+
+      if (negative) {
+        pos++;
+      }
+
+      long value = 0;
+      int digits = 0;
+
+      while (pos < end && isDigit(buf.getByte(pos))) {
+        value = value * 10 + (buf.getByte(pos++) - '0');
+
+        if (++digits > 10) {
+          throw FallbackException.INSTANCE;
+        }
+      }
+
+      value = negative ? -value : value;
+
+      if (digits == 0 || isNumberContinuation() || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+        throw FallbackException.INSTANCE;
+      }
+
+      return (int) value;
+    }
+
+    private float readFloat() {
+      final boolean negative = peek() == '-';
+
+      if (negative) {
+        pos++;
+      }
+
+      long mantissa = 0;
+      int digits = 0;
+      int scale = 0;
+      boolean fraction = false;
+
+      while (pos < end) {
+        final byte b = buf.getByte(pos);
+
+        if (isDigit(b)) {
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+          scale += fraction ? 1 : 0;
+        } else if (b == '.' && !fraction) {
+          fraction = true;
+        } else {
+          break;
+        }
+
+        pos++;
+      }
+
+      if (digits == 0 || digits > MAX_SIGNIFICANT_DIGITS || isNumberContinuation()) {
+        throw FallbackException.INSTANCE;
+      }
+
+      // Both operands are exact doubles so the division is correctly rounded
+      final double value = mantissa / POW10[scale];
+      return (float) (negative ? -value : value);
+    }
+
+    private void skipValue() {
+      final byte b = peek();
+
+      if (b == '"') {
+        pos++;
+        skipString();
+        return;
+      }
+
+      if (b == '{' || b == '[') {
+        int depth = 0;
+
+        do {
+          final byte current = next();
+
+          if (current == '"') {
+            skipString();
+          } else if (current == '{' || current == '[') {
+            depth++;
+          } else if (current == '}' || current == ']') {
+            depth--;
+          }
+        } while (depth > 0);
+
+        return;
+      }
+
+      // number, true, false or null
+      final int start = pos;
+
+      while (pos < end) {
+        final byte current = buf.getByte(pos);
+
+        if (current == ',' || current == '}' || current == ']' || isWhitespace(current)) {
+          break;
+        }
+
+        pos++;
+      }
+
+      if (pos == start) {
+        throw FallbackException.INSTANCE;
+      }
+    }
+
+    /**
+     * Skip a string that might have escapes, position must be right after the opening quote
+     */
+    private void skipString() {
+      while (true) {
+        final byte b = next();
+
+        if (b == '\\') {
+          next();
+        } else if (b == '"') {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Skip a string without escapes, position must be right after the opening quote
+     *
+     * @return index of the closing quote
+     */
+    private int skipPlainString() {
+      while (true) {
+        final byte b = next();
+
+        if (b == '"') {
+          return pos - 1;
+        }
+
+        if (b == '\\') {
+          throw FallbackException.INSTANCE;
+        }
+      }
+    }
+
+    private boolean readNull() {
+      if (peek() != 'n') {
+        return false;
+      }
+
+      expect('n');
+      expect('u');
+      expect('l');
+      expect('l');
+      return true;
+    }
+
+    private boolean keyEquals(final int start, final int keyEnd, @Nonnull final byte[] expected) {
+      if (keyEnd - start != expected.length) {
+        return false;
+      }
+
+      for (int i = 0; i < expected.length; i++) {
+        if (buf.getByte(start + i) != expected[i]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private boolean isNumberContinuation() {
+      if (pos >= end) {
+        return false;
+      }
+
+      final byte b = buf.getByte(pos);
+      return b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-' || isDigit(b);
+    }
+
+    private void skipWhitespaces() {
+      while (pos < end && isWhitespace(buf.getByte(pos))) {
+        pos++;
+      }
+    }
+
+    private void expect(final char expected) {
+      if (next() != expected) {
+        throw FallbackException.INSTANCE;
+      }
+    }
+
+    private byte peek() {
+      if (pos >= end) {
+        throw FallbackException.INSTANCE;
+      }
+
+      return buf.getByte(pos);
+    }
+
+    private byte next() {
+      final byte b = peek();
+      pos++;
+      return b;
+    }
+
+    private static boolean isDigit(final byte b) {
+      return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(final byte b) {
+      return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+  }
+}
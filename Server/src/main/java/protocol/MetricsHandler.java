@@ -0,0 +1,213 @@
+package protocol;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import common.GlobalStats;
+import common.LatencyStats;
+import common.PoolStats;
+import common.Queue;
+import common.Shelf;
+import common.ShelvesManager;
+import events.EventLogManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Serves {@link #METRICS_PATH} in the Prometheus text exposition format, any other request is passed to the next handler
+ *
+ * Exports the {@link GlobalStats} counters and latencies, the depth of the queues, the occupancy of every shelf
+ * and the utilization of the consumer pools. Everything is read from counters the order path already maintains,
+ * a scrape never takes a lock the order path waits on (latency histograms are only shared with the stats reporter).
+ *
+ * The text is rendered into a {@link StringBuilder} owned by the handler and copied into a pooled buffer,
+ * so a handler instance must be used by a single channel. The builder is only allocated on the first scrape,
+ * most channels never ask for {@link #METRICS_PATH}
+ */
+public class MetricsHandler extends ChannelInboundHandlerAdapter {
+  public static final String METRICS_PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final Queue orderQueue;
+  private final Queue dispatcherQueue;
+  private final List<PoolStats> pools;
+  private StringBuilder text;
+
+  public MetricsHandler(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final List<PoolStats> pools) {
+    this.orderQueue = orderQueue;
+    this.dispatcherQueue = dispatcherQueue;
+    this.pools = pools;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (!isMetricsRequest(msg)) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+
+    try {
+      render();
+
+      final ByteBuf content = ctx.alloc().buffer(text.length());
+      ByteBufUtil.writeAscii(content, text);
+
+      final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK, content);
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+      HttpUtil.setContentLength(response, content.readableBytes());
+
+      ctx.writeAndFlush(response);
+    } finally {
+      ReferenceCountUtil.release(msg);
+    }
+  }
+
+  private static boolean isMetricsRequest(@Nonnull final Object msg) {
+    if (!(msg instanceof FullHttpRequest)) {
+      return false;
+    }
+
+    final FullHttpRequest request = (FullHttpRequest) msg;
+    return HttpMethod.GET.equals(request.method()) && new QueryStringDecoder(request.uri()).path().equals(METRICS_PATH);
+  }
+
+  void render() {
+    if (text == null) {
+      text = new StringBuilder(4096);
+    } else {
+      text.setLength(0);
+    }
+
+    final GlobalStats stats = GlobalStats.getInstance();
+    counter("restaurant_orders_received_total", "Orders received", stats.getReceivedOrdersCount().get());
+    counter("restaurant_orders_processed_total", "Orders put on a shelf", stats.getProcessedOrdersCount().get());
+    counter("restaurant_orders_dispatched_total", "Orders picked up by a courier", stats.getDispatchedOrdersCount().get());
+    counter("restaurant_orders_discarded_total", "Orders discarded to make room on the overflow shelf", stats.getDiscardedOrdersCount().get());
+    counter("restaurant_orders_failed_pickup_total", "Couriers that could not find their order", stats.getFailedToDispatchCount().get());
+    counter("restaurant_orders_expired_total", "Orders removed from a shelf after expiring", stats.getExpiredOrdersCount().get());
+    counter("restaurant_requests_rejected_total", "Requests and binary frames rejected because the server was overloaded", stats.getRejectedRequestsCount().get());
+    counter("restaurant_event_log_dropped_total", "Lifecycle events dropped because the event recorder fell behind",
+        EventLogManager.getEventLog().getDroppedCount());
+
+    header("restaurant_queue_depth", "Orders waiting in a queue", "gauge");
+    sample("restaurant_queue_depth", "queue", "orders", orderQueue.size());
+    sample("restaurant_queue_depth", "queue", "dispatch", dispatcherQueue.size());
+
+    renderShelves();
+    renderPools();
+    renderLatencies(stats);
+  }
+
+  private void renderShelves() {
+    final Iterable<Shelf> shelves = ShelvesManager.getInstance().getShelves();
+
+    header("restaurant_shelf_orders", "Orders on a shelf", "gauge");
+    for (final Shelf shelf : shelves) {
+      sample("restaurant_shelf_orders", "shelf", shelf.getName(), shelf.getOrdersCount());
+    }
+
+    header("restaurant_shelf_capacity", "Capacity of a shelf", "gauge");
+    for (final Shelf shelf : shelves) {
+      sample("restaurant_shelf_capacity", "shelf", shelf.getName(), shelf.getCapacity());
+    }
+
+    header("restaurant_shelf_rejected_total", "Adds rejected because the shelf was full", "counter");
+    for (final Shelf shelf : shelves) {
+      sample("restaurant_shelf_rejected_total", "shelf", shelf.getName(), shelf.getRejectedCount());
+    }
+
+    header("restaurant_shelf_slot_cas_retries_total", "Slot reservations that retried their CAS", "counter");
+    for (final Shelf shelf : shelves) {
+      sample("restaurant_shelf_slot_cas_retries_total", "shelf", shelf.getName(), shelf.getSlotContentionCount());
+    }
+  }
+
+  private void renderPools() {
+    header("restaurant_pool_active", "Tasks a pool is working on (an order or a batch), couriers in flight for the dispatcher", "gauge");
+    for (final PoolStats pool : pools) {
+      sample("restaurant_pool_active", "pool", pool.getName(), pool.getActiveCount());
+    }
+
+    header("restaurant_pool_threads", "Threads of a pool, 0 when unbounded", "gauge");
+    for (final PoolStats pool : pools) {
+      sample("restaurant_pool_threads", "pool", pool.getName(), pool.getSize());
+    }
+  }
+
+  private void renderLatencies(@Nonnull final GlobalStats stats) {
+    header("restaurant_order_latency_seconds", "Latency of every stage of an order's life since start", "summary");
+
+    for (final LatencyStats latencyStats : stats.getLatencyStats()) {
+      latencyStats.flush();
+
+      for (final double quantile : QUANTILES) {
+        text.append("restaurant_order_latency_seconds{stage=\"");
+        appendEscaped(latencyStats.getName());
+        text.append("\",quantile=\"").append(quantile).append("\"} ")
+            .append(latencyStats.getTotalValueAtPercentile(quantile * 100) / NANOS_PER_SECOND).append('\n');
+      }
+
+      final long count = latencyStats.getTotalCount();
+      text.append("restaurant_order_latency_seconds_sum{stage=\"");
+      appendEscaped(latencyStats.getName());
+      text.append("\"} ").append(latencyStats.getTotalMean() * count / NANOS_PER_SECOND).append('\n');
+
+      text.append("restaurant_order_latency_seconds_count{stage=\"");
+      appendEscaped(latencyStats.getName());
+      text.append("\"} ").append(count).append('\n');
+    }
+  }
+
+  private void counter(@Nonnull final String name, @Nonnull final String help, final long value) {
+    header(name, help, "counter");
+    text.append(name).append(' ').append(value).append('\n');
+  }
+
+  private void header(@Nonnull final String name, @Nonnull final String help, @Nonnull final String type) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private void sample(@Nonnull final String name, @Nonnull final String label, @Nonnull final String labelValue, final long value) {
+    text.append(name).append('{').append(label).append("=\"");
+    appendEscaped(labelValue);
+    text.append("\"} ").append(value).append('\n');
+  }
+
+  /**
+   * Label values escape backslash, double-quote and line feed, non ASCII chars are replaced since the body is written as ASCII
+   */
+  private void appendEscaped(@Nonnull final String value) {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+
+      if (c == '\\' || c == '"') {
+        text.append('\\').append(c);
+      } else if (c == '\n') {
+        text.append("\\n");
+      } else if (c > 0x7F) {
+        text.append('?');
+      } else {
+        text.append(c);
+      }
+    }
+  }
+
+  String getText() {
+    return text.toString();
+  }
+}
@@ -1,56 +1,422 @@
 package protocol;
 
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static io.netty.handler.codec.http.HttpResponseStatus.GATEWAY_TIMEOUT;
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
+import cluster.Cluster;
+import cluster.ClusterNode;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import common.GlobalStats;
 import common.Order;
 import common.Queue;
 import common.RestaurantException;
-import io.netty.channel.ChannelFuture;
+import events.EventLogManager;
+import events.LifecycleEvent;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.util.CharsetUtil;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+import journal.Journal;
+import journal.JournalEvent;
+import journal.JournalManager;
 import org.apache.log4j.Logger;
 
 /**
  * Simple Netty Channel Inbound Handler to handel incoming orders
+ *
+ * Requests to {@link #BATCH_PATH} carry a JSON array of orders. The whole batch is added to the queues at once and
+ * the response body is a JSON array with the result of every order (same order as the request):
+ * [{"id":"...","accepted":true}, ...]
+ * Any other request carries a single JSON order, the response status tells if it has been accepted
+ *
+ * Connections are persistent: every response carries a Content-Length and the connection is left open.
+ * Closing non keep-alive connections and ordering pipelined responses is left to {@link HttpServerKeepAliveHandler}
+ *
+ * Under overload (check {@link Backpressure}) orders are rejected before being decoded: 429 when the in-flight request
+ * bodies are over budget, 503 when the queues are over their high watermark or full. Both carry a Retry-After and
+ * the channel stops reading until the server drains
+ *
+ * Orders are written to the {@link Journal} before being queued and answered once the journal says they are durable
+ * (right away unless the journal is in {@link journal.JournalMode#GROUP_COMMIT} mode). Responses of a connection are
+ * chained so they still go out in request order while waiting for the disk
+ *
+ * Runs on the event loop by default (check {@link HandlerExecution}), nothing on the order path blocks: per order logs
+ * are at debug level and the journal only waits for the disk through futures
+ *
+ * In a {@link Cluster} orders owned by another node are forwarded to it and its answer is relayed, batches are split by
+ * owner and answered once every node answered. Requests forwarded by another node are always handled locally
  */
 public class OrderHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+  public static final String BATCH_PATH = "/orders/batch";
   private static final Logger logger = Logger.getLogger(OrderHandler.class);
   private final Queue orderQueue;
   private final Queue dispatcherQueue;
+  private final Backpressure backpressure;
+  private final Journal journal;
+  private final Cluster cluster;
+  private final OrderIntake intake;
+  // Completes once the last response of this connection has been written, only touched on the event loop
+  private CompletableFuture<Void> responded = Journal.DURABLE;
 
   public OrderHandler(Queue orderQueue, Queue dispatcherQueue) {
+    this(orderQueue, dispatcherQueue, new Backpressure(orderQueue, dispatcherQueue));
+  }
+
+  public OrderHandler(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final Backpressure backpressure) {
+    this(orderQueue, dispatcherQueue, backpressure, JournalManager.getJournal());
+  }
+
+  public OrderHandler(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final Backpressure backpressure,
+                      @Nonnull final Journal journal) {
+    this(orderQueue, dispatcherQueue, backpressure, journal, Cluster.SINGLE_NODE);
+  }
+
+  public OrderHandler(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final Backpressure backpressure,
+                      @Nonnull final Journal journal, @Nonnull final Cluster cluster) {
     this.orderQueue = orderQueue;
     this.dispatcherQueue = dispatcherQueue;
+    this.backpressure = backpressure;
+    this.journal = journal;
+    this.cluster = cluster;
+    this.intake = new OrderIntake(orderQueue, dispatcherQueue, journal);
   }
 
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws RestaurantException {
-    String strOrder = null;
+    final long receivedNanoTime = System.nanoTime();
 
     try {
-      strOrder = request.content().toString(CharsetUtil.UTF_8);
-      final Order order = Order.createFromJson(strOrder);
+      if (backpressure.isOverBudget()) {
+        reject(ctx, TOO_MANY_REQUESTS);
+        return;
+      }
 
-      logger.info("Received order " + order);
-      GlobalStats.getInstance().reportReceivedOrder();
+      if (backpressure.isOverloaded()) {
+        reject(ctx, SERVICE_UNAVAILABLE);
+        return;
+      }
+
+      final boolean routed = cluster.isEnabled() && !request.headers().contains(Cluster.FORWARDED_BY);
+
+      if (new QueryStringDecoder(request.uri()).path().endsWith(BATCH_PATH)) {
+        handleBatch(ctx, JsonOrderDecoder.decodeList(request.content()), receivedNanoTime, routed);
+        return;
+      }
+
+      final Order order = JsonOrderDecoder.decode(request.content());
 
-      final boolean addOrderQueueResult = orderQueue.add(order);
-      final boolean dispatcherQueueAddResult = dispatcherQueue.add(order);
+      if (routed && !cluster.isLocal(order.getId())) {
+        final ClusterNode owner = cluster.getOwner(order.getId());
 
-      ChannelFuture channelFuture = ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, (addOrderQueueResult && dispatcherQueueAddResult) ? OK : SERVICE_UNAVAILABLE));
-      channelFuture.addListener(ChannelFutureListener.CLOSE);
+        if (logger.isDebugEnabled()) {
+          logger.debug(String.format("Forwarding order %s to %s", order.getId(), owner));
+        }
 
+        writeWhenReady(ctx, cluster.forward(owner, request.uri(), request.content().retain()).thenApply(this::relay), SERVICE_UNAVAILABLE);
+        return;
+      }
+
+      order.setReceivedNanoTime(receivedNanoTime);
+
+      if (logger.isDebugEnabled()) {
+        logger.debug("Received order " + order);
+      }
+      GlobalStats.getInstance().reportReceivedOrder();
+      EventLogManager.getEventLog().record(LifecycleEvent.RECEIVED, order);
+
+      // Stamped and journaled before adding, consumers might pick the order up right away
+      order.setEnqueuedNanoTime(System.nanoTime());
+      final long lsn = journal.append(JournalEvent.ACCEPTED, order);
+      // Dispatcher queue first, check OrderIntake
+      if (!dispatcherQueue.add(order) || !orderQueue.add(order)) {
+        EventLogManager.getEventLog().record(LifecycleEvent.DISCARDED, order);
+        journal.append(JournalEvent.DISCARDED, order);
+        reject(ctx, SERVICE_UNAVAILABLE);
+        return;
+      }
+
+      GlobalStats.getInstance().reportEnqueuedOrder(order);
+      writeResponse(ctx, new DefaultFullHttpResponse(HTTP_1_1, OK), journal.whenDurable(lsn));
+      pauseIfOverloaded(ctx);
     } catch (final Exception e) {
-      final String errorMessage = String.format("Error while processing order %s", strOrder);
+      final String errorMessage = String.format("Error while processing order %s", request.content().toString(CharsetUtil.UTF_8));
       logger.error(errorMessage);
       throw new RestaurantException(errorMessage, e);
     }
   }
+
+  /**
+   * Orders owned by other nodes are forwarded to them in one sub-batch per node, an order of a node that failed to
+   * answer is not accepted
+   */
+  private void handleBatch(@Nonnull final ChannelHandlerContext ctx, @Nonnull final List<Order> orders, final long receivedNanoTime,
+                           final boolean routed) throws IOException {
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Received a batch of %d orders", orders.size()));
+    }
+
+    if (!routed) {
+      final boolean[] accepted = new boolean[orders.size()];
+      final long lsn = intake.accept(orders, receivedNanoTime, accepted);
+      writeResponse(ctx, batchResponse(ctx, orders, accepted), journal.whenDurable(lsn));
+      pauseIfOverloaded(ctx);
+      return;
+    }
+
+    final List<Order> local = new ArrayList<>(orders.size());
+    final List<Integer> localIndexes = new ArrayList<>(orders.size());
+    final Map<ClusterNode, List<Integer>> remoteIndexes = new LinkedHashMap<>();
+
+    for (int i = 0; i < orders.size(); i++) {
+      final String id = orders.get(i).getId();
+
+      if (cluster.isLocal(id)) {
+        local.add(orders.get(i));
+        localIndexes.add(i);
+      } else {
+        remoteIndexes.computeIfAbsent(cluster.getOwner(id), node -> new ArrayList<>()).add(i);
+      }
+    }
+
+    final boolean[] localAccepted = new boolean[local.size()];
+    final long lsn = intake.accept(local, receivedNanoTime, localAccepted);
+    // Filled by the local orders here and by the answers of the other nodes, read once all of them completed
+    final boolean[] accepted = new boolean[orders.size()];
+
+    for (int i = 0; i < localAccepted.length; i++) {
+      accepted[localIndexes.get(i)] = localAccepted[i];
+    }
+
+    final List<CompletableFuture<?>> pending = new ArrayList<>(remoteIndexes.size() + 1);
+    pending.add(journal.whenDurable(lsn));
+
+    for (final Map.Entry<ClusterNode, List<Integer>> entry : remoteIndexes.entrySet()) {
+      final ClusterNode owner = entry.getKey();
+      final List<Integer> indexes = entry.getValue();
+      if (logger.isDebugEnabled()) {
+        logger.debug(String.format("Forwarding %d orders of the batch to %s", indexes.size(), owner));
+      }
+
+      pending.add(cluster.forward(owner, BATCH_PATH, encode(ctx, orders, indexes))
+          .thenApply(OrderHandler::decodeBatchResponse)
+          .exceptionally(failure -> {
+            logger.error(String.format("Could not forward %d orders to %s", indexes.size(), owner), failure);
+            return Collections.emptyMap();
+          })
+          .thenAccept(results -> {
+            for (final int index : indexes) {
+              accepted[index] = results.getOrDefault(orders.get(index).getId(), false);
+            }
+          }));
+    }
+
+    writeWhenReady(ctx, CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+      try {
+        return batchResponse(ctx, orders, accepted);
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }), INTERNAL_SERVER_ERROR);
+    pauseIfOverloaded(ctx);
+  }
+
+  private static FullHttpResponse batchResponse(@Nonnull final ChannelHandlerContext ctx, @Nonnull final List<Order> orders,
+                                                @Nonnull final boolean[] accepted) throws IOException {
+    final ByteBuf content = ctx.alloc().buffer();
+
+    try (final JsonWriter writer = new JsonWriter(new OutputStreamWriter(new ByteBufOutputStream(content), CharsetUtil.UTF_8))) {
+      writer.beginArray();
+      for (int i = 0; i < accepted.length; i++) {
+        writer.beginObject().name("id").value(orders.get(i).getId()).name("accepted").value(accepted[i]).endObject();
+      }
+      writer.endArray();
+    } catch (final IOException e) {
+      content.release();
+      throw e;
+    }
+
+    final DefaultFullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK, content);
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+    return response;
+  }
+
+  /**
+   * @return JSON array of the orders at the given indexes, in the format {@link JsonOrderDecoder} reads
+   */
+  private static ByteBuf encode(@Nonnull final ChannelHandlerContext ctx, @Nonnull final List<Order> orders,
+                                @Nonnull final List<Integer> indexes) throws IOException {
+    final ByteBuf content = ctx.alloc().buffer();
+
+    try (final JsonWriter writer = new JsonWriter(new OutputStreamWriter(new ByteBufOutputStream(content), CharsetUtil.UTF_8))) {
+      writer.beginArray();
+      for (final int index : indexes) {
+        final Order order = orders.get(index);
+        writer.beginObject()
+            .name("id").value(order.getId())
+            .name("name").value(order.getName())
+            .name("temp").value(order.getTemp().name().toLowerCase())
+            .name("shelfLife").value(order.getShelfLife())
+            .name("decayRate").value(order.getDecayRate())
+            .endObject();
+      }
+      writer.endArray();
+    } catch (final IOException e) {
+      content.release();
+      throw e;
+    }
+
+    return content;
+  }
+
+  /**
+   * @return accepted flag of every order id of the batch response of another node, empty if the batch was rejected
+   */
+  private static Map<String, Boolean> decodeBatchResponse(@Nonnull final FullHttpResponse response) {
+    try {
+      if (!OK.equals(response.status())) {
+        logger.warn(String.format("Batch forwarded to another node answered with %s", response.status()));
+        return Collections.emptyMap();
+      }
+
+      final Map<String, Boolean> results = new HashMap<>();
+
+      for (final JsonElement element : JsonParser.parseString(response.content().toString(CharsetUtil.UTF_8)).getAsJsonArray()) {
+        final JsonObject result = element.getAsJsonObject();
+        results.put(result.get("id").getAsString(), result.get("accepted").getAsBoolean());
+      }
+
+      return results;
+    } finally {
+      response.release();
+    }
+  }
+
+  /**
+   * @return the answer of another node for a forwarded order, without its connection management headers
+   */
+  private FullHttpResponse relay(@Nonnull final FullHttpResponse response) {
+    final FullHttpResponse relayed = new DefaultFullHttpResponse(HTTP_1_1, response.status(), response.content());
+    relayed.headers().set(response.headers());
+    relayed.headers().remove(HttpHeaderNames.CONNECTION);
+    return relayed;
+  }
+
+  /**
+   * Answer with the given status and a Retry-After, stop reading from the channel until the server drains
+   */
+  private void reject(@Nonnull final ChannelHandlerContext ctx, @Nonnull final HttpResponseStatus status) {
+    final long retryAfterInSeconds = backpressure.getRetryAfterInSeconds();
+    backpressure.reportRejection(status);
+
+    final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status);
+    response.headers().set(HttpHeaderNames.RETRY_AFTER, retryAfterInSeconds);
+
+    writeResponse(ctx, response);
+    backpressure.pause(ctx.channel());
+  }
+
+  private void pauseIfOverloaded(@Nonnull final ChannelHandlerContext ctx) {
+    if (backpressure.isOverloaded()) {
+      backpressure.pause(ctx.channel());
+    }
+  }
+
+  /**
+   * Answer requests we failed to handle so clients of persistent connections are not left waiting,
+   * the connection state is unknown at this point so close it
+   */
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    logger.error("Error while handling request", cause);
+
+    final HttpResponseStatus status = cause.getCause() instanceof JsonParseException ? BAD_REQUEST : INTERNAL_SERVER_ERROR;
+    final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status);
+    HttpUtil.setContentLength(response, 0);
+
+    ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+  }
+
+  private void writeResponse(@Nonnull final ChannelHandlerContext ctx, @Nonnull final FullHttpResponse response) {
+    writeResponse(ctx, response, Journal.DURABLE);
+  }
+
+  /**
+   * Write the response once the given journal future and every previous response of the connection completed.
+   * Written right away when nothing is pending, otherwise from the event loop so the responses keep their order.
+   * A journal failure is answered with a 500, the order might not survive a restart
+   */
+  private void writeResponse(@Nonnull final ChannelHandlerContext ctx, @Nonnull final FullHttpResponse response,
+                             @Nonnull final CompletableFuture<Void> durable) {
+    if (responded.isDone() && durable.isDone() && !durable.isCompletedExceptionally()) {
+      HttpUtil.setContentLength(response, response.content().readableBytes());
+      ctx.writeAndFlush(response);
+      return;
+    }
+
+    writeWhenReady(ctx, durable.handle((ignored, failure) -> {
+      if (failure != null) {
+        response.release();
+        throw new CompletionException(failure);
+      }
+
+      return response;
+    }), INTERNAL_SERVER_ERROR);
+  }
+
+  /**
+   * Write the response once it and every previous response of the connection completed, from the event loop.
+   * A failed response is answered with the given status, or a 504 if it timed out waiting for another node
+   */
+  private void writeWhenReady(@Nonnull final ChannelHandlerContext ctx, @Nonnull final CompletableFuture<FullHttpResponse> pending,
+                              @Nonnull final HttpResponseStatus failureStatus) {
+    responded = CompletableFuture.allOf(responded, pending).handleAsync((ignored, failure) -> {
+      if (failure == null) {
+        final FullHttpResponse response = pending.join();
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+        ctx.writeAndFlush(response);
+        return null;
+      }
+
+      final HttpResponseStatus status = failure.getCause() instanceof TimeoutException ? GATEWAY_TIMEOUT : failureStatus;
+      logger.error(String.format("Could not answer the request, answering with %s", status), failure);
+
+      final FullHttpResponse error = new DefaultFullHttpResponse(HTTP_1_1, status);
+      HttpUtil.setContentLength(error, 0);
+      ctx.writeAndFlush(error);
+      return null;
+    }, ctx.executor());
+  }
 }
@@ -0,0 +1,79 @@
+package protocol;
+
+import common.GlobalStats;
+import common.Order;
+import common.Queue;
+import events.EventLogManager;
+import events.LifecycleEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import journal.Journal;
+import journal.JournalEvent;
+
+/**
+ * Records and journals decoded orders and adds them to the order and dispatcher queues, shared by the HTTP and the
+ * binary protocols so both feed the same queues the same way
+ */
+final class OrderIntake {
+  private final Queue orderQueue;
+  private final Queue dispatcherQueue;
+  private final Journal journal;
+
+  OrderIntake(@Nonnull final Queue orderQueue, @Nonnull final Queue dispatcherQueue, @Nonnull final Journal journal) {
+    this.orderQueue = orderQueue;
+    this.dispatcherQueue = dispatcherQueue;
+    this.journal = journal;
+  }
+
+  /**
+   * Orders go to the dispatcher queue first and only the ones it took go to the order queue, an order is accepted only
+   * if it made it to both queues. An order the order queue rejects then only costs its courier a failed pickup, while
+   * an order left on the order queue would be shelved with no courier and hold a slot until it expires
+   *
+   * @param accepted set to the result of every order
+   * @return lsn to wait for before answering
+   */
+  long accept(@Nonnull final List<Order> orders, final long receivedNanoTime, @Nonnull final boolean[] accepted) {
+    if (orders.isEmpty()) {
+      return 0;
+    }
+
+    GlobalStats.getInstance().reportReceivedOrders(orders.size());
+
+    long lsn = 0;
+    // Stamped before adding, consumers might pick the orders up right away. Only the accepted ones are reported
+    final long enqueuedNanoTime = System.nanoTime();
+
+    for (final Order order : orders) {
+      order.setReceivedNanoTime(receivedNanoTime);
+      order.setEnqueuedNanoTime(enqueuedNanoTime);
+      EventLogManager.getEventLog().record(LifecycleEvent.RECEIVED, order);
+      lsn = journal.append(JournalEvent.ACCEPTED, order);
+    }
+
+    final boolean[] dispatched = dispatcherQueue.addAll(orders);
+    final List<Order> toShelve = new ArrayList<>(orders.size());
+
+    for (int i = 0; i < dispatched.length; i++) {
+      if (dispatched[i]) {
+        toShelve.add(orders.get(i));
+      }
+    }
+
+    final boolean[] added = orderQueue.addAll(toShelve);
+
+    for (int i = 0, j = 0; i < dispatched.length; i++) {
+      accepted[i] = dispatched[i] && added[j++];
+
+      if (accepted[i]) {
+        GlobalStats.getInstance().reportEnqueuedOrder(orders.get(i));
+      } else {
+        EventLogManager.getEventLog().record(LifecycleEvent.DISCARDED, orders.get(i));
+        lsn = journal.append(JournalEvent.DISCARDED, orders.get(i));
+      }
+    }
+
+    return lsn;
+  }
+}
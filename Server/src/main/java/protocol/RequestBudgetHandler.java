@@ -0,0 +1,60 @@
+package protocol;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import javax.annotation.Nonnull;
+
+/**
+ * Accounts the body of every aggregated request in the {@link Backpressure} in-flight budget until its response is written,
+ * and stops reading from the channel when the budget is exceeded
+ *
+ * Must be placed right after the {@link HttpObjectAggregator} and run on the event loop. Responses are written in
+ * request order so the oldest pending request is released with every response. Not sharable, one instance per channel
+ */
+public class RequestBudgetHandler extends ChannelDuplexHandler {
+  private final Backpressure backpressure;
+  private final Queue<Integer> pendingBytes;
+
+  public RequestBudgetHandler(@Nonnull final Backpressure backpressure) {
+    this.backpressure = backpressure;
+    this.pendingBytes = new ArrayDeque<>();
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof FullHttpRequest) {
+      final int bytes = ((FullHttpRequest) msg).content().readableBytes();
+      pendingBytes.add(bytes);
+
+      if (!backpressure.reserve(bytes)) {
+        backpressure.pause(ctx.channel());
+      }
+    }
+
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpResponse && !pendingBytes.isEmpty()) {
+      backpressure.release(pendingBytes.poll());
+    }
+
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    while (!pendingBytes.isEmpty()) {
+      backpressure.release(pendingBytes.poll());
+    }
+
+    super.channelInactive(ctx);
+  }
+}
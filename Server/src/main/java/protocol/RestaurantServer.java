@@ -1,22 +1,28 @@
 package protocol;
 
+import cluster.Cluster;
 import common.GlobalStats;
-import common.OrdersQueue;
+import common.PoolStats;
 import common.Queue;
 import common.ServerProperties;
 import courier.DispatcherManager;
-import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import events.EventLogManager;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.concurrent.EventExecutorGroup;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import journal.JournalManager;
 import org.apache.log4j.Logger;
 import processor.OrderProcessorManager;
 
@@ -40,48 +46,82 @@ public class RestaurantServer {
     this.nettyWorkerThreadCount = availableProcessorsCount;
   }
 
-  private void initAndRun() throws InterruptedException {
+  private void initAndRun() throws InterruptedException, IOException {
     logger.info("Initializing and running RestaurantServer...");
 
-    final EventLoopGroup bossGroup = new NioEventLoopGroup();
-    // This can be changed by -Dio.netty.eventLoopThreads
-    final EventLoopGroup workerGroup = new NioEventLoopGroup(nettyWorkerThreadCount);
+    final ServerTransport transport = ServerTransport.fromProperties(nettyWorkerThreadCount);
+    final EventLoopGroup workerGroup = transport.getWorkerGroup();
+    Cluster cluster = Cluster.SINGLE_NODE;
 
     try {
       GlobalStats.getInstance().initialize();
-      final Queue orderQueue = new OrdersQueue();
-      final Queue dispatcherQueue = new OrdersQueue();
+      final Queue orderQueue = ServerProperties.queueType.get().newQueue("orders");
+      final Queue dispatcherQueue = ServerProperties.queueType.get().newQueue("dispatcher");
+      // Orders of the previous run go back in the queues before anybody consumes them
+      EventLogManager.initialize();
+      JournalManager.initialize(orderQueue, dispatcherQueue);
       final OrderProcessorManager orderProcessorManager = new OrderProcessorManager(orderQueue);
       final DispatcherManager dispatcherManager = new DispatcherManager(dispatcherQueue);
       orderProcessorManager.initialize();
       dispatcherManager.initialize();
+      final List<PoolStats> pools = Arrays.asList(orderProcessorManager.getPoolStats(), dispatcherManager.getPoolStats());
+      final Backpressure backpressure = new Backpressure(orderQueue, dispatcherQueue);
+      workerGroup.scheduleAtFixedRate(backpressure, Backpressure.CHECK_INTERVAL_IN_MS, Backpressure.CHECK_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+      final int maxRequestBodyInBytes = ServerProperties.maxRequestBodyInBytes.get();
+      // Connections to the other nodes share the worker event loops
+      cluster = Cluster.fromProperties(workerGroup, transport.getType().getSocketChannelClass());
+      final Cluster orderCluster = cluster;
 
-      final EventExecutorGroup handlerGroup = new DefaultEventExecutorGroup(nettyWorkerThreadCount);
-      final ServerBootstrap serverBootstrap = new ServerBootstrap();
-      serverBootstrap.group(bossGroup, workerGroup);
-      serverBootstrap.channel(NioServerSocketChannel.class);
-      serverBootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+      // Null when the handlers run on the event loop of their channel
+      final EventExecutorGroup handlerGroup = ServerProperties.handlerExecution.get().newExecutorGroup(nettyWorkerThreadCount);
+      final int idleConnectionTimeoutInSeconds = ServerProperties.idleConnectionTimeoutInSeconds.get();
+      final IdleConnectionHandler idleConnectionHandler = new IdleConnectionHandler();
+      final List<Channel> channels = transport.bind(port, new ChannelInitializer<SocketChannel>() {
         protected void initChannel(SocketChannel ch) {
+          ch.pipeline().addLast(new IdleStateHandler(0, 0, idleConnectionTimeoutInSeconds));
+          ch.pipeline().addLast(idleConnectionHandler);
           ch.pipeline().addLast(new HttpServerCodec());
-          ch.pipeline().addLast(new HttpObjectAggregator(Integer.MAX_VALUE));
-          ch.pipeline().addLast(handlerGroup, "OrderHandler" ,new OrderHandler(orderQueue, dispatcherQueue));
+          ch.pipeline().addLast(new HttpServerKeepAliveHandler());
+          // Bodies over the limit are answered with a 413 by the aggregator
+          ch.pipeline().addLast(new HttpObjectAggregator(maxRequestBodyInBytes));
+          ch.pipeline().addLast(new RequestBudgetHandler(backpressure));
+          // Same executor as OrderHandler so responses of pipelined requests keep their order
+          ch.pipeline().addLast(handlerGroup, "MetricsHandler", new MetricsHandler(orderQueue, dispatcherQueue, pools));
+          ch.pipeline().addLast(handlerGroup, "OrderHandler" ,new OrderHandler(orderQueue, dispatcherQueue, backpressure,
+              JournalManager.getJournal(), orderCluster));
         }
       });
-      serverBootstrap.option(ChannelOption.SO_BACKLOG, 128);
-      serverBootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
 
-      final ChannelFuture channelFuture = serverBootstrap.bind(port).sync();
+      final int binaryPort = ServerProperties.binaryPort.get();
+
+      if (binaryPort > 0) {
+        transport.bind(binaryPort, new ChannelInitializer<SocketChannel>() {
+          protected void initChannel(SocketChannel ch) {
+            ch.pipeline().addLast(new IdleStateHandler(0, 0, idleConnectionTimeoutInSeconds));
+            ch.pipeline().addLast(idleConnectionHandler);
+            // Frames over the limit close the connection
+            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(maxRequestBodyInBytes, 0, 4, 0, 4));
+            ch.pipeline().addLast(new LengthFieldPrepender(4));
+            ch.pipeline().addLast(new FrameBudgetHandler(backpressure));
+            ch.pipeline().addLast(handlerGroup, "BinaryOrderHandler", new BinaryOrderHandler(orderQueue, dispatcherQueue,
+                backpressure, JournalManager.getJournal()));
+          }
+        });
+        logger.info(String.format("Accepting binary orders on Port %d ", binaryPort));
+      }
 
       // Run & Wait
       logger.info(String.format("Starting server on Port %d ", port));
-      channelFuture.channel().closeFuture().sync();
+      channels.get(0).closeFuture().sync();
     } finally {
-      workerGroup.shutdownGracefully();
-      bossGroup.shutdownGracefully();
+      cluster.close();
+      JournalManager.close();
+      EventLogManager.close();
+      transport.shutdownGracefully();
     }
   }
 
-  public static void main(String[] args) throws InterruptedException {
+  public static void main(String[] args) throws InterruptedException, IOException {
     ServerProperties.initialize();
 
     final int port = ServerProperties.PORT.get();
@@ -90,6 +130,8 @@ public class RestaurantServer {
 
     logger.debug(String.format("Found %d available processors", availableProcessorsCount));
 
-    new RestaurantServer(port, availableProcessorsCount).initAndRun();
+    final int nettyWorkerThreads = ServerProperties.nettyWorkerThreads.get();
+
+    new RestaurantServer(port, nettyWorkerThreads > 0 ? nettyWorkerThreads : availableProcessorsCount).initAndRun();
   }
 }
@@ -0,0 +1,120 @@
+package protocol;
+
+import common.ServerProperties;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.socket.SocketChannel;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.apache.log4j.Logger;
+
+/**
+ * Event loops and socket options of the listeners, see {@link TransportType}
+ *
+ * With SO_REUSEPORT (epoll only) every listener binds one server socket per boss event loop on the same port, the kernel
+ * spreads the incoming connections over them so accepts are not funneled through a single thread. Otherwise a listener
+ * has a single server socket and the boss group a single thread
+ */
+public final class ServerTransport {
+  private static final Logger logger = Logger.getLogger(ServerTransport.class);
+
+  private final TransportType type;
+  private final int acceptors;
+  private final int backlog;
+  private final boolean tcpNoDelay;
+  private final boolean reusePort;
+  private final boolean edgeTriggered;
+  private final ByteBufAllocator allocator;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+
+  /**
+   * @param type transport, falls back to NIO if not available
+   * @param workerThreads event loops of the connections, also the number of acceptors per listener with SO_REUSEPORT
+   * @param reusePort ignored if the transport doesn't support it
+   * @param edgeTriggered epoll mode, ignored by NIO
+   * @param pooledDirectBuffers pooled direct buffers for the sockets, unpooled heap buffers otherwise
+   */
+  public ServerTransport(@Nonnull final TransportType type, final int workerThreads, final int backlog, final boolean tcpNoDelay,
+                         final boolean reusePort, final boolean edgeTriggered, final boolean pooledDirectBuffers) {
+    this.type = type.orFallback();
+    this.reusePort = reusePort && this.type.supportsReusePort();
+    this.acceptors = this.reusePort ? workerThreads : 1;
+    this.backlog = backlog;
+    this.tcpNoDelay = tcpNoDelay;
+    this.edgeTriggered = edgeTriggered;
+    this.allocator = pooledDirectBuffers ? new PooledByteBufAllocator(true) : new UnpooledByteBufAllocator(false);
+    this.bossGroup = this.type.newEventLoopGroup(acceptors);
+    // This can be changed by -Dio.netty.eventLoopThreads
+    this.workerGroup = this.type.newEventLoopGroup(workerThreads);
+
+    logger.info(String.format("Using %s transport with %d worker threads and %d acceptors per listener", this.type, workerThreads, acceptors));
+  }
+
+  public static ServerTransport fromProperties(final int workerThreads) {
+    return new ServerTransport(ServerProperties.transportType.get(), workerThreads, ServerProperties.socketBacklog.get(),
+        ServerProperties.tcpNoDelay.get(),
+        ServerProperties.reusePort.get(),
+        ServerProperties.epollEdgeTriggered.get(),
+        ServerProperties.pooledDirectBuffers.get());
+  }
+
+  /**
+   * Listen on the given port, one server socket per acceptor
+   *
+   * @param port to listen on, 0 picks a free port shared by all the acceptors
+   * @return server channels, the first one closes when the server is stopped
+   */
+  public List<Channel> bind(final int port, @Nonnull final ChannelHandler childHandler) throws InterruptedException {
+    final ServerBootstrap bootstrap = new ServerBootstrap();
+    bootstrap.group(bossGroup, workerGroup);
+    bootstrap.channel(type.getServerChannelClass());
+    bootstrap.childHandler(childHandler);
+    bootstrap.option(ChannelOption.SO_BACKLOG, backlog);
+    bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+    bootstrap.childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+    bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+    bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+
+    if (type == TransportType.EPOLL) {
+      final EpollMode mode = edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+      bootstrap.option(EpollChannelOption.EPOLL_MODE, mode);
+      bootstrap.childOption(EpollChannelOption.EPOLL_MODE, mode);
+      bootstrap.option(EpollChannelOption.SO_REUSEPORT, reusePort);
+    }
+
+    final List<Channel> channels = new ArrayList<>(acceptors);
+    channels.add(bootstrap.bind(port).sync().channel());
+    final int boundPort = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+
+    // Every bind registers the server socket on the next boss event loop
+    for (int i = 1; i < acceptors; i++) {
+      channels.add(bootstrap.bind(boundPort).sync().channel());
+    }
+
+    return channels;
+  }
+
+  public TransportType getType() {
+    return type;
+  }
+
+  public EventLoopGroup getWorkerGroup() {
+    return workerGroup;
+  }
+
+  public void shutdownGracefully() {
+    workerGroup.shutdownGracefully();
+    bossGroup.shutdownGracefully();
+  }
+}
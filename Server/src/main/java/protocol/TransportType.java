@@ -0,0 +1,103 @@
+package protocol;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.log4j.Logger;
+
+/**
+ * Netty transport of the listeners and of the connections to the other cluster nodes
+ */
+public enum TransportType {
+  /**
+   * JDK selectors, available everywhere
+   */
+  NIO {
+    @Override
+    public EventLoopGroup newEventLoopGroup(final int threads) {
+      return new NioEventLoopGroup(threads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> getServerChannelClass() {
+      return NioServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+      return NioSocketChannel.class;
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+  },
+
+  /**
+   * Linux native epoll: no selector garbage, edge-triggered mode and SO_REUSEPORT so several acceptors can share a port
+   */
+  EPOLL {
+    @Override
+    public EventLoopGroup newEventLoopGroup(final int threads) {
+      return new EpollEventLoopGroup(threads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> getServerChannelClass() {
+      return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+      return EpollSocketChannel.class;
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return Epoll.isAvailable();
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+      return true;
+    }
+  };
+
+  private static final Logger logger = Logger.getLogger(TransportType.class);
+
+  public abstract EventLoopGroup newEventLoopGroup(final int threads);
+
+  public abstract Class<? extends ServerChannel> getServerChannelClass();
+
+  public abstract Class<? extends SocketChannel> getSocketChannelClass();
+
+  /**
+   * @return false if the native library of the transport can't be loaded on this host
+   */
+  public abstract boolean isAvailable();
+
+  public boolean supportsReusePort() {
+    return false;
+  }
+
+  /**
+   * @return this transport if available, {@link #NIO} otherwise
+   */
+  public TransportType orFallback() {
+    if (isAvailable()) {
+      return this;
+    }
+
+    logger.warn(String.format("%s transport is not available on this host (%s). Falling back to NIO", this,
+        Epoll.unavailabilityCause()));
+    return NIO;
+  }
+}
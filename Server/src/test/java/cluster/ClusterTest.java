@@ -0,0 +1,148 @@
+package cluster;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterTest {
+  private static final ClusterNode SELF = ClusterNode.parse("localhost:1");
+
+  private EventLoopGroup group;
+  private Channel peer;
+
+  @Before
+  public void initialize() throws InterruptedException {
+    group = new NioEventLoopGroup(2);
+    // Echoes the body and the forwarding node of every request
+    peer = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel ch) {
+            ch.pipeline().addLast(new HttpServerCodec());
+            ch.pipeline().addLast(new HttpObjectAggregator(1024));
+            ch.pipeline().addLast(new SimpleChannelInboundHandler<FullHttpRequest>() {
+              @Override
+              protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest request) {
+                final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    request.content().retain());
+                response.headers().set(Cluster.FORWARDED_BY, request.headers().get(Cluster.FORWARDED_BY));
+                HttpUtil.setContentLength(response, response.content().readableBytes());
+                ctx.writeAndFlush(response);
+              }
+            });
+          }
+        })
+        .bind("127.0.0.1", 0).sync().channel();
+  }
+
+  @After
+  public void close() throws InterruptedException {
+    peer.close().sync();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+  }
+
+  @Test
+  public void testPipelinedForwardsAreAnsweredInOrder() throws Exception {
+    final ClusterNode owner = new ClusterNode("127.0.0.1", ((InetSocketAddress) peer.localAddress()).getPort());
+    final Cluster cluster = new Cluster(SELF, Arrays.asList(SELF, owner), 16, group, NioSocketChannel.class, 1024, 5000);
+    final List<CompletableFuture<FullHttpResponse>> responses = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      responses.add(cluster.forward(owner, "/orders", Unpooled.copiedBuffer(Integer.toString(i), CharsetUtil.UTF_8)));
+    }
+
+    for (int i = 0; i < 100; i++) {
+      final FullHttpResponse response = responses.get(i).get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(Integer.toString(i), response.content().toString(CharsetUtil.UTF_8));
+      Assert.assertEquals(SELF.getId(), response.headers().get(Cluster.FORWARDED_BY));
+      response.release();
+    }
+
+    cluster.close();
+  }
+
+  @Test
+  public void testForwardToADownNodeFails() throws Exception {
+    final ClusterNode owner = new ClusterNode("127.0.0.1", ((InetSocketAddress) peer.localAddress()).getPort());
+    peer.close().sync();
+    final Cluster cluster = new Cluster(SELF, Arrays.asList(SELF, owner), 16, group, NioSocketChannel.class, 1024, 5000);
+
+    try {
+      cluster.forward(owner, "/orders", Unpooled.copiedBuffer("order", CharsetUtil.UTF_8)).get(5, TimeUnit.SECONDS);
+      Assert.fail("Forward to a closed port should fail");
+    } catch (final ExecutionException e) {
+      // expected
+    } finally {
+      cluster.close();
+    }
+  }
+
+  @Test
+  public void testForwardsToANodeThatDoesNotAnswerTimeOut() throws Exception {
+    // Reads the requests and never answers
+    final Channel silent = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel ch) {
+            ch.pipeline().addLast(new HttpServerCodec());
+            ch.pipeline().addLast(new HttpObjectAggregator(1024));
+          }
+        })
+        .bind("127.0.0.1", 0).sync().channel();
+    final ClusterNode owner = new ClusterNode("127.0.0.1", ((InetSocketAddress) silent.localAddress()).getPort());
+    final Cluster cluster = new Cluster(SELF, Arrays.asList(SELF, owner), 16, group, NioSocketChannel.class, 1024, 100);
+
+    try {
+      final CompletableFuture<FullHttpResponse> first = cluster.forward(owner, "/orders", Unpooled.copiedBuffer("1", CharsetUtil.UTF_8));
+      final CompletableFuture<FullHttpResponse> second = cluster.forward(owner, "/orders", Unpooled.copiedBuffer("2", CharsetUtil.UTF_8));
+
+      // Every pending request fails with the first deadline
+      for (final CompletableFuture<FullHttpResponse> response : Arrays.asList(first, second)) {
+        try {
+          response.get(5, TimeUnit.SECONDS);
+          Assert.fail("Forward to a node that does not answer should time out");
+        } catch (final ExecutionException e) {
+          Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+      }
+    } finally {
+      cluster.close();
+      silent.close().sync();
+    }
+  }
+
+  @Test
+  public void testSingleNodeOwnsEveryOrder() {
+    Assert.assertFalse(Cluster.SINGLE_NODE.isEnabled());
+    Assert.assertTrue(Cluster.SINGLE_NODE.isLocal("any-order"));
+  }
+}
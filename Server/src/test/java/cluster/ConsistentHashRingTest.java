@@ -0,0 +1,89 @@
+package cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+  private static final int KEYS = 30000;
+
+  @Test
+  public void testKeysAreSpreadOverTheNodes() {
+    final List<ClusterNode> nodes = nodes(3);
+    final ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+    final Map<ClusterNode, Integer> counts = new HashMap<>();
+
+    for (final String key : keys()) {
+      counts.merge(ring.getOwner(key), 1, Integer::sum);
+    }
+
+    for (final ClusterNode node : nodes) {
+      // A third of the keys each, give or take
+      final int count = counts.getOrDefault(node, 0);
+      Assert.assertTrue(String.format("%s owns %d keys", node, count), count > KEYS / 3 * 0.75 && count < KEYS / 3 * 1.25);
+    }
+  }
+
+  @Test
+  public void testAddingANodeOnlyMovesItsShareOfTheKeys() {
+    final ConsistentHashRing before = new ConsistentHashRing(nodes(3), 128);
+    final List<ClusterNode> nodes = nodes(4);
+    final ConsistentHashRing after = new ConsistentHashRing(nodes, 128);
+    int moved = 0;
+
+    for (final String key : keys()) {
+      final ClusterNode owner = after.getOwner(key);
+
+      if (!owner.equals(before.getOwner(key))) {
+        // Keys only move to the new node, never between the nodes that were already there
+        Assert.assertEquals(nodes.get(3), owner);
+        moved++;
+      }
+    }
+
+    Assert.assertTrue(String.format("%d keys moved", moved), moved > KEYS / 4 * 0.75 && moved < KEYS / 4 * 1.25);
+  }
+
+  @Test
+  public void testOwnerDoesNotDependOnTheOrderOfTheNodes() {
+    final ConsistentHashRing ring = new ConsistentHashRing(nodes(3), 16);
+    final List<ClusterNode> reversed = nodes(3);
+    Collections.reverse(reversed);
+    final ConsistentHashRing other = new ConsistentHashRing(reversed, 16);
+
+    for (final String key : Arrays.asList("a", "b", "c", UUID.randomUUID().toString())) {
+      Assert.assertEquals(ring.getOwner(key), other.getOwner(key));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseRejectsMissingPort() {
+    ClusterNode.parse("localhost");
+  }
+
+  private static List<ClusterNode> nodes(final int count) {
+    final List<ClusterNode> nodes = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      nodes.add(ClusterNode.parse("localhost:" + (11211 + i)));
+    }
+
+    return nodes;
+  }
+
+  private static List<String> keys() {
+    final List<String> keys = new ArrayList<>(KEYS);
+
+    for (int i = 0; i < KEYS; i++) {
+      keys.add(UUID.nameUUIDFromBytes(Integer.toString(i).getBytes()).toString());
+    }
+
+    return keys;
+  }
+}
@@ -0,0 +1,42 @@
+package common;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EvictionPolicyTest {
+
+  @Test
+  public void testLowestLifeComparesLifeAtTheGivenTime() {
+    final Order fastDecaying = new Order("1", "fast", Temp.HOT, 100, 1f);
+    final Order slowDecaying = new Order("2", "slow", Temp.HOT, 100, 0.1f);
+    final long now = fastDecaying.getCreateTimeStamp() + TimeUnit.SECONDS.toMillis(10);
+
+    Assert.assertTrue(EvictionPolicy.LOWEST_LIFE.getPriority(fastDecaying, now) < EvictionPolicy.LOWEST_LIFE.getPriority(slowDecaying, now));
+  }
+
+  @Test
+  public void testLeastLikelyToSurviveUsesTheCourierArrival() {
+    // Expires last but its courier arrives just before
+    final Order lateCourier = new Order("1", "lateCourier", Temp.HOT, 300, 1f);
+    lateCourier.setCourierArrivalTimeStamp(lateCourier.getExpiryTimeStamp() - TimeUnit.SECONDS.toMillis(10));
+    // Expires first but its courier arrives right away
+    final Order earlyCourier = new Order("2", "earlyCourier", Temp.HOT, 60, 1f);
+    earlyCourier.setCourierArrivalTimeStamp(earlyCourier.getCreateTimeStamp() + TimeUnit.SECONDS.toMillis(5));
+
+    final long now = System.currentTimeMillis();
+    Assert.assertTrue(EvictionPolicy.SOONEST_EXPIRY.getPriority(earlyCourier, now) < EvictionPolicy.SOONEST_EXPIRY.getPriority(lateCourier, now));
+    Assert.assertEquals(TimeUnit.SECONDS.toMillis(10), EvictionPolicy.LEAST_LIKELY_TO_SURVIVE.getPriority(lateCourier, now));
+    Assert.assertTrue(EvictionPolicy.LEAST_LIKELY_TO_SURVIVE.getPriority(lateCourier, now) < EvictionPolicy.LEAST_LIKELY_TO_SURVIVE.getPriority(earlyCourier, now));
+  }
+
+  @Test
+  public void testLeastLikelyToSurviveAssumesTheMeanCourierWaitUntilDispatched() {
+    final Order order = new Order("1", "order", Temp.HOT, 300, 1f);
+    final long meanWait = TimeUnit.SECONDS.toMillis(ServerProperties.dispatcherLowWaitTimeInSeconds.get()
+        + ServerProperties.dispatcherHighWaitTimeInSeconds.get()) / 2;
+
+    Assert.assertEquals(order.getExpiryTimeStamp() - order.getCreateTimeStamp() - meanWait,
+        EvictionPolicy.LEAST_LIKELY_TO_SURVIVE.getPriority(order, System.currentTimeMillis()));
+  }
+}
@@ -0,0 +1,59 @@
+package common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExecutionModeTest {
+  @Test
+  public void testBoundedPoolBlocksTheCallerInsteadOfGrowing() throws InterruptedException {
+    final ExecutorService executorService = ExecutionMode.newBoundedPool(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Runnable blocked = () -> {
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    // 2 running and 2 waiting fill the pool
+    for (int i = 0; i < 4; i++) {
+      executorService.execute(blocked);
+    }
+
+    final AtomicBoolean submitted = new AtomicBoolean();
+    final Thread submitter = new Thread(() -> {
+      executorService.execute(blocked);
+      submitted.set(true);
+    });
+    submitter.start();
+    submitter.join(200);
+
+    Assert.assertFalse(submitted.get());
+    Assert.assertEquals(2, ((ThreadPoolExecutor) executorService).getPoolSize());
+
+    release.countDown();
+    submitter.join(5000);
+
+    Assert.assertTrue(submitted.get());
+    Assert.assertEquals(2, ((ThreadPoolExecutor) executorService).getLargestPoolSize());
+    executorService.shutdown();
+    Assert.assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testPoolSizeIsTheThreadCountOfBoundedPools() {
+    final ExecutorService fixed = ExecutionMode.FIXED_POOL.newExecutorService(3);
+    final ExecutorService fallback = ExecutionMode.newBoundedPool(3);
+
+    Assert.assertEquals(3, ExecutionMode.getPoolSize(fixed));
+    Assert.assertEquals(3, ExecutionMode.getPoolSize(fallback));
+    fixed.shutdown();
+    fallback.shutdown();
+  }
+}
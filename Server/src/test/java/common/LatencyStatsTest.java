@@ -0,0 +1,50 @@
+package common;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyStatsTest {
+  @Test
+  public void testSnapshotIntervalOnlyCoversValuesSinceLastSnapshot() {
+    final LatencyStats latencyStats = new LatencyStats("test");
+
+    for (int i = 1; i <= 100; i++) {
+      latencyStats.record(i * 1000L);
+    }
+
+    Histogram interval = latencyStats.snapshotInterval();
+    Assert.assertEquals(100, interval.getTotalCount());
+    Assert.assertEquals(50_000, interval.getValueAtPercentile(50), 50);
+    Assert.assertEquals(100_000, interval.getMaxValue(), 100);
+
+    latencyStats.record(-5);
+    interval = latencyStats.snapshotInterval();
+    Assert.assertEquals(1, interval.getTotalCount());
+    Assert.assertEquals(0, interval.getMaxValue());
+
+    Assert.assertEquals(101, latencyStats.getTotal().getTotalCount());
+
+    latencyStats.reset();
+    Assert.assertEquals(0, latencyStats.getTotal().getTotalCount());
+  }
+
+  @Test
+  public void testFlushDoesNotEndTheInterval() {
+    final LatencyStats latencyStats = new LatencyStats("test");
+
+    latencyStats.record(1000);
+    latencyStats.flush();
+    Assert.assertEquals(1, latencyStats.getTotalCount());
+
+    latencyStats.record(3000);
+    latencyStats.flush();
+    Assert.assertEquals(2, latencyStats.getTotalCount());
+    Assert.assertEquals(3000, latencyStats.getTotalMax(), 10);
+    Assert.assertEquals(2000, latencyStats.getTotalMean(), 10);
+
+    Assert.assertEquals(2, latencyStats.snapshotInterval().getTotalCount());
+    Assert.assertEquals(0, latencyStats.snapshotInterval().getTotalCount());
+    Assert.assertEquals(2, latencyStats.getTotalCount());
+  }
+}
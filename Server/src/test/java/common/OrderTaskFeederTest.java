@@ -0,0 +1,31 @@
+package common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import mocks.MockQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrderTaskFeederTest {
+  @Test
+  public void testFeederRunsEveryOrderAsItsOwnTask() throws InterruptedException {
+    final MockQueue queue = new MockQueue();
+    final Order first = new Order("1", "first", Temp.HOT, 100, 0.5f);
+    final Order second = new Order("2", "second", Temp.COLD, 100, 0.5f);
+    queue.add(first);
+    queue.add(second);
+
+    final List<Order> processed = new CopyOnWriteArrayList<>();
+    final ExecutorService executorService = ExecutionMode.VIRTUAL_THREADS.newExecutorService(1);
+
+    new OrderTaskFeeder(queue, processed::add, executorService).run(() -> queue.size() != 0);
+
+    executorService.shutdown();
+    Assert.assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, processed.size());
+    Assert.assertTrue(processed.contains(first));
+    Assert.assertTrue(processed.contains(second));
+  }
+}
@@ -78,4 +78,38 @@ public class OrderTest {
     Assert.assertEquals(0, order.updateAndGetLife(() -> now), 0);
 
   }
+
+  @Test
+  public void testExpiryTimeStampMatchesUpdateAndGetLife() {
+    final Order order = new Order("1", "testOrder", Temp.COLD, 10, 3f);
+    final long expiry = order.getExpiryTimeStamp();
+
+    // 10 / 3 -> life hits 0 once the age reaches 4 whole seconds
+    Assert.assertEquals(order.getCreateTimeStamp() + TimeUnit.SECONDS.toMillis(4), expiry);
+    Assert.assertTrue(order.updateAndGetLife(() -> expiry - 1) > 0);
+    Assert.assertTrue(order.updateAndGetLife(() -> expiry) <= 0);
+
+    Assert.assertEquals(Long.MAX_VALUE, new Order("2", "testOrder", Temp.COLD, 10, 0f).getExpiryTimeStamp());
+  }
+
+  @Test
+  public void testExpiryIsRecomputedWhenTheOrderChangesShelf() {
+    // 100 seconds of life on a regular shelf
+    final Order order = new Order("1", "testOrder", Temp.HOT, 100, 1f);
+    final long created = order.getCreateTimeStamp();
+
+    order.placedOn(Temp.HOT, created);
+    Assert.assertEquals(created + TimeUnit.SECONDS.toMillis(100), order.getExpiryTimeStamp());
+
+    // 20 seconds later it moves to overflow, the 80 seconds left decay twice as fast
+    order.placedOn(Temp.ANY, created + TimeUnit.SECONDS.toMillis(20));
+    Assert.assertEquals(created + TimeUnit.SECONDS.toMillis(60), order.getExpiryTimeStamp());
+    Assert.assertEquals(0.6f, order.getLifeAt(created + TimeUnit.SECONDS.toMillis(30)), 0.0001f);
+
+    // Back to its shelf 10 seconds later, 60 seconds left
+    order.placedOn(Temp.HOT, created + TimeUnit.SECONDS.toMillis(30));
+    Assert.assertEquals(created + TimeUnit.SECONDS.toMillis(90), order.getExpiryTimeStamp());
+    Assert.assertTrue(order.getLifeAt(order.getExpiryTimeStamp() - 1) > 0);
+    Assert.assertTrue(order.updateAndGetLife(order.getExpiryTimeStamp()) <= 0);
+  }
 }
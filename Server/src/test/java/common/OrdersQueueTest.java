@@ -0,0 +1,74 @@
+package common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrdersQueueTest {
+  @Test
+  public void testFetchBatchDrainsUpToMax() throws InterruptedException {
+    final OrdersQueue queue = new OrdersQueue();
+
+    for (int i = 0; i < 5; i++) {
+      queue.add(new Order(String.valueOf(i), "Order" + i, Temp.HOT, 100, 0.1f));
+    }
+
+    final List<Order> first = queue.fetchBatch(3, 100);
+    Assert.assertEquals(3, first.size());
+    Assert.assertEquals("0", first.get(0).getId());
+    Assert.assertEquals("2", first.get(2).getId());
+
+    final List<Order> second = queue.fetchBatch(3, 100);
+    Assert.assertEquals(2, second.size());
+    Assert.assertEquals("3", second.get(0).getId());
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testFetchBatchReturnsEmptyOnTimeout() throws InterruptedException {
+    Assert.assertTrue(new OrdersQueue().fetchBatch(10, 10).isEmpty());
+  }
+
+  @Test
+  public void testAddAllRejectsWhatDoesNotFit() throws InterruptedException {
+    final OrdersQueue queue = new OrdersQueue(3);
+    queue.add(new Order("0", "Order0", Temp.HOT, 100, 0.1f));
+
+    final boolean[] added = queue.addAll(Arrays.asList(new Order("1", "Order1", Temp.HOT, 100, 0.1f),
+        new Order("2", "Order2", Temp.HOT, 100, 0.1f), new Order("3", "Order3", Temp.HOT, 100, 0.1f)));
+
+    Assert.assertArrayEquals(new boolean[]{true, true, false}, added);
+    Assert.assertEquals(3, queue.size());
+    Assert.assertEquals("1", queue.fetchBatch(3, 10).get(1).getId());
+  }
+
+  @Test
+  public void testAddAllWakesUpEveryWaitingConsumer() throws InterruptedException {
+    final OrdersQueue queue = new OrdersQueue(10);
+    final List<Order> fetched = new CopyOnWriteArrayList<>();
+    final Thread[] consumers = new Thread[2];
+
+    for (int i = 0; i < consumers.length; i++) {
+      consumers[i] = new Thread(() -> {
+        try {
+          fetched.add(queue.fetch());
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      consumers[i].start();
+    }
+
+    // Let both consumers block on the empty queue
+    Thread.sleep(100);
+    queue.addAll(Arrays.asList(new Order("1", "Order1", Temp.HOT, 100, 0.1f), new Order("2", "Order2", Temp.HOT, 100, 0.1f)));
+
+    for (final Thread consumer : consumers) {
+      consumer.join(5000);
+    }
+
+    Assert.assertEquals(2, fetched.size());
+  }
+}
@@ -0,0 +1,92 @@
+package common;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingBufferQueueTest {
+  @Test
+  public void testAddFailsWhenFull() throws InterruptedException {
+    final RingBufferQueue queue = new RingBufferQueue(3, WaitStrategy.BUSY_SPIN);
+    Assert.assertEquals(4, queue.getCapacity());
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(queue.add(createOrder(i)));
+    }
+
+    Assert.assertFalse(queue.add(createOrder(4)));
+    Assert.assertEquals(4, queue.size());
+
+    // Freeing a slot lets producers in again, orders come out in order
+    Assert.assertEquals("0", queue.fetch().getId());
+    Assert.assertTrue(queue.add(createOrder(4)));
+
+    final List<Order> orders = queue.fetchBatch(10, 10);
+    Assert.assertEquals(4, orders.size());
+    Assert.assertEquals("1", orders.get(0).getId());
+    Assert.assertEquals("4", orders.get(3).getId());
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testFetchBatchReturnsEmptyOnTimeout() throws InterruptedException {
+    for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+      Assert.assertTrue(new RingBufferQueue(8, waitStrategy).fetchBatch(10, 5).isEmpty());
+    }
+  }
+
+  @Test
+  public void testConcurrentProducersAndConsumers() throws InterruptedException {
+    for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+      final RingBufferQueue queue = new RingBufferQueue(64, waitStrategy);
+      final int producers = 4;
+      final int ordersPerProducer = 5000;
+      final int consumers = 4;
+      final Set<String> fetched = ConcurrentHashMap.newKeySet();
+      final CountDownLatch done = new CountDownLatch(producers * ordersPerProducer);
+      final ExecutorService executorService = Executors.newFixedThreadPool(producers + consumers);
+
+      for (int i = 0; i < consumers; i++) {
+        executorService.execute(() -> {
+          try {
+            while (!Thread.currentThread().isInterrupted()) {
+              final Order order = queue.fetch();
+              Assert.assertTrue(fetched.add(order.getId()));
+              done.countDown();
+            }
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+      }
+
+      for (int i = 0; i < producers; i++) {
+        final int producer = i;
+        executorService.execute(() -> {
+          for (int j = 0; j < ordersPerProducer; j++) {
+            final Order order = createOrder(producer * ordersPerProducer + j);
+            while (!queue.add(order)) {
+              Thread.yield();
+            }
+          }
+        });
+      }
+
+      Assert.assertTrue(waitStrategy.name(), done.await(30, TimeUnit.SECONDS));
+      executorService.shutdownNow();
+      Assert.assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+      Assert.assertEquals(producers * ordersPerProducer, fetched.size());
+      Assert.assertEquals(0, queue.size());
+    }
+  }
+
+  private static Order createOrder(final int id) {
+    return new Order(String.valueOf(id), "Order" + id, Temp.HOT, 100, 0.1f);
+  }
+}
@@ -0,0 +1,264 @@
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedLogQueueTest {
+  // Room for a handful of orders per segment
+  private static final int SEGMENT_SIZE = 256;
+
+  private File directory;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = Files.createTempDirectory("log-queue").toFile();
+  }
+
+  @After
+  public void cleanUp() {
+    final File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (final File file : files) {
+        file.delete();
+      }
+    }
+
+    directory.delete();
+  }
+
+  @Test
+  public void testOrdersComeOutInOrderAcrossSegments() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, false);
+    final Order first = new Order("0", "Banana Split", Temp.FROZEN, 20, 0.63f);
+    first.setReceivedNanoTime(System.nanoTime());
+    first.setEnqueuedNanoTime(first.getReceivedNanoTime() + 1000);
+
+    Assert.assertTrue(queue.add(first));
+    for (int i = 1; i < 20; i++) {
+      Assert.assertTrue(queue.add(createOrder(i)));
+    }
+
+    Assert.assertEquals(20, queue.size());
+    Assert.assertTrue(SegmentedLogQueue.listSegments(directory).size() > 1);
+
+    // Decoded from the log, with the nano times of the pipeline stats
+    final Order fetched = queue.fetch();
+    Assert.assertNotSame(first, fetched);
+    Assert.assertEquals(first, fetched);
+    Assert.assertEquals(first.getReceivedNanoTime(), fetched.getReceivedNanoTime());
+    Assert.assertEquals(first.getEnqueuedNanoTime(), fetched.getEnqueuedNanoTime());
+    Assert.assertEquals("Banana Split", fetched.getName());
+    Assert.assertEquals(Temp.FROZEN, fetched.getTemp());
+    Assert.assertEquals(first.getCreateTimeStamp(), fetched.getCreateTimeStamp());
+
+    final List<Order> orders = queue.fetchBatch(100, 10);
+    Assert.assertEquals(19, orders.size());
+    Assert.assertEquals("19", orders.get(18).getId());
+    Assert.assertEquals(0, queue.size());
+
+    // Consumed segments are gone
+    Assert.assertEquals(1, SegmentedLogQueue.listSegments(directory).size());
+    queue.close();
+  }
+
+  @Test
+  public void testRollsTakeThePreallocatedSegment() throws Exception {
+    final File spare = new File(directory, SegmentedLogQueue.SPARE_SEGMENT);
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, false);
+    waitFor(spare::exists);
+
+    int count = 0;
+
+    while (SegmentedLogQueue.listSegments(directory).size() < 2) {
+      Assert.assertTrue(queue.add(createOrder(count++)));
+    }
+
+    // Renamed into the second segment, then preallocated again
+    waitFor(spare::exists);
+    queue.close();
+
+    Assert.assertFalse(spare.exists());
+    Assert.assertEquals(2, SegmentedLogQueue.listSegments(directory).size());
+
+    final SegmentedLogQueue resumed = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, true);
+    final List<Order> orders = resumed.fetchBatch(100, 10);
+    Assert.assertEquals(count, orders.size());
+    Assert.assertEquals(String.valueOf(count - 1), orders.get(count - 1).getId());
+    resumed.close();
+  }
+
+  @Test
+  public void testAddFailsOverCapacityAndFetchBatchTimesOut() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 2, false);
+
+    Assert.assertTrue(queue.fetchBatch(10, 5).isEmpty());
+    Assert.assertTrue(queue.add(createOrder(0)));
+    Assert.assertTrue(queue.add(createOrder(1)));
+    Assert.assertFalse(queue.add(createOrder(2)));
+
+    Assert.assertEquals("0", queue.fetch().getId());
+    Assert.assertTrue(queue.add(createOrder(2)));
+    queue.close();
+  }
+
+  @Test
+  public void testConsumersResumeAfterRestart() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, false);
+
+    for (int i = 0; i < 10; i++) {
+      queue.add(createOrder(i));
+    }
+
+    Assert.assertEquals(4, queue.fetchBatch(4, 10).size());
+    queue.close();
+
+    final SegmentedLogQueue resumed = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, true);
+    Assert.assertEquals(6, resumed.size());
+    Assert.assertEquals("4", resumed.fetch().getId());
+    Assert.assertTrue(resumed.add(createOrder(10)));
+    final List<Order> orders = resumed.fetchBatch(100, 10);
+    Assert.assertEquals(6, orders.size());
+    Assert.assertEquals("10", orders.get(5).getId());
+    resumed.close();
+
+    // Not resuming starts from an empty log
+    final SegmentedLogQueue fresh = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, false);
+    Assert.assertEquals(0, fresh.size());
+    fresh.close();
+  }
+
+  @Test
+  public void testRestartStopsAtATornRecord() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, 4096, 100, false);
+    queue.add(createOrder(0));
+    queue.add(createOrder(1));
+    queue.close();
+
+    // Flip a byte of the last record, as a write torn by a crash would leave it
+    final File segment = SegmentedLogQueue.listSegments(directory).get(0);
+
+    try (final RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      final int firstLength = file.readInt();
+      file.seek(8 + firstLength + 8);
+      final int value = file.read();
+      file.seek(8 + firstLength + 8);
+      file.write(value ^ 0xFF);
+    }
+
+    final SegmentedLogQueue resumed = new SegmentedLogQueue(directory, 4096, 100, true);
+    Assert.assertEquals(1, resumed.size());
+    Assert.assertTrue(resumed.add(createOrder(2)));
+    Assert.assertEquals("0", resumed.fetch().getId());
+    Assert.assertEquals("2", resumed.fetch().getId());
+    resumed.close();
+  }
+
+  @Test
+  public void testConcurrentProducersNeverGoOverCapacity() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100, false);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<Integer>> producers = new ArrayList<>();
+
+    for (int p = 0; p < 4; p++) {
+      final int producer = p;
+      producers.add(executor.submit(() -> {
+        int added = 0;
+
+        for (int i = 0; i < 100; i++) {
+          if (queue.add(createOrder(producer * 100 + i))) {
+            added++;
+          }
+        }
+
+        return added;
+      }));
+    }
+
+    int added = 0;
+
+    for (final Future<Integer> producer : producers) {
+      added += producer.get();
+    }
+
+    executor.shutdown();
+    Assert.assertEquals(100, added);
+    Assert.assertEquals(100, queue.size());
+    queue.close();
+  }
+
+  @Test
+  public void testConcurrentProducersAndConsumersSeeEveryOrderOnce() throws Exception {
+    final SegmentedLogQueue queue = new SegmentedLogQueue(directory, SEGMENT_SIZE, 100_000, false);
+    final int producers = 2;
+    final int ordersPerProducer = 2000;
+    final Set<String> fetched = ConcurrentHashMap.newKeySet();
+    final CountDownLatch done = new CountDownLatch(producers * ordersPerProducer);
+    final ExecutorService executor = Executors.newFixedThreadPool(producers + 2);
+    final List<Future<?>> workers = new ArrayList<>();
+
+    for (int c = 0; c < 2; c++) {
+      workers.add(executor.submit(() -> {
+        while (done.getCount() > 0) {
+          for (final Order order : queue.fetchBatch(16, 10)) {
+            Assert.assertTrue(fetched.add(order.getId()));
+            done.countDown();
+          }
+        }
+
+        return null;
+      }));
+    }
+
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      workers.add(executor.submit(() -> {
+        for (int i = 0; i < ordersPerProducer; i++) {
+          Assert.assertTrue(queue.add(createOrder(producer * ordersPerProducer + i)));
+        }
+      }));
+    }
+
+    Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+    // Rethrows the assertion errors of the workers
+    for (final Future<?> worker : workers) {
+      worker.get();
+    }
+
+    Assert.assertEquals(producers * ordersPerProducer, fetched.size());
+    queue.close();
+  }
+
+  private static Order createOrder(final int id) {
+    return new Order(String.valueOf(id), "order", Temp.HOT, 100, 0.5f);
+  }
+
+  private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+
+    Assert.assertTrue(condition.getAsBoolean());
+  }
+}
@@ -3,8 +3,16 @@ package common;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -57,20 +65,43 @@ public class ShelfManagerTest {
   }
 
   @Test
-  public void testAddOrderToTheRightShelveAfterBeingFull() {
+  public void testRemoveOrderMovesOverflowOrderToTheFreedSlot() throws InterruptedException {
     // Fill the Hot shelf which will overflow to Overflow shelf which will get filled
     final List<Order> orders = createAndAddRandomOrders(Temp.HOT.getCapacity() + Temp.ANY.getCapacity(), Temp.HOT, "orders");
 
     final ShelvesManager manager = ShelvesManager.getInstance();
+    final Shelf hotShelf = findShelf(Temp.HOT);
+    final Shelf overflowShelf = findShelf(Temp.ANY);
     Assert.assertTrue(manager.removeOrder(orders.get(0)));
 
-    final Order order = new Order(String.valueOf(100), "newOrder-100", Temp.HOT, 100, 0.5f);
+    // The rebalancer moves the oldest overflow order to the freed slot
+    final Order oldestOnOverflow = orders.get(Temp.HOT.getCapacity());
+    waitFor(() -> hotShelf.hasOrder(oldestOnOverflow));
+
+    Assert.assertEquals(Temp.HOT.getCapacity(), hotShelf.getOrdersCount());
+    Assert.assertFalse(overflowShelf.hasOrder(oldestOnOverflow));
+    // One move, done: removals that miss an order don't wait for the shelf locks
+    Assert.assertEquals(2, manager.getMoveSequence(Temp.HOT));
+    Assert.assertFalse(ShelvesManager.isMoving(manager.getMoveSequence(Temp.HOT)));
 
+    final Order order = new Order(String.valueOf(100), "newOrder-100", Temp.HOT, 100, 0.5f);
     Optional<Shelf> shelf = manager.addOrder(order);
 
     Assert.assertTrue(shelf.isPresent());
-    Assert.assertEquals(Temp.HOT.getShelfName(), shelf.get().getName());
-    Assert.assertEquals(Temp.HOT, shelf.get().getTemperature());
+    Assert.assertEquals(Temp.ANY.getShelfName(), shelf.get().getName());
+    Assert.assertEquals(Temp.ANY, shelf.get().getTemperature());
+  }
+
+  @Test
+  public void testRebalanceMovesOverflowOrdersOnlyWhileTheShelfHasRoom() {
+    final ShelvesManager manager = ShelvesManager.getInstance();
+    final ShelvesManager.OverflowRebalancer rebalancer = manager.new OverflowRebalancer();
+    createAndAddRandomOrders(Temp.COLD.getCapacity() + 3, Temp.COLD, "rebalance");
+
+    // Cold shelf is full, nothing to move
+    Assert.assertEquals(0, rebalancer.rebalance(Temp.COLD));
+    Assert.assertEquals(0, rebalancer.rebalance(Temp.HOT));
+    Assert.assertEquals(3, findShelf(Temp.ANY).getOrdersCount());
   }
 
   @Test
@@ -127,6 +158,174 @@ public class ShelfManagerTest {
     Assert.assertFalse(shelf.get().hasOrder(oldest));
   }
 
+  @Test
+  public void testAddOrdersPlacesAWholeBatch() {
+    final List<Order> batch = new ArrayList<>();
+
+    // One more hot order than the hot shelf can take, mixed with other temps
+    for (int i = 1; i <= Temp.HOT.getCapacity() + 1; i++) {
+      batch.add(new Order("batchHot - " + i, "testOrder-" + i, Temp.HOT, i * 100, 0.5f));
+      batch.add(new Order("batchCold - " + i, "testOrder-" + i, Temp.COLD, i * 100, 0.5f));
+    }
+
+    final Shelf[] shelves = ShelvesManager.getInstance().addOrders(batch);
+
+    Assert.assertEquals(batch.size(), shelves.length);
+    int overflowCount = 0;
+
+    for (int i = 0; i < shelves.length; i++) {
+      Assert.assertNotNull(shelves[i]);
+      Assert.assertTrue(shelves[i].hasOrder(batch.get(i)));
+      overflowCount += shelves[i].getTemperature() == Temp.ANY ? 1 : 0;
+    }
+
+    // The extra hot order and the extra cold order
+    Assert.assertEquals(2, overflowCount);
+  }
+
+  @Test
+  public void testRemoveOrderFindsOrderOnOverflowShelf() {
+    createAndAddRandomOrders(Temp.COLD.getCapacity(), Temp.COLD, "removeCold");
+
+    final ShelvesManager manager = ShelvesManager.getInstance();
+    final Order order = new Order("100", "testOrder", Temp.COLD, 100, 0.5f);
+    final Optional<Shelf> shelf = manager.addOrder(order);
+
+    Assert.assertTrue(shelf.isPresent());
+    Assert.assertEquals(Temp.ANY, shelf.get().getTemperature());
+    Assert.assertTrue(manager.removeOrder(order));
+    Assert.assertFalse(shelf.get().hasOrder(order));
+    Assert.assertFalse(manager.removeOrder(order));
+  }
+
+  @Test
+  public void testCourierArrivalSetAfterPlacementChangesTheEvictedOrder() {
+    System.setProperty(ServerProperties.overflowEvictionPolicy.getKey(), EvictionPolicy.LEAST_LIKELY_TO_SURVIVE.name());
+
+    try {
+      final ShelvesManager manager = ShelvesManager.getInstance();
+      final Shelf overflowShelf = manager.getShelves().stream().filter(shelf -> shelf.getTemperature() == Temp.ANY).findFirst().get();
+      createAndAddRandomOrders(Temp.HOT.getCapacity(), Temp.HOT, "hot");
+      final List<Order> overflowOrders = new ArrayList<>();
+
+      // Same life everywhere, without a courier arrival they only differ by id
+      for (int i = 0; i < Temp.ANY.getCapacity(); i++) {
+        final Order order = new Order(String.format("overflow-%02d", i), "testOrder", Temp.HOT, 300, 0.5f);
+        Assert.assertEquals(overflowShelf, manager.addOrder(order).get());
+        overflowOrders.add(order);
+      }
+
+      // Placed already, its courier shows up long after it expired
+      final Order late = overflowOrders.get(overflowOrders.size() - 1);
+      manager.setCourierArrivalTimeStamp(late, late.getExpiryTimeStamp() + TimeUnit.MINUTES.toMillis(10));
+
+      Assert.assertTrue(manager.addOrder(new Order("new", "testOrder", Temp.HOT, 300, 0.5f)).isPresent());
+      Assert.assertFalse(overflowShelf.hasOrder(late));
+      Assert.assertTrue(overflowShelf.hasOrder(overflowOrders.get(0)));
+    } finally {
+      System.clearProperty(ServerProperties.overflowEvictionPolicy.getKey());
+    }
+  }
+
+  @Test
+  public void testResetStopsTheBackgroundThreads() {
+    ShelvesManager.getInstance();
+    Assert.assertEquals(2, countBackgroundThreads());
+
+    ShelvesManager.reset();
+
+    Assert.assertEquals(0, countBackgroundThreads());
+  }
+
+  @Test
+  public void testConcurrentAddAndRemoveNeverLosesOrDuplicatesOrders() throws InterruptedException {
+    final ShelvesManager manager = ShelvesManager.getInstance();
+    final int threads = 4;
+    final int ordersPerThread = 2000;
+    final Set<Order> placed = ConcurrentHashMap.newKeySet();
+    final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+    for (int i = 0; i < threads; i++) {
+      final int thread = i;
+      executorService.execute(() -> {
+        final List<Order> mine = new ArrayList<>();
+
+        for (int j = 0; j < ordersPerThread; j++) {
+          // Every thread places all the temps so the home shelves and overflow keep filling up and moving orders
+          final Temp temp = Temp.values()[j % 3];
+          final Order order = new Order(thread + "-" + j, "testOrder-" + j, temp, 1000, 0.5f);
+
+          if (manager.addOrder(order).isPresent()) {
+            placed.add(order);
+            mine.add(order);
+          }
+
+          // Pick up the order placed a few orders ago, it may be on its shelf or on overflow (or discarded)
+          if (mine.size() > 8) {
+            manager.removeOrder(mine.remove(0));
+          }
+        }
+      });
+    }
+
+    executorService.shutdown();
+    Assert.assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+    // No order is on two shelves at once and the counts match the shelves content
+    final Set<Order> onShelves = new HashSet<>();
+    int count = 0;
+
+    for (final Shelf shelf : manager.getShelves()) {
+      Assert.assertTrue(shelf.getOrdersCount() <= shelf.getCapacity());
+      Assert.assertEquals(shelf.getName(), shelf.getOrdersCount(), countOrders(shelf));
+      count += shelf.getOrdersCount();
+
+      for (Iterator<Order> it = shelf.getOrdersIterator(); it.hasNext(); ) {
+        final Order order = it.next();
+        Assert.assertTrue(placed.contains(order));
+        Assert.assertTrue(onShelves.add(order));
+      }
+    }
+
+    Assert.assertEquals(count, onShelves.size());
+  }
+
+  private static Shelf findShelf(final Temp temp) {
+    for (final Shelf shelf : ShelvesManager.getInstance().getShelves()) {
+      if (shelf.getTemperature() == temp) {
+        return shelf;
+      }
+    }
+
+    throw new IllegalArgumentException(temp.name());
+  }
+
+  private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+
+    Assert.assertTrue(condition.getAsBoolean());
+  }
+
+  private static int countOrders(final Shelf shelf) {
+    int count = 0;
+
+    for (Iterator<Order> it = shelf.getOrdersIterator(); it.hasNext(); it.next()) {
+      count++;
+    }
+
+    return count;
+  }
+
+  private static long countBackgroundThreads() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.isAlive() && (thread.getName().equals("OrdersGarbageCollector") || thread.getName().equals("OverflowRebalancer")))
+        .count();
+  }
+
   private List<Order> createAndAddRandomOrders(int count, Temp temp, String idPrefix) {
     final List<Order> orders = new ArrayList<>();
 
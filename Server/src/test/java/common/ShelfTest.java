@@ -0,0 +1,151 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShelfTest {
+
+  @Test
+  public void testRemoveExpiredOrdersOnlyRemovesExpiredOrders() {
+    final Shelf shelf = new Shelf("test", 10, Temp.HOT);
+    // decayRate 1, shelfLife 10 -> expires after 10 seconds, shelfLife 100 -> 100 seconds
+    final Order shortLived = new Order("short", "shortLived", Temp.HOT, 10, 1f);
+    final Order longLived = new Order("long", "longLived", Temp.HOT, 100, 1f);
+
+    Assert.assertTrue(shelf.addOrder(longLived));
+    Assert.assertTrue(shelf.addOrder(shortLived));
+
+    final long now = shortLived.getCreateTimeStamp() + TimeUnit.SECONDS.toMillis(10);
+    final List<Order> expired = shelf.removeExpiredOrders(now);
+
+    Assert.assertEquals(1, expired.size());
+    Assert.assertEquals(shortLived, expired.get(0));
+    Assert.assertFalse(shelf.hasOrder(shortLived));
+    Assert.assertTrue(shelf.hasOrder(longLived));
+  }
+
+  @Test
+  public void testRemoveListenerIsCalledOnEveryRemoval() {
+    final Shelf shelf = new Shelf("test", 10, Temp.HOT);
+    final List<Order> removed = new ArrayList<>();
+    shelf.setRemoveListener((from, order) -> {
+      Assert.assertSame(shelf, from);
+      // The slot is already released when the listener runs
+      Assert.assertFalse(shelf.hasOrder(order));
+      removed.add(order);
+    });
+
+    final Order pickedUp = new Order("1", "pickedUp", Temp.HOT, 100, 1f);
+    final Order expiring = new Order("2", "expiring", Temp.HOT, 10, 1f);
+    Assert.assertTrue(shelf.addOrder(pickedUp));
+    Assert.assertTrue(shelf.addOrder(expiring));
+
+    Assert.assertTrue(shelf.removeOrder(pickedUp));
+    Assert.assertFalse(shelf.removeOrder(pickedUp));
+    shelf.removeExpiredOrders(expiring.getCreateTimeStamp() + TimeUnit.SECONDS.toMillis(10));
+
+    Assert.assertEquals(Arrays.asList(pickedUp, expiring), removed);
+    Assert.assertEquals(0, shelf.getOrdersCount());
+  }
+
+  @Test
+  public void testEvictOrderRemovesTheOldestOrderByDefault() throws InterruptedException {
+    final Shelf shelf = new Shelf("test", 10, Temp.ANY);
+    final Order oldest = new Order("1", "oldest", Temp.COLD, 100, 0.5f);
+    Thread.sleep(2);
+    final Order newest = new Order("2", "newest", Temp.COLD, 100, 0.5f);
+
+    Assert.assertTrue(shelf.addOrder(newest));
+    Assert.assertTrue(shelf.addOrder(oldest));
+
+    final Optional<Order> removed = shelf.evictOrder();
+
+    Assert.assertTrue(removed.isPresent());
+    Assert.assertEquals(oldest, removed.get());
+    Assert.assertFalse(shelf.hasOrder(oldest));
+    Assert.assertTrue(shelf.hasOrder(newest));
+    Assert.assertFalse(new Shelf("empty", 1, Temp.ANY).evictOrder().isPresent());
+  }
+
+  @Test
+  public void testEvictOrderFollowsTheEvictionPolicy() throws InterruptedException {
+    final Shelf shelf = new Shelf("test", 10, Temp.ANY, EvictionPolicy.SOONEST_EXPIRY);
+    final Order oldest = new Order("1", "oldest", Temp.COLD, 100, 0.5f);
+    Thread.sleep(2);
+    final Order expiresFirst = new Order("2", "expiresFirst", Temp.COLD, 10, 0.5f);
+
+    Assert.assertTrue(shelf.addOrder(oldest));
+    Assert.assertTrue(shelf.addOrder(expiresFirst));
+
+    Assert.assertEquals(expiresFirst, shelf.evictOrder().get());
+    Assert.assertEquals(oldest, shelf.evictOrder().get());
+    Assert.assertFalse(shelf.evictOrder().isPresent());
+    Assert.assertEquals(0, shelf.getOrdersCount());
+  }
+
+  @Test
+  public void testRemovedOrderFreesCapacity() {
+    final Shelf shelf = new Shelf("test", 1, Temp.COLD);
+    final Order first = new Order("1", "first", Temp.COLD, 100, 0.5f);
+    final Order second = new Order("2", "second", Temp.COLD, 100, 0.5f);
+
+    Assert.assertTrue(shelf.addOrder(first));
+    Assert.assertFalse(shelf.addOrder(second));
+    Assert.assertTrue(shelf.removeOrder(first));
+    Assert.assertFalse(shelf.removeOrder(first));
+    Assert.assertTrue(shelf.addOrder(second));
+  }
+
+  @Test
+  public void testConcurrentAddAndRemoveNeverOvershootCapacity() throws InterruptedException, ExecutionException {
+    final int capacity = 5;
+    final int threadCount = 8;
+    final Shelf shelf = new Shelf("test", capacity, Temp.HOT);
+    final Order order = new Order("shared", "shared", Temp.HOT, 100, 0.5f);
+    final AtomicInteger added = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    final List<Future<Void>> workers = new ArrayList<>();
+
+    for (int t = 0; t < threadCount; t++) {
+      final int threadId = t;
+      workers.add(executorService.submit(() -> {
+        start.await();
+        for (int i = 0; i < 1000; i++) {
+          if (shelf.addOrder(new Order(threadId + "-" + i, "order", Temp.HOT, 100, 0.5f))) {
+            added.incrementAndGet();
+          }
+          Assert.assertTrue(shelf.getOrdersCount() <= capacity);
+          // Everybody races on adding/removing the same order
+          shelf.addOrder(order);
+          shelf.removeOrder(order);
+        }
+        return null;
+      }));
+    }
+
+    start.countDown();
+    executorService.shutdown();
+    Assert.assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+    // Rethrows the assertion failures and exceptions of the workers
+    for (final Future<Void> worker : workers) {
+      worker.get();
+    }
+
+    Assert.assertEquals(capacity, added.get());
+    Assert.assertEquals(capacity, shelf.getOrdersCount());
+    Assert.assertFalse(shelf.hasOrder(order));
+  }
+}
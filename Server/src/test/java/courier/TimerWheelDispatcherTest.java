@@ -0,0 +1,112 @@
+package courier;
+
+import common.GlobalStats;
+import common.Order;
+import common.PoolStats;
+import common.SegmentedLogQueue;
+import common.Shelf;
+import common.ShelvesManager;
+import common.Temp;
+import io.netty.util.HashedWheelTimer;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import mocks.MockQueue;
+import org.junit.Assert;
+import org.junit.Test;
+import processor.OrderProcessor;
+
+public class TimerWheelDispatcherTest {
+  @Test
+  public void testTimerWheelDispatcherPicksUpOrderOnceCourierArrives() throws InterruptedException {
+    ShelvesManager.reset();
+
+    final Order order = new Order("4321", "Order1", Temp.COLD, 100, 0.1f);
+    final Optional<Shelf> shelf = ShelvesManager.getInstance().addOrder(order);
+    Assert.assertTrue(shelf.isPresent());
+
+    final MockQueue queue = new MockQueue();
+    queue.add(order);
+
+    final HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+
+    try {
+      final PoolStats poolStats = new PoolStats("dispatcher", 1);
+      final TimerWheelDispatcher dispatcher = new TimerWheelDispatcher(queue, timer, () -> 50L, poolStats);
+      dispatcher.run(() -> queue.size() != 0);
+
+      // Dispatcher returns right away, courier did not arrive yet
+      Assert.assertTrue(shelf.get().hasOrder(order));
+      Assert.assertEquals(1, poolStats.getActiveCount());
+
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+      while ((shelf.get().hasOrder(order) || poolStats.getActiveCount() != 0) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      Assert.assertFalse(shelf.get().hasOrder(order));
+      Assert.assertEquals(0, poolStats.getActiveCount());
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void testOrdersThroughSegmentedLogQueuesKeepTheirLatencyStats() throws Exception {
+    ShelvesManager.reset();
+
+    final File directory = Files.createTempDirectory("log-queues").toFile();
+    final SegmentedLogQueue orderQueue = new SegmentedLogQueue(new File(directory, "orders"), 4096, 100, false);
+    final SegmentedLogQueue dispatcherQueue = new SegmentedLogQueue(new File(directory, "dispatcher"), 4096, 100, false);
+    final HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    final GlobalStats stats = GlobalStats.getInstance();
+    stats.getEnqueueToShelvedLatency().flush();
+    stats.getShelvedToPickedUpLatency().flush();
+    final long shelvedCount = stats.getEnqueueToShelvedLatency().getTotalCount();
+    final long pickedUpCount = stats.getShelvedToPickedUpLatency().getTotalCount();
+
+    try {
+      final Order order = new Order("8765", "Order1", Temp.HOT, 100, 0.1f);
+      order.setEnqueuedNanoTime(System.nanoTime());
+      Assert.assertTrue(orderQueue.add(order));
+      Assert.assertTrue(dispatcherQueue.add(order));
+
+      new OrderProcessor(orderQueue).run(() -> orderQueue.size() != 0);
+      final Shelf shelf = ShelvesManager.getInstance().getShelves().stream().filter(s -> s.hasOrder(order)).findFirst().get();
+
+      final PoolStats poolStats = new PoolStats("dispatcher", 1);
+      new TimerWheelDispatcher(dispatcherQueue, timer, () -> 50L, poolStats).run(() -> dispatcherQueue.size() != 0);
+
+      // Each consumer decoded its own instance, the ETA is set on the one sitting on the shelf for the eviction policies
+      final Order shelved = shelf.getOrder(order);
+      Assert.assertNotSame(order, shelved);
+      Assert.assertNotEquals(0, shelved.getCourierArrivalTimeStamp());
+
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+      while ((shelf.hasOrder(order) || poolStats.getActiveCount() != 0) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      Assert.assertFalse(shelf.hasOrder(order));
+      stats.getEnqueueToShelvedLatency().flush();
+      stats.getShelvedToPickedUpLatency().flush();
+      Assert.assertEquals(shelvedCount + 1, stats.getEnqueueToShelvedLatency().getTotalCount());
+      Assert.assertEquals(pickedUpCount + 1, stats.getShelvedToPickedUpLatency().getTotalCount());
+    } finally {
+      timer.stop();
+      orderQueue.close();
+      dispatcherQueue.close();
+
+      for (final File queueDirectory : directory.listFiles()) {
+        for (final File file : queueDirectory.listFiles()) {
+          file.delete();
+        }
+
+        queueDirectory.delete();
+      }
+
+      directory.delete();
+    }
+  }
+}
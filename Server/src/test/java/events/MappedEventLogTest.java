@@ -0,0 +1,147 @@
+package events;
+
+import common.Order;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedEventLogTest {
+  private File directory;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = Files.createTempDirectory("events").toFile();
+  }
+
+  @After
+  public void cleanUp() {
+    for (final File file : MappedEventLog.listSegments(directory)) {
+      file.delete();
+    }
+
+    directory.delete();
+  }
+
+  @Test
+  public void testRecordedEventsAreReadBackInOrder() throws IOException {
+    final Order order = new Order("9012736d-777b-4f5b-a12d-982e302fefa1", "Mixed Greens", Temp.COLD, 252, 0.26f);
+    final MappedEventLog eventLog = new MappedEventLog(directory, 4096, 16, 4);
+
+    eventLog.record(LifecycleEvent.RECEIVED, order);
+    eventLog.record(LifecycleEvent.SHELVED, order, Temp.ANY);
+    eventLog.record(LifecycleEvent.MOVED, order, Temp.COLD);
+    eventLog.record(LifecycleEvent.PICKED_UP, order);
+    eventLog.close();
+
+    final List<EventRecord> records = read();
+
+    Assert.assertEquals(4, records.size());
+    Assert.assertEquals(LifecycleEvent.RECEIVED, records.get(0).getEvent());
+    Assert.assertNull(records.get(0).getShelf());
+    Assert.assertEquals(LifecycleEvent.SHELVED, records.get(1).getEvent());
+    Assert.assertEquals(Temp.ANY, records.get(1).getShelf());
+    Assert.assertEquals(LifecycleEvent.MOVED, records.get(2).getEvent());
+    Assert.assertEquals(Temp.COLD, records.get(2).getShelf());
+    Assert.assertEquals(LifecycleEvent.PICKED_UP, records.get(3).getEvent());
+
+    for (final EventRecord record : records) {
+      Assert.assertEquals(order.getId(), record.getOrderId());
+      Assert.assertEquals(1f, record.getLife(), 0.01f);
+      Assert.assertTrue(record.getTimeStamp() >= order.getCreateTimeStamp());
+    }
+
+    Assert.assertTrue(records.get(1).toString().contains("SHELVED 9012736d-777b-4f5b-a12d-982e302fefa1 shelf=ANY life=1.000"));
+  }
+
+  @Test
+  public void testLongAndNonAsciiIdsAreTruncatedAndReplaced() throws IOException {
+    final StringBuilder id = new StringBuilder("B\u00e4n\u00e4n\u00e4-");
+
+    while (id.length() < 2 * MappedEventLog.MAX_ID_LENGTH) {
+      id.append('x');
+    }
+
+    final MappedEventLog eventLog = new MappedEventLog(directory, 4096, 16, 4);
+    eventLog.record(LifecycleEvent.EXPIRED, new Order(id.toString(), "Banana Split", Temp.FROZEN, 20, 0.63f), Temp.FROZEN);
+    eventLog.close();
+
+    final List<EventRecord> records = read();
+
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals(MappedEventLog.MAX_ID_LENGTH, records.get(0).getOrderId().length());
+    Assert.assertTrue(records.get(0).getOrderId().startsWith("B?n?n?-xxx"));
+  }
+
+  @Test
+  public void testEventsAreDroppedWhenTheRingIsFull() throws IOException {
+    final Order order = new Order("1", "Pizza", Temp.HOT, 300, 0.45f);
+    // The recorder is not started, nothing frees the ring until close
+    final MappedEventLog eventLog = new MappedEventLog(directory, 4096, 3, 4, false);
+
+    for (int i = 0; i < 6; i++) {
+      eventLog.record(LifecycleEvent.RECEIVED, order);
+    }
+
+    Assert.assertEquals(2, eventLog.getDroppedCount());
+    eventLog.close();
+
+    Assert.assertEquals(4, read().size());
+  }
+
+  @Test
+  public void testSegmentsRollAndOnlyTheLastOnesAreKept() throws IOException {
+    final Order order = new Order("1", "Pizza", Temp.HOT, 300, 0.45f);
+    // Header and 3 records per segment
+    final MappedEventLog eventLog = new MappedEventLog(directory, 4 * MappedEventLog.RECORD_SIZE, 4, 2, false);
+
+    for (int i = 0; i < 4; i++) {
+      eventLog.record(LifecycleEvent.RECEIVED, order);
+    }
+
+    eventLog.close();
+
+    final List<File> segments = MappedEventLog.listSegments(directory);
+    Assert.assertEquals(2, segments.size());
+    Assert.assertEquals(4, read().size());
+
+    // A new run starts a new segment after the ones left by the previous run
+    new MappedEventLog(directory, 4 * MappedEventLog.RECORD_SIZE, 4, 2, false).close();
+
+    Assert.assertEquals(segments.get(1), MappedEventLog.listSegments(directory).get(0));
+    Assert.assertEquals(1, read().size());
+  }
+
+  @Test
+  public void testReadingStopsAtACorruptRecord() throws IOException {
+    final Order order = new Order("1", "Pizza", Temp.HOT, 300, 0.45f);
+    final MappedEventLog eventLog = new MappedEventLog(directory, 4096, 16, 4, false);
+
+    for (int i = 0; i < 3; i++) {
+      eventLog.record(LifecycleEvent.RECEIVED, order);
+    }
+
+    eventLog.close();
+
+    // Id length of the second record over the maximum, read as a negative byte before
+    try (final RandomAccessFile raf = new RandomAccessFile(MappedEventLog.listSegments(directory).get(0), "rw")) {
+      raf.seek(2 * MappedEventLog.RECORD_SIZE + 14);
+      raf.write(0xC8);
+    }
+
+    Assert.assertEquals(1, read().size());
+  }
+
+  private List<EventRecord> read() throws IOException {
+    final List<EventRecord> records = new ArrayList<>();
+    MappedEventLog.read(MappedEventLog.listSegments(directory), records::add);
+    return records;
+  }
+}
@@ -0,0 +1,40 @@
+package journal;
+
+import common.Order;
+import common.Temp;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JournalRecoveryTest {
+
+  @Test
+  public void testRecoveryKeepsOnlyLiveOrdersWithTheirLastShelf() {
+    final Order queued = new Order("queued", "order", Temp.HOT, 100, 0.5f);
+    final Order moved = new Order("moved", "order", Temp.COLD, 100, 0.5f);
+    final Order pickedUp = new Order("pickedUp", "order", Temp.FROZEN, 100, 0.5f);
+    final Order expired = new Order("expired", "order", Temp.HOT, 100, 0.5f);
+    final JournalRecovery recovery = new JournalRecovery();
+
+    long lsn = 0;
+    for (final Order order : new Order[]{queued, moved, pickedUp, expired}) {
+      recovery.apply(new JournalRecord(++lsn, JournalEvent.ACCEPTED, order.getId(), order, null));
+    }
+
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.SHELVED, "moved", null, Temp.ANY));
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.SHELVED, "pickedUp", null, Temp.FROZEN));
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.SHELVED, "moved", null, Temp.COLD));
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.PICKED_UP, "pickedUp", null, null));
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.EXPIRED, "expired", null, null));
+    // Shelved after its pickup got journaled, must not come back
+    recovery.apply(new JournalRecord(++lsn, JournalEvent.SHELVED, "pickedUp", null, Temp.FROZEN));
+
+    final List<Order> orders = recovery.getOrders();
+    Assert.assertEquals(2, orders.size());
+    Assert.assertEquals(queued, orders.get(0));
+    Assert.assertEquals(moved, orders.get(1));
+    Assert.assertNull(recovery.getShelf(queued));
+    Assert.assertEquals(Temp.COLD, recovery.getShelf(moved));
+    Assert.assertEquals(lsn, recovery.getLastLsn());
+  }
+}
@@ -0,0 +1,180 @@
+package journal;
+
+import common.Order;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedJournalTest {
+  private File directory;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = Files.createTempDirectory("journal").toFile();
+  }
+
+  @After
+  public void cleanUp() {
+    for (final File file : MappedJournal.listSegments(directory)) {
+      file.delete();
+    }
+
+    directory.delete();
+  }
+
+  @Test
+  public void testAppendedEventsAreReadBackInOrder() throws IOException {
+    final Order order = new Order("1", "B\u00e4n\u00e4n\u00e4 Split", Temp.FROZEN, 20, 0.63f, 1234L);
+    final MappedJournal journal = new MappedJournal(directory, 1, 1024, JournalMode.ASYNC, 10);
+
+    Assert.assertEquals(1, journal.append(JournalEvent.ACCEPTED, order));
+    Assert.assertEquals(2, journal.append(JournalEvent.SHELVED, order, Temp.ANY));
+    Assert.assertEquals(3, journal.append(JournalEvent.PICKED_UP, order));
+    journal.close();
+
+    final List<JournalRecord> records = new ArrayList<>();
+    Assert.assertEquals(3, MappedJournal.read(directory, records::add));
+
+    Assert.assertEquals(3, records.size());
+    Assert.assertEquals(JournalEvent.ACCEPTED, records.get(0).getEvent());
+    final Order read = records.get(0).getOrder();
+    Assert.assertEquals(order, read);
+    Assert.assertEquals("B\u00e4n\u00e4n\u00e4 Split", read.getName());
+    Assert.assertEquals(Temp.FROZEN, read.getTemp());
+    Assert.assertEquals(20, read.getShelfLife());
+    Assert.assertEquals(0.63f, read.getDecayRate(), 0f);
+    Assert.assertEquals(1234L, read.getCreateTimeStamp());
+
+    Assert.assertEquals(JournalEvent.SHELVED, records.get(1).getEvent());
+    Assert.assertEquals(Temp.ANY, records.get(1).getShelf());
+    Assert.assertEquals(JournalEvent.PICKED_UP, records.get(2).getEvent());
+    Assert.assertEquals("1", records.get(2).getOrderId());
+    Assert.assertNull(records.get(2).getShelf());
+  }
+
+  @Test
+  public void testJournalRollsToANewSegmentWhenFull() throws IOException {
+    final MappedJournal journal = new MappedJournal(directory, 1, 128, JournalMode.ASYNC, 10);
+
+    for (int i = 0; i < 10; i++) {
+      journal.append(JournalEvent.ACCEPTED, new Order("order-" + i, "order", Temp.HOT, 100, 0.5f));
+    }
+
+    journal.close();
+
+    final List<File> segments = MappedJournal.listSegments(directory);
+    Assert.assertTrue(segments.size() > 1);
+    Assert.assertTrue(segments.get(0).getName().endsWith("00000000000000000001.log"));
+
+    final List<JournalRecord> records = new ArrayList<>();
+    Assert.assertEquals(10, MappedJournal.read(directory, records::add));
+    Assert.assertEquals("order-9", records.get(9).getOrderId());
+  }
+
+  @Test
+  public void testRollsTakeTheSegmentPreallocatedByTheCommitter() throws Exception {
+    final File spare = new File(directory, MappedJournal.SPARE_SEGMENT);
+    final MappedJournal journal = new MappedJournal(directory, 1, 1024, JournalMode.GROUP_COMMIT, 1000);
+    waitFor(spare::exists);
+
+    final long first = journal.append(JournalEvent.ACCEPTED, new Order("1", "order", Temp.HOT, 100, 0.5f));
+    Assert.assertEquals(first, journal.rollSegment());
+    final long second = journal.append(JournalEvent.ACCEPTED, new Order("2", "order", Temp.HOT, 100, 0.5f));
+
+    // The full segment is forced along with the current one
+    journal.whenDurable(second).get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(second, journal.getDurableLsn());
+
+    // Renamed into the second segment, then preallocated again
+    waitFor(spare::exists);
+    journal.close();
+
+    Assert.assertFalse(spare.exists());
+    final List<File> segments = MappedJournal.listSegments(directory);
+    Assert.assertEquals(2, segments.size());
+    Assert.assertEquals(second, MappedJournal.getFirstLsn(segments.get(1)));
+    Assert.assertEquals(second, MappedJournal.read(directory, record -> { }));
+  }
+
+  @Test
+  public void testReadStopsAtACorruptedRecord() throws IOException {
+    final MappedJournal journal = new MappedJournal(directory, 1, 1024, JournalMode.ASYNC, 10);
+    journal.append(JournalEvent.ACCEPTED, new Order("1", "order", Temp.HOT, 100, 0.5f));
+    journal.append(JournalEvent.ACCEPTED, new Order("2", "order", Temp.HOT, 100, 0.5f));
+    journal.close();
+
+    // Flip the last byte of the second record, as a write torn by a crash would leave it
+    final File segment = MappedJournal.listSegments(directory).get(0);
+
+    try (final RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(findEndOfRecords(file) - 1);
+      final int last = file.read();
+      file.seek(file.getFilePointer() - 1);
+      file.write(last ^ 0xFF);
+    }
+
+    final List<JournalRecord> records = new ArrayList<>();
+    Assert.assertEquals(1, MappedJournal.read(directory, records::add));
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("1", records.get(0).getOrderId());
+  }
+
+  @Test
+  public void testGroupCommitCompletesOnceOnDisk() throws Exception {
+    final MappedJournal journal = new MappedJournal(directory, 1, 1024, JournalMode.GROUP_COMMIT, 1000);
+    final long first = journal.append(JournalEvent.ACCEPTED, new Order("1", "order", Temp.HOT, 100, 0.5f));
+    final long second = journal.append(JournalEvent.ACCEPTED, new Order("2", "order", Temp.HOT, 100, 0.5f));
+
+    journal.whenDurable(second).get(5, TimeUnit.SECONDS);
+
+    // Covered by the same flush
+    Assert.assertTrue(journal.whenDurable(first).isDone());
+    Assert.assertEquals(second, journal.getDurableLsn());
+    journal.close();
+  }
+
+  @Test
+  public void testAsyncModeNeverWaits() throws IOException {
+    final MappedJournal journal = new MappedJournal(directory, 1, 1024, JournalMode.ASYNC, 1000);
+    final long lsn = journal.append(JournalEvent.ACCEPTED, new Order("1", "order", Temp.HOT, 100, 0.5f));
+
+    Assert.assertTrue(journal.whenDurable(lsn).isDone());
+    journal.close();
+  }
+
+  private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+
+    Assert.assertTrue(condition.getAsBoolean());
+  }
+
+  /**
+   * @return offset right after the last record, records are [int length][int crc][body]
+   */
+  private static long findEndOfRecords(final RandomAccessFile file) throws IOException {
+    long offset = 0;
+    file.seek(0);
+    int length;
+
+    while ((length = file.readInt()) > 0) {
+      offset += 8 + length;
+      file.seek(offset);
+    }
+
+    return offset;
+  }
+}
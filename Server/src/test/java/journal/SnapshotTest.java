@@ -0,0 +1,89 @@
+package journal;
+
+import common.Order;
+import common.Shelf;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotTest {
+  private File directory;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = Files.createTempDirectory("snapshot").toFile();
+  }
+
+  @After
+  public void cleanUp() {
+    final File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (final File file : files) {
+        file.delete();
+      }
+    }
+
+    directory.delete();
+  }
+
+  @Test
+  public void testSnapshotKeepsOrdersShelvesAndDeadlines() throws IOException {
+    final Order queued = new Order("queued", "order", Temp.HOT, 100, 0.5f);
+    final Order shelved = new Order("shelved", "order", Temp.COLD, 100, 0.5f);
+    final Shelf overflowShelf = new Shelf("overflow", 10, Temp.ANY);
+    overflowShelf.addOrder(shelved);
+
+    final JournalRecovery state = new JournalRecovery();
+    state.apply(new JournalRecord(1, JournalEvent.ACCEPTED, "queued", queued, null));
+    state.apply(new JournalRecord(2, JournalEvent.ACCEPTED, "shelved", shelved, null));
+    state.apply(new JournalRecord(3, JournalEvent.SHELVED, "shelved", null, Temp.ANY));
+
+    Snapshot.write(directory, state, Collections.singletonList(overflowShelf));
+    final JournalRecovery loaded = Snapshot.read(directory);
+
+    Assert.assertEquals(3, loaded.getLastLsn());
+    final List<Order> orders = loaded.getOrders();
+    Assert.assertEquals(Arrays.asList(queued, shelved), orders);
+    Assert.assertNull(loaded.getShelf(queued));
+    Assert.assertEquals(Temp.ANY, loaded.getShelf(shelved));
+    Assert.assertEquals(shelved.getCreateTimeStamp(), orders.get(1).getCreateTimeStamp());
+
+    // Decays twice as fast on overflow, the restored order keeps that deadline (rounded up to the second)
+    Assert.assertEquals(shelved.getExpiryTimeStamp(), orders.get(1).getExpiryTimeStamp(), 1000);
+    Assert.assertEquals(queued.getExpiryTimeStamp(), orders.get(0).getExpiryTimeStamp());
+  }
+
+  @Test
+  public void testNoSnapshotMeansEmptyState() throws IOException {
+    final JournalRecovery loaded = Snapshot.read(directory);
+
+    Assert.assertEquals(0, loaded.getLastLsn());
+    Assert.assertTrue(loaded.getOrders().isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptedSnapshotIsRejected() throws IOException {
+    final JournalRecovery state = new JournalRecovery();
+    state.apply(new JournalRecord(1, JournalEvent.ACCEPTED, "1", new Order("1", "order", Temp.HOT, 100, 0.5f), null));
+    Snapshot.write(directory, state, Collections.emptyList());
+
+    try (final RandomAccessFile file = new RandomAccessFile(new File(directory, Snapshot.FILE_NAME), "rw")) {
+      file.seek(30);
+      final int value = file.read();
+      file.seek(30);
+      file.write(value ^ 0xFF);
+    }
+
+    Snapshot.read(directory);
+  }
+}
@@ -0,0 +1,73 @@
+package journal;
+
+import common.Order;
+import common.Shelf;
+import common.Temp;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotterTest {
+  private File directory;
+  private MappedJournal journal;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = Files.createTempDirectory("snapshotter").toFile();
+    journal = new MappedJournal(directory, 1, 4096, JournalMode.ASYNC, 10);
+  }
+
+  @After
+  public void cleanUp() {
+    journal.close();
+    final File[] files = directory.listFiles();
+
+    if (files != null) {
+      for (final File file : files) {
+        file.delete();
+      }
+    }
+
+    directory.delete();
+  }
+
+  @Test
+  public void testSnapshotReplacesTheClosedSegmentsAndRecoveryReplaysTheTail() throws IOException {
+    final Shelf shelf = new Shelf("hot", 10, Temp.HOT);
+    final Snapshotter snapshotter = new Snapshotter(journal, directory, new JournalRecovery(), Collections.singletonList(shelf), 60);
+    final Order pickedUp = new Order("pickedUp", "order", Temp.HOT, 100, 0.5f);
+    final Order shelved = new Order("shelved", "order", Temp.HOT, 100, 0.5f);
+    final Order late = new Order("late", "order", Temp.HOT, 100, 0.5f);
+
+    journal.append(JournalEvent.ACCEPTED, pickedUp);
+    journal.append(JournalEvent.ACCEPTED, shelved);
+    shelf.addOrder(shelved);
+    journal.append(JournalEvent.SHELVED, shelved, Temp.HOT);
+    journal.append(JournalEvent.PICKED_UP, pickedUp);
+
+    Assert.assertTrue(snapshotter.runNow());
+    // Nothing new to snapshot
+    Assert.assertFalse(snapshotter.runNow());
+
+    final List<File> segments = MappedJournal.listSegments(directory);
+    Assert.assertEquals(1, segments.size());
+    Assert.assertEquals(5, MappedJournal.getFirstLsn(segments.get(0)));
+
+    journal.append(JournalEvent.ACCEPTED, late);
+    journal.close();
+
+    final JournalRecovery recovery = JournalRecovery.recover(directory);
+    Assert.assertEquals(5, recovery.getLastLsn());
+    Assert.assertEquals(2, recovery.getOrders().size());
+    Assert.assertEquals(shelved, recovery.getOrders().get(0));
+    Assert.assertEquals(Temp.HOT, recovery.getShelf(shelved));
+    Assert.assertEquals(late, recovery.getOrders().get(1));
+    Assert.assertNull(recovery.getShelf(late));
+  }
+}
@@ -2,7 +2,10 @@ package mocks;
 
 import common.Order;
 import common.Queue;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
 
@@ -33,6 +36,22 @@ public class MockQueue implements Queue {
     return queue.poll();
   }
 
+  @Override
+  public List<Order> fetchBatch(final int max, final long timeoutInMS) {
+    if(fetchFaultInjectorSupplier != null) {
+      final Order order = fetchFaultInjectorSupplier.get();
+      return order == null ? Collections.emptyList() : Collections.singletonList(order);
+    }
+
+    final List<Order> orders = new ArrayList<>();
+
+    while (orders.size() < max && !queue.isEmpty()) {
+      orders.add(queue.poll());
+    }
+
+    return orders;
+  }
+
   @Override
   public boolean add(@Nonnull Order order) {
     if (addFaultInjectorSupplier != null) {
@@ -42,6 +61,7 @@ public class MockQueue implements Queue {
     return queue.add(order);
   }
 
+  @Override
   public int size() {
     return queue.size();
   }
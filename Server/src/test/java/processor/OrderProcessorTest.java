@@ -3,6 +3,8 @@ package processor;
 import common.Order;
 import common.ShelvesManager;
 import common.Temp;
+import java.util.ArrayList;
+import java.util.List;
 import mocks.MockQueue;
 import org.junit.Assert;
 import org.junit.Test;
@@ -21,4 +23,25 @@ public class OrderProcessorTest {
 
     Assert.assertTrue(ShelvesManager.getInstance().removeOrder(order));
   }
+
+  @Test
+  public void testOrderProcessorProcessABatch() {
+    ShelvesManager.reset();
+
+    final MockQueue queue = new MockQueue();
+    final List<Order> orders = new ArrayList<>();
+
+    for (int i = 0; i < 5; i++) {
+      final Order order = new Order("batch-" + i, "Order" + i, i % 2 == 0 ? Temp.HOT : Temp.FROZEN, 100, 0.1f);
+      queue.add(order);
+      orders.add(order);
+    }
+
+    OrderProcessor processor = new OrderProcessor(queue);
+    processor.run(() -> queue.size() != 0);
+
+    for (final Order order : orders) {
+      Assert.assertTrue(ShelvesManager.getInstance().removeOrder(order));
+    }
+  }
 }
@@ -0,0 +1,117 @@
+package protocol;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import common.GlobalStats;
+import common.Order;
+import common.Temp;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import java.util.ArrayList;
+import java.util.List;
+import mocks.MockQueue;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BackpressureTest {
+  @Test
+  public void testPausedChannelsResumeBelowLowWatermark() {
+    final MockQueue orderQueue = new MockQueue();
+    final Backpressure backpressure = new Backpressure(orderQueue, new MockQueue(), 2, 1, 1024);
+    final EmbeddedChannel channel = new EmbeddedChannel();
+
+    orderQueue.add(new Order("1", "McFlury", Temp.FROZEN, 375, 0.4f));
+    orderQueue.add(new Order("2", "McFlury", Temp.FROZEN, 375, 0.4f));
+    Assert.assertTrue(backpressure.isOverloaded());
+
+    backpressure.pause(channel);
+    Assert.assertFalse(channel.config().isAutoRead());
+    Assert.assertEquals(1, backpressure.getPausedChannelsCount());
+
+    // Still over the low watermark
+    backpressure.run();
+    Assert.assertFalse(channel.config().isAutoRead());
+
+    orderQueue.fetch();
+    backpressure.run();
+    Assert.assertTrue(channel.config().isAutoRead());
+    Assert.assertEquals(0, backpressure.getPausedChannelsCount());
+  }
+
+  @Test
+  public void testRequestBudgetIsReleasedWithTheResponse() {
+    final Backpressure backpressure = new Backpressure(new MockQueue(), new MockQueue(), 10, 5, 8);
+    final EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(backpressure));
+
+    channel.writeInbound(createRequest("123456"));
+    Assert.assertEquals(6, backpressure.getInFlightBytes());
+    Assert.assertTrue(channel.config().isAutoRead());
+
+    // Over budget, the channel stops reading
+    channel.writeInbound(createRequest("123"));
+    Assert.assertEquals(9, backpressure.getInFlightBytes());
+    Assert.assertTrue(backpressure.isOverBudget());
+    Assert.assertFalse(channel.config().isAutoRead());
+
+    // Responses release the oldest request first, resuming needs the in-flight bytes under half the budget
+    channel.writeOutbound(new DefaultFullHttpResponse(HTTP_1_1, OK));
+    Assert.assertEquals(3, backpressure.getInFlightBytes());
+
+    backpressure.run();
+    Assert.assertTrue(channel.config().isAutoRead());
+
+    // Pending requests are released when the connection goes away
+    channel.close();
+    Assert.assertEquals(0, backpressure.getInFlightBytes());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testRejectionsAreCountedAndLoggedOncePerInterval() {
+    final Backpressure backpressure = new Backpressure(new MockQueue(), new MockQueue(), 10, 5, 8);
+    final List<String> warnings = new ArrayList<>();
+    final AppenderSkeleton appender = new AppenderSkeleton() {
+      @Override
+      protected void append(final LoggingEvent event) {
+        warnings.add(event.getRenderedMessage());
+      }
+
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public boolean requiresLayout() {
+        return false;
+      }
+    };
+
+    final Logger logger = Logger.getLogger(Backpressure.class);
+    final int rejectedCount = GlobalStats.getInstance().getRejectedRequestsCount().get();
+    logger.addAppender(appender);
+
+    try {
+      for (int i = 0; i < 100; i++) {
+        backpressure.reportRejection(BinaryAckStatus.OVERLOADED);
+      }
+    } finally {
+      logger.removeAppender(appender);
+    }
+
+    Assert.assertEquals(rejectedCount + 100, GlobalStats.getInstance().getRejectedRequestsCount().get());
+    Assert.assertEquals(1, warnings.size());
+    Assert.assertTrue(warnings.get(0).contains("rejected 1 requests since the last warning (last one: OVERLOADED)"));
+  }
+
+  private static FullHttpRequest createRequest(final String body) {
+    return new DefaultFullHttpRequest(HTTP_1_1, HttpMethod.POST, "/", Unpooled.wrappedBuffer(body.getBytes()));
+  }
+}
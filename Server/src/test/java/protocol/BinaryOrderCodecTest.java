@@ -0,0 +1,44 @@
+package protocol;
+
+import common.Order;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryOrderCodecTest {
+
+  @Test
+  public void testOrdersAndAcksRoundTrip() {
+    final List<Order> orders = Arrays.asList(
+        new Order("a8cfcb76-7f24-4420-a5ba-d46dd77bdffd", "Banana Split", Temp.FROZEN, 20, 0.63f),
+        new Order("2ec069e3-576f-48eb-869f-74a540ef840c", "Cr\u00e8me Br\u00fbl\u00e9e", Temp.COLD, 249, 0.3f));
+    final ByteBuf frame = Unpooled.buffer();
+
+    BinaryOrderCodec.encodeOrders(frame, 42, orders);
+    // 6 bytes of header and 27 bytes per order plus the names
+    Assert.assertEquals(6 + 2 * 27 + "Banana Split".length() + "Cr\u00e8me Br\u00fbl\u00e9e".length() + 3, frame.readableBytes());
+
+    final List<Order> decoded = new ArrayList<>();
+    Assert.assertEquals(42, BinaryOrderCodec.decodeOrders(frame, decoded));
+    Assert.assertEquals(orders, decoded);
+
+    final ByteBuf ack = Unpooled.buffer();
+    BinaryOrderCodec.encodeAck(ack, 42, new BinaryAckStatus[]{BinaryAckStatus.ACCEPTED, BinaryAckStatus.REJECTED});
+    Assert.assertEquals(42, BinaryOrderCodec.getRequestId(ack));
+    Assert.assertEquals(Arrays.asList(BinaryAckStatus.ACCEPTED, BinaryAckStatus.REJECTED), BinaryOrderCodec.decodeAck(ack));
+  }
+
+  @Test(expected = CorruptedFrameException.class)
+  public void testTruncatedFrameIsRejected() {
+    final ByteBuf frame = Unpooled.buffer();
+    BinaryOrderCodec.encodeOrders(frame, 1, Arrays.asList(new Order("a8cfcb76-7f24-4420-a5ba-d46dd77bdffd", "Banana Split", Temp.FROZEN, 20, 0.63f)));
+
+    BinaryOrderCodec.decodeOrders(frame.writerIndex(frame.writerIndex() - 1), new ArrayList<>());
+  }
+}
@@ -0,0 +1,136 @@
+package protocol;
+
+import common.Order;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import journal.Journal;
+import journal.JournalEvent;
+import mocks.MockQueue;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BinaryOrderHandlerTest {
+  private static final List<Order> ORDERS = Arrays.asList(
+      new Order("a8cfcb76-7f24-4420-a5ba-d46dd77bdffd", "Banana Split", Temp.FROZEN, 20, 0.63f),
+      new Order("2ec069e3-576f-48eb-869f-74a540ef840c", "Acai Bowl", Temp.COLD, 249, 0.3f));
+
+  @Test
+  public void testBinaryOrderHandlerAcksEveryOrderOfTheFrame() {
+    // Dispatcher queue accepts only the first order, the second one never reaches the order queue
+    final boolean[] acceptNext = {true};
+    final MockQueue dispatcherQueue = new MockQueue(() -> {
+      final boolean result = acceptNext[0];
+      acceptNext[0] = false;
+      return result;
+    }, null);
+    final MockQueue orderQueue = new MockQueue();
+    final EmbeddedChannel channel = newChannel(orderQueue, dispatcherQueue, new Backpressure(orderQueue, dispatcherQueue), Journal.NOOP);
+
+    channel.writeInbound(frame(7, ORDERS));
+
+    Assert.assertEquals(1, orderQueue.size());
+    Assert.assertEquals(ORDERS.get(0), orderQueue.fetch());
+    assertAck(channel, 7, BinaryAckStatus.ACCEPTED, BinaryAckStatus.REJECTED);
+  }
+
+  @Test
+  public void testBinaryOrderHandlerAcksOverloadedFramesWithoutDecodingThem() {
+    final MockQueue orderQueue = new MockQueue();
+    final MockQueue dispatcherQueue = new MockQueue();
+    final Backpressure backpressure = new Backpressure(orderQueue, dispatcherQueue, 10, 5, 10);
+    final EmbeddedChannel channel = newChannel(orderQueue, dispatcherQueue, backpressure, Journal.NOOP);
+    backpressure.reserve(11);
+    final ByteBuf frame = Unpooled.buffer();
+    // Only the header is valid, the orders are never read
+    frame.writeInt(20).writeInt(7).writeShort(2).writeZero(14);
+
+    channel.writeInbound(frame);
+
+    Assert.assertEquals(0, orderQueue.size());
+    assertAck(channel, 7, BinaryAckStatus.OVERLOADED, BinaryAckStatus.OVERLOADED);
+    Assert.assertFalse(channel.config().isAutoRead());
+  }
+
+  @Test
+  public void testBinaryOrderHandlerAcksFramesOverTheInFlightBudgetAsOverloaded() {
+    final ByteBuf first = frame(1, ORDERS.subList(0, 1));
+    final ByteBuf second = frame(2, ORDERS.subList(1, 2));
+    // Room for the first frame only, its ack waits for the journal
+    final int budget = first.readableBytes();
+    final CompletableFuture<Void> durable = new CompletableFuture<>();
+    final Journal journal = Mockito.mock(Journal.class);
+    Mockito.when(journal.whenDurable(Mockito.anyLong())).thenReturn(durable);
+    final MockQueue orderQueue = new MockQueue();
+    final MockQueue dispatcherQueue = new MockQueue();
+    final Backpressure backpressure = new Backpressure(orderQueue, dispatcherQueue, 10, 5, budget);
+    final EmbeddedChannel channel = newChannel(orderQueue, dispatcherQueue, backpressure, journal);
+
+    channel.writeInbound(first, second);
+
+    Assert.assertEquals(1, orderQueue.size());
+    Assert.assertTrue(backpressure.isOverBudget());
+    Assert.assertFalse(channel.config().isAutoRead());
+
+    // Frames are released with their acks
+    durable.complete(null);
+    channel.runPendingTasks();
+
+    assertAck(channel, 1, BinaryAckStatus.ACCEPTED);
+    assertAck(channel, 2, BinaryAckStatus.OVERLOADED);
+    Assert.assertEquals(0, backpressure.getInFlightBytes());
+  }
+
+  @Test
+  public void testBinaryOrderHandlerAcksOnceTheOrdersAreDurableKeepingTheFrameOrder() {
+    final CompletableFuture<Void> firstDurable = new CompletableFuture<>();
+    final Journal journal = Mockito.mock(Journal.class);
+    Mockito.when(journal.append(Mockito.eq(JournalEvent.ACCEPTED), Mockito.any())).thenReturn(1L, 2L);
+    Mockito.when(journal.whenDurable(1L)).thenReturn(firstDurable);
+    Mockito.when(journal.whenDurable(2L)).thenReturn(Journal.DURABLE);
+    final MockQueue orderQueue = new MockQueue();
+    final MockQueue dispatcherQueue = new MockQueue();
+    final EmbeddedChannel channel = newChannel(orderQueue, dispatcherQueue, new Backpressure(orderQueue, dispatcherQueue), journal);
+
+    channel.writeInbound(frame(1, ORDERS.subList(0, 1)), frame(2, ORDERS.subList(1, 2)));
+
+    Assert.assertEquals(2, orderQueue.size());
+    Assert.assertNull(channel.readOutbound());
+
+    firstDurable.complete(null);
+    channel.runPendingTasks();
+
+    assertAck(channel, 1, BinaryAckStatus.ACCEPTED);
+    assertAck(channel, 2, BinaryAckStatus.ACCEPTED);
+  }
+
+  private static EmbeddedChannel newChannel(final MockQueue orderQueue, final MockQueue dispatcherQueue,
+                                            final Backpressure backpressure, final Journal journal) {
+    return new EmbeddedChannel(new LengthFieldBasedFrameDecoder(1024, 0, 4, 0, 4), new LengthFieldPrepender(4),
+        new FrameBudgetHandler(backpressure), new BinaryOrderHandler(orderQueue, dispatcherQueue, backpressure, journal));
+  }
+
+  private static ByteBuf frame(final int requestId, final List<Order> orders) {
+    final ByteBuf body = Unpooled.buffer();
+    BinaryOrderCodec.encodeOrders(body, requestId, orders);
+    return Unpooled.buffer().writeInt(body.readableBytes()).writeBytes(body);
+  }
+
+  private static void assertAck(final EmbeddedChannel channel, final int requestId, final BinaryAckStatus... statuses) {
+    // The prepender writes the length prefix on its own
+    final ByteBuf length = channel.readOutbound();
+    final ByteBuf ack = channel.readOutbound();
+    Assert.assertEquals(ack.readableBytes(), length.readInt());
+    length.release();
+    Assert.assertEquals(requestId, BinaryOrderCodec.getRequestId(ack));
+    Assert.assertEquals(Arrays.asList(statuses), BinaryOrderCodec.decodeAck(ack));
+    ack.release();
+  }
+}
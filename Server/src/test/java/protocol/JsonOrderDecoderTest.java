@@ -0,0 +1,69 @@
+package protocol;
+
+import com.google.gson.JsonParseException;
+import common.Order;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonOrderDecoderTest {
+
+  @Test
+  public void testDecodeMatchesGson() {
+    final String orderStr = "{\n" +
+        "    \"id\": \"972aa5b8-5d83-4d5e-8cf3-8a1a1437b18a\",\n" +
+        "    \"name\": \"Chocolate Gelato\",\n" +
+        "    \"temp\": \"frozen\",\n" +
+        "    \"shelfLife\": 300,\n" +
+        "    \"decayRate\": 0.61\n" +
+        "  }";
+
+    final ByteBuf content = toByteBuf(orderStr);
+    final Order order = JsonOrderDecoder.decode(content);
+
+    Assert.assertEquals(Order.createFromJson(orderStr), order);
+    Assert.assertEquals(0.61f, order.getDecayRate(), 0);
+    Assert.assertEquals(0, content.readerIndex());
+  }
+
+  @Test
+  public void testDecodeHandlesTempAliasesAndUnknownFields() {
+    final Order order = JsonOrderDecoder.decode(toByteBuf("{\"extra\": {\"a\": [1, \"}\"]}, \"temp\": \"HOT\", \"id\": \"1\", " +
+        "\"name\": \"Pizza\", \"shelfLife\": -5, \"decayRate\": -0.5, \"flag\": true}"));
+
+    Assert.assertEquals(new Order("1", "Pizza", Temp.HOT, -5, -0.5f), order);
+  }
+
+  @Test
+  public void testDecodeFallsBackToGsonForUnusualInput() {
+    // Escaped strings, exponents and numbers as strings are left to Gson
+    final String orderStr = "{\"id\": \"1\\\"2\", \"name\": \"Pizza\", \"temp\": \"cold\", \"shelfLife\": \"300\", \"decayRate\": 5e-1}";
+    final Order order = JsonOrderDecoder.decode(toByteBuf(orderStr));
+
+    Assert.assertEquals(new Order("1\"2", "Pizza", Temp.COLD, 300, 0.5f), order);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void testDecodeRejectsMalformedJson() {
+    JsonOrderDecoder.decode(toByteBuf("{\"id\": \"1\", \"name\": "));
+  }
+
+  @Test
+  public void testDecodeList() {
+    final List<Order> orders = JsonOrderDecoder.decodeList(toByteBuf("[{\"id\": \"1\", \"name\": \"A\", \"temp\": \"any\", \"shelfLife\": 1, \"decayRate\": 1}," +
+        " {\"id\": \"2\", \"name\": \"B\", \"temp\": \"cold\", \"shelfLife\": 2, \"decayRate\": 0.25}]"));
+
+    Assert.assertEquals(2, orders.size());
+    Assert.assertEquals(new Order("1", "A", Temp.ANY, 1, 1f), orders.get(0));
+    Assert.assertEquals(new Order("2", "B", Temp.COLD, 2, 0.25f), orders.get(1));
+    Assert.assertTrue(JsonOrderDecoder.decodeList(toByteBuf(" [ ] ")).isEmpty());
+  }
+
+  private static ByteBuf toByteBuf(final String str) {
+    return Unpooled.wrappedBuffer(str.getBytes(CharsetUtil.UTF_8));
+  }
+}
@@ -0,0 +1,79 @@
+package protocol;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+import common.GlobalStats;
+import common.Order;
+import common.PoolStats;
+import common.Shelf;
+import common.ShelvesManager;
+import common.Temp;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import java.util.Arrays;
+import mocks.MockQueue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsHandlerTest {
+  @Before
+  public void initialize() {
+    ShelvesManager.reset();
+    GlobalStats.getInstance().initialize();
+  }
+
+  @Test
+  public void testMetricsAreServed() {
+    final MockQueue orderQueue = new MockQueue();
+    orderQueue.add(new Order("1", "McFlury", Temp.FROZEN, 375, 0.4f));
+    final PoolStats pool = new PoolStats("dispatcher", 4);
+    pool.taskStarted();
+
+    final Order order = new Order("2", "Banana Split", Temp.FROZEN, 20, 0.63f);
+    final Shelf shelf = ShelvesManager.getInstance().addOrder(order).get();
+    GlobalStats.getInstance().reportReceivedOrder();
+    GlobalStats.getInstance().reportEnqueuedOrder(order);
+    GlobalStats.getInstance().reportShelvedOrder(order);
+
+    final EmbeddedChannel channel = new EmbeddedChannel(new MetricsHandler(orderQueue, new MockQueue(), Arrays.asList(pool)));
+    channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/metrics"));
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(OK, response.status());
+    Assert.assertEquals(MetricsHandler.CONTENT_TYPE, response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+    Assert.assertEquals(response.content().readableBytes(), HttpUtil.getContentLength(response));
+
+    final String text = response.content().toString(CharsetUtil.US_ASCII);
+    Assert.assertTrue(text.contains("# TYPE restaurant_orders_received_total counter\nrestaurant_orders_received_total 1\n"));
+    Assert.assertTrue(text.contains("restaurant_event_log_dropped_total 0\n"));
+    Assert.assertTrue(text.contains("restaurant_queue_depth{queue=\"orders\"} 1\n"));
+    Assert.assertTrue(text.contains("restaurant_queue_depth{queue=\"dispatch\"} 0\n"));
+    Assert.assertTrue(text.contains("restaurant_pool_active{pool=\"dispatcher\"} 1\n"));
+    Assert.assertTrue(text.contains("restaurant_pool_threads{pool=\"dispatcher\"} 4\n"));
+    Assert.assertTrue(text.contains("restaurant_order_latency_seconds_count{stage=\"enqueue->shelved\"} 1\n"));
+    Assert.assertTrue(text.contains("restaurant_shelf_orders{shelf=\"" + shelf.getName() + "\"} 1\n"));
+    response.release();
+  }
+
+  @Test
+  public void testOtherRequestsArePassedThrough() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new MetricsHandler(new MockQueue(), new MockQueue(), Arrays.asList()));
+    final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/metrics",
+        Unpooled.wrappedBuffer("{}".getBytes(CharsetUtil.UTF_8)));
+
+    channel.writeInbound(request);
+
+    Assert.assertSame(request, channel.readInbound());
+    Assert.assertNull(channel.readOutbound());
+    request.release();
+  }
+}
@@ -1,24 +1,49 @@
 package protocol;
 
+import static io.netty.handler.codec.http.HttpResponseStatus.GATEWAY_TIMEOUT;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
+import cluster.Cluster;
+import cluster.ClusterNode;
+import common.GlobalStats;
+import common.LatencyStats;
 import common.Order;
 import common.RestaurantException;
+import common.Temp;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import java.nio.channels.ClosedChannelException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import journal.Journal;
+import journal.JournalEvent;
 import mocks.MockQueue;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 
@@ -30,6 +55,8 @@ public class OrderHandlerTest {
     mockCtx = BDDMockito.mock(ChannelHandlerContext.class);
     ChannelFuture mockChannelFuture = BDDMockito.mock(ChannelFuture.class);
     Mockito.when(mockCtx.writeAndFlush(Mockito.any())).thenReturn(mockChannelFuture);
+    Mockito.when(mockCtx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+    Mockito.when(mockCtx.channel()).thenReturn(new EmbeddedChannel());
   }
 
   @Test
@@ -57,7 +84,7 @@ public class OrderHandlerTest {
     Assert.assertEquals(order, orderQueue.fetch());
     Assert.assertEquals(order, dispatcherQueue.fetch());
 
-    Mockito.verify(mockCtx).writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, OK));
+    Mockito.verify(mockCtx).writeAndFlush(expectedResponse(OK));
   }
 
   @Test
@@ -78,7 +105,8 @@ public class OrderHandlerTest {
 
     Assert.assertEquals(0, orderQueue.size());
 
-    Mockito.verify(mockCtx).writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE));
+    Mockito.verify(mockCtx).writeAndFlush(expectedRetryResponse(SERVICE_UNAVAILABLE, 1));
+    Assert.assertFalse(mockCtx.channel().config().isAutoRead());
   }
 
   @Test
@@ -91,15 +119,18 @@ public class OrderHandlerTest {
         "    \"decayRate\": 0.4\n" +
         "  }";
 
+    final MockQueue orderQueue = new MockQueue();
     final MockQueue dispatcherQueue = new MockQueue(() -> false, null);
-    final OrderHandler handler = new OrderHandler(new MockQueue(), dispatcherQueue);
+    final OrderHandler handler = new OrderHandler(orderQueue, dispatcherQueue);
     final FullHttpRequest fullHttpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "http://localhost:1234", Unpooled.wrappedBuffer(orderStr.getBytes(Charset.defaultCharset())));
 
     handler.channelRead(mockCtx, fullHttpRequest);
 
+    // Rejected orders are never left on the order queue, they would be shelved with no courier
+    Assert.assertEquals(0, orderQueue.size());
     Assert.assertEquals(0, dispatcherQueue.size());
 
-    Mockito.verify(mockCtx).writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE));
+    Mockito.verify(mockCtx).writeAndFlush(expectedRetryResponse(SERVICE_UNAVAILABLE, 1));
   }
 
   @Test(expected = RestaurantException.class)
@@ -121,4 +152,233 @@ public class OrderHandlerTest {
 
     handler.channelRead(mockCtx, fullHttpRequest);
   }
+
+  @Test
+  public void testOrderHandlerAcceptsBatchAndReturnsResultPerOrder() throws Exception {
+    final String ordersStr = "[{\n" +
+        "    \"id\": \"a8cfcb76-7f24-4420-a5ba-d46dd77bdffd\",\n" +
+        "    \"name\": \"Banana Split\",\n" +
+        "    \"temp\": \"frozen\",\n" +
+        "    \"shelfLife\": 20,\n" +
+        "    \"decayRate\": 0.63\n" +
+        "  }, {\n" +
+        "    \"id\": \"2ec069e3-576f-48eb-869f-74a540ef840c\",\n" +
+        "    \"name\": \"Acai Bowl\",\n" +
+        "    \"temp\": \"cold\",\n" +
+        "    \"shelfLife\": 249,\n" +
+        "    \"decayRate\": 0.3\n" +
+        "  }]";
+
+    // Dispatcher queue accepts only the first order
+    final boolean[] acceptNext = {true};
+    final MockQueue dispatcherQueue = new MockQueue(() -> {
+      final boolean result = acceptNext[0];
+      acceptNext[0] = false;
+      return result;
+    }, null);
+    final MockQueue orderQueue = new MockQueue();
+
+    final OrderHandler handler = new OrderHandler(orderQueue, dispatcherQueue);
+    final FullHttpRequest fullHttpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, OrderHandler.BATCH_PATH, Unpooled.wrappedBuffer(ordersStr.getBytes(Charset.defaultCharset())));
+    final LatencyStats receiveToEnqueue = GlobalStats.getInstance().getReceiveToEnqueueLatency();
+    receiveToEnqueue.flush();
+    final long enqueued = receiveToEnqueue.getTotalCount();
+
+    handler.channelRead(mockCtx, fullHttpRequest);
+
+    // Rejected order never makes it to the order queue, nor to the enqueue latency
+    receiveToEnqueue.flush();
+    Assert.assertEquals(enqueued + 1, receiveToEnqueue.getTotalCount());
+    Assert.assertEquals(1, orderQueue.size());
+    Assert.assertEquals("a8cfcb76-7f24-4420-a5ba-d46dd77bdffd", orderQueue.fetch().getId());
+
+    final ArgumentCaptor<DefaultFullHttpResponse> response = ArgumentCaptor.forClass(DefaultFullHttpResponse.class);
+    Mockito.verify(mockCtx).writeAndFlush(response.capture());
+    Assert.assertEquals(OK, response.getValue().status());
+    Assert.assertEquals("[{\"id\":\"a8cfcb76-7f24-4420-a5ba-d46dd77bdffd\",\"accepted\":true},{\"id\":\"2ec069e3-576f-48eb-869f-74a540ef840c\",\"accepted\":false}]",
+        response.getValue().content().toString(CharsetUtil.UTF_8));
+  }
+
+  @Test
+  public void testOrderHandlerKeepsConnectionOpenAndAnswersPipelinedRequestsInOrder() {
+    final MockQueue orderQueue = new MockQueue();
+    final EmbeddedChannel channel = new EmbeddedChannel(new HttpServerKeepAliveHandler(), new OrderHandler(orderQueue, new MockQueue()));
+
+    channel.writeInbound(createRequest("1"), createRequest("2"));
+
+    final FullHttpResponse first = channel.readOutbound();
+    final FullHttpResponse second = channel.readOutbound();
+    Assert.assertEquals(OK, first.status());
+    Assert.assertEquals(OK, second.status());
+    Assert.assertEquals(0, HttpUtil.getContentLength(first));
+    Assert.assertEquals(2, orderQueue.size());
+    Assert.assertEquals("1", orderQueue.fetch().getId());
+    Assert.assertTrue(channel.isOpen());
+
+    // Client asks to close the connection
+    final FullHttpRequest closeRequest = createRequest("3");
+    closeRequest.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+    channel.writeInbound(closeRequest);
+
+    final FullHttpResponse last = channel.readOutbound();
+    Assert.assertEquals(OK, last.status());
+    Assert.assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void testOrderHandlerRejectsOrdersOverHighWatermark() throws Exception {
+    final MockQueue orderQueue = new MockQueue();
+    orderQueue.add(new Order("1", "McFlury", Temp.FROZEN, 375, 0.4f));
+    orderQueue.add(new Order("2", "McFlury", Temp.FROZEN, 375, 0.4f));
+    final MockQueue dispatcherQueue = new MockQueue();
+    final Backpressure backpressure = new Backpressure(orderQueue, dispatcherQueue, 2, 1, 1024);
+    final OrderHandler handler = new OrderHandler(orderQueue, dispatcherQueue, backpressure);
+
+    handler.channelRead(mockCtx, createRequest("3"));
+
+    // Never decoded nor queued, no drain rate measured yet so clients are asked to retry as late as possible
+    Assert.assertEquals(2, orderQueue.size());
+    Assert.assertEquals(0, dispatcherQueue.size());
+    Mockito.verify(mockCtx).writeAndFlush(expectedRetryResponse(SERVICE_UNAVAILABLE, Backpressure.MAX_RETRY_AFTER_IN_SECONDS));
+    Assert.assertFalse(mockCtx.channel().config().isAutoRead());
+  }
+
+  @Test
+  public void testOrderHandlerRejectsOrdersOverInFlightBudget() throws Exception {
+    final MockQueue orderQueue = new MockQueue();
+    final Backpressure backpressure = new Backpressure(orderQueue, new MockQueue(), 10, 5, 10);
+    final OrderHandler handler = new OrderHandler(orderQueue, new MockQueue(), backpressure);
+    backpressure.reserve(11);
+
+    handler.channelRead(mockCtx, createRequest("1"));
+
+    Assert.assertEquals(0, orderQueue.size());
+    Mockito.verify(mockCtx).writeAndFlush(expectedRetryResponse(TOO_MANY_REQUESTS, 1));
+  }
+
+  @Test
+  public void testOrderHandlerAnswersOnceTheOrderIsDurableKeepingThePipelinedOrder() {
+    final CompletableFuture<Void> firstDurable = new CompletableFuture<>();
+    final Journal journal = Mockito.mock(Journal.class);
+    Mockito.when(journal.append(Mockito.eq(JournalEvent.ACCEPTED), Mockito.any())).thenReturn(1L, 2L);
+    Mockito.when(journal.whenDurable(1L)).thenReturn(firstDurable);
+    Mockito.when(journal.whenDurable(2L)).thenReturn(Journal.DURABLE);
+    final MockQueue orderQueue = new MockQueue();
+    final OrderHandler handler = new OrderHandler(orderQueue, new MockQueue(), new Backpressure(orderQueue, new MockQueue()), journal);
+    final EmbeddedChannel channel = new EmbeddedChannel(new HttpServerKeepAliveHandler(), handler);
+
+    channel.writeInbound(createRequest("1"), createRequest("2"));
+
+    // Both queued, the second one is durable but must not be answered before the first one
+    Assert.assertEquals(2, orderQueue.size());
+    Assert.assertNull(channel.readOutbound());
+
+    firstDurable.complete(null);
+    channel.runPendingTasks();
+
+    final FullHttpResponse first = channel.readOutbound();
+    final FullHttpResponse second = channel.readOutbound();
+    Assert.assertEquals(OK, first.status());
+    Assert.assertEquals(OK, second.status());
+    Assert.assertTrue(channel.isOpen());
+  }
+
+  @Test
+  public void testOrderHandlerForwardsOrdersOwnedByAnotherNode() {
+    final ClusterNode owner = ClusterNode.parse("localhost:11212");
+    final Cluster cluster = Mockito.mock(Cluster.class);
+    Mockito.when(cluster.isEnabled()).thenReturn(true);
+    Mockito.when(cluster.isLocal(Mockito.anyString())).thenAnswer(invocation -> "1".equals(invocation.getArgument(0)));
+    Mockito.when(cluster.getOwner(Mockito.anyString())).thenReturn(owner);
+    final ArgumentCaptor<ByteBuf> forwarded = ArgumentCaptor.forClass(ByteBuf.class);
+    Mockito.when(cluster.forward(Mockito.eq(owner), Mockito.eq(OrderHandler.BATCH_PATH), forwarded.capture())).thenReturn(
+        CompletableFuture.completedFuture(new DefaultFullHttpResponse(HTTP_1_1, OK,
+            Unpooled.copiedBuffer("[{\"id\":\"2\",\"accepted\":true},{\"id\":\"3\",\"accepted\":false}]", CharsetUtil.UTF_8))));
+    final MockQueue orderQueue = new MockQueue();
+    final OrderHandler handler = new OrderHandler(orderQueue, new MockQueue(), new Backpressure(orderQueue, new MockQueue()),
+        Journal.NOOP, cluster);
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    final String ordersStr = "[{\"id\": \"1\", \"name\": \"McFlury\", \"temp\": \"frozen\", \"shelfLife\": 375, \"decayRate\": 0.4}," +
+        "{\"id\": \"2\", \"name\": \"Acai Bowl\", \"temp\": \"cold\", \"shelfLife\": 249, \"decayRate\": 0.3}," +
+        "{\"id\": \"3\", \"name\": \"Banana Split\", \"temp\": \"frozen\", \"shelfLife\": 20, \"decayRate\": 0.63}]";
+
+    channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, OrderHandler.BATCH_PATH,
+        Unpooled.copiedBuffer(ordersStr, CharsetUtil.UTF_8)));
+    channel.runPendingTasks();
+
+    // Only the local order is queued here, the others go to their owner in one sub-batch
+    Assert.assertEquals(1, orderQueue.size());
+    Assert.assertEquals("1", orderQueue.fetch().getId());
+    final String forwardedBody = forwarded.getValue().toString(CharsetUtil.UTF_8);
+    Assert.assertEquals(Arrays.asList("2", "3"),
+        Order.createListFromJson(forwardedBody).stream().map(Order::getId).collect(Collectors.toList()));
+    Assert.assertEquals(Temp.COLD, Order.createListFromJson(forwardedBody).get(0).getTemp());
+
+    final FullHttpResponse response = channel.readOutbound();
+    Assert.assertEquals(OK, response.status());
+    Assert.assertEquals("[{\"id\":\"1\",\"accepted\":true},{\"id\":\"2\",\"accepted\":true},{\"id\":\"3\",\"accepted\":false}]",
+        response.content().toString(CharsetUtil.UTF_8));
+  }
+
+  @Test
+  public void testOrderHandlerAnswersFailedForwardsWith503And504() {
+    final ClusterNode owner = ClusterNode.parse("localhost:11212");
+    final Cluster cluster = Mockito.mock(Cluster.class);
+    Mockito.when(cluster.isEnabled()).thenReturn(true);
+    Mockito.when(cluster.isLocal(Mockito.anyString())).thenReturn(false);
+    Mockito.when(cluster.getOwner(Mockito.anyString())).thenReturn(owner);
+    final CompletableFuture<FullHttpResponse> closed = new CompletableFuture<>();
+    closed.completeExceptionally(new ClosedChannelException());
+    final CompletableFuture<FullHttpResponse> timedOut = new CompletableFuture<>();
+    timedOut.completeExceptionally(new TimeoutException());
+    Mockito.when(cluster.forward(Mockito.eq(owner), Mockito.anyString(), Mockito.any())).thenReturn(closed).thenReturn(timedOut);
+    final MockQueue orderQueue = new MockQueue();
+    final OrderHandler handler = new OrderHandler(orderQueue, new MockQueue(), new Backpressure(orderQueue, new MockQueue()),
+        Journal.NOOP, cluster);
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+    channel.writeInbound(createRequest("1"));
+    channel.writeInbound(createRequest("2"));
+    channel.runPendingTasks();
+
+    Assert.assertEquals(SERVICE_UNAVAILABLE, ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(GATEWAY_TIMEOUT, ((FullHttpResponse) channel.readOutbound()).status());
+    Assert.assertEquals(0, orderQueue.size());
+  }
+
+  @Test
+  public void testOrderHandlerKeepsForwardedOrdersLocal() {
+    final Cluster cluster = Mockito.mock(Cluster.class);
+    Mockito.when(cluster.isEnabled()).thenReturn(true);
+    Mockito.when(cluster.isLocal(Mockito.anyString())).thenReturn(false);
+    final MockQueue orderQueue = new MockQueue();
+    final OrderHandler handler = new OrderHandler(orderQueue, new MockQueue(), new Backpressure(orderQueue, new MockQueue()),
+        Journal.NOOP, cluster);
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+    final FullHttpRequest request = createRequest("1");
+    request.headers().set(Cluster.FORWARDED_BY, "localhost:11212");
+
+    channel.writeInbound(request);
+
+    Assert.assertEquals(1, orderQueue.size());
+    Assert.assertEquals(OK, ((FullHttpResponse) channel.readOutbound()).status());
+    Mockito.verify(cluster, Mockito.never()).forward(Mockito.any(), Mockito.anyString(), Mockito.any());
+  }
+
+  private static FullHttpRequest createRequest(final String id) {
+    final String orderStr = "{\"id\": \"" + id + "\", \"name\": \"McFlury\", \"temp\": \"frozen\", \"shelfLife\": 375, \"decayRate\": 0.4}";
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", Unpooled.wrappedBuffer(orderStr.getBytes(CharsetUtil.UTF_8)));
+  }
+
+  private static FullHttpResponse expectedRetryResponse(final HttpResponseStatus status, final long retryAfterInSeconds) {
+    final FullHttpResponse response = expectedResponse(status);
+    response.headers().set(HttpHeaderNames.RETRY_AFTER, retryAfterInSeconds);
+    return response;
+  }
+
+  private static FullHttpResponse expectedResponse(final HttpResponseStatus status) {
+    final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status);
+    HttpUtil.setContentLength(response, 0);
+    return response;
+  }
 }
@@ -0,0 +1,62 @@
+package protocol;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.socket.SocketChannel;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServerTransportTest {
+
+  @Test
+  public void testTransportFallsBackToNioWhenNotAvailable() {
+    Assert.assertEquals(TransportType.NIO, TransportType.NIO.orFallback());
+    Assert.assertEquals(Epoll.isAvailable() ? TransportType.EPOLL : TransportType.NIO, TransportType.EPOLL.orFallback());
+  }
+
+  @Test
+  public void testEveryAcceptorSharesThePortWithReusePort() throws Exception {
+    final ServerTransport transport = new ServerTransport(TransportType.EPOLL, 2, 128, true, true, true, true);
+
+    try {
+      final List<Channel> channels = transport.bind(0, new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(final SocketChannel ch) {
+          ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelActive(final ChannelHandlerContext ctx) {
+              ctx.writeAndFlush(ctx.alloc().buffer(1).writeByte(1));
+            }
+          });
+        }
+      });
+
+      // Without SO_REUSEPORT (NIO fallback) there is a single acceptor
+      Assert.assertEquals(transport.getType() == TransportType.EPOLL ? 2 : 1, channels.size());
+      final int port = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+
+      for (final Channel channel : channels) {
+        Assert.assertEquals(port, ((InetSocketAddress) channel.localAddress()).getPort());
+      }
+
+      for (int i = 0; i < 10; i++) {
+        Assert.assertEquals(1, connectAndRead(port));
+      }
+    } finally {
+      transport.shutdownGracefully();
+    }
+  }
+
+  private static int connectAndRead(final int port) throws IOException {
+    try (final Socket socket = new Socket("127.0.0.1", port)) {
+      return socket.getInputStream().read();
+    }
+  }
+}